@@ -0,0 +1,92 @@
+package de.gessnerfl.fakesmtp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+
+//emails of the test data plus generated emails which are too large resp. too broken to be kept as test resources
+public final class BenchmarkCorpus {
+    public static final String PLAIN = "plain";
+    public static final String HTML = "html";
+    public static final String MULTIPART_ALTERNATIVE = "multipartAlternative";
+    public static final String NESTED_RELATED = "nestedRelated";
+    public static final String LARGE_ATTACHMENTS = "largeAttachments";
+    public static final String MALFORMED = "malformed";
+
+    private static final String TEST_DATA_DIRECTORY = "/test-data/";
+    private static final Map<String, String> TEST_DATA_FILES = Map.of(
+            PLAIN, "mail-with-subject.eml",
+            HTML, "mail-with-subject-and-content-type-html.eml",
+            MULTIPART_ALTERNATIVE, "multipart-mail.eml",
+            NESTED_RELATED, "mail-with-subect-and-content-type-html-with-inline-image.eml");
+    private static final int ATTACHMENT_SIZE = 1024 * 1024;
+    private static final int NUMBER_OF_ATTACHMENTS = 2;
+    private static final String BOUNDARY = "----=_Part_benchmark";
+    private static final String CRLF = "\r\n";
+
+    private BenchmarkCorpus() {
+    }
+
+    public static byte[] load(String name) {
+        if (LARGE_ATTACHMENTS.equals(name)) {
+            return createMailWithLargeAttachments();
+        }
+        if (MALFORMED.equals(name)) {
+            return createMalformedMail();
+        }
+        var filename = TEST_DATA_FILES.get(name);
+        if (filename == null) {
+            throw new IllegalArgumentException("Unknown corpus entry " + name);
+        }
+        try (var inputStream = BenchmarkCorpus.class.getResourceAsStream(TEST_DATA_DIRECTORY + filename)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Test data " + filename + " not found on classpath");
+            }
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] createMailWithLargeAttachments() {
+        //fixed seed, so that every run parses the same data
+        var random = new Random(42);
+        var mail = new StringBuilder()
+                .append("From: sender@example.com").append(CRLF)
+                .append("To: receiver@example.com").append(CRLF)
+                .append("Subject: Large attachments").append(CRLF)
+                .append("MIME-Version: 1.0").append(CRLF)
+                .append("Content-Type: multipart/mixed; boundary=\"").append(BOUNDARY).append("\"").append(CRLF)
+                .append(CRLF)
+                .append("--").append(BOUNDARY).append(CRLF)
+                .append("Content-Type: text/plain; charset=UTF-8").append(CRLF)
+                .append(CRLF)
+                .append("Please find the attachments enclosed").append(CRLF);
+        for (var i = 0; i < NUMBER_OF_ATTACHMENTS; i++) {
+            var data = new byte[ATTACHMENT_SIZE];
+            random.nextBytes(data);
+            mail.append("--").append(BOUNDARY).append(CRLF)
+                    .append("Content-Type: application/octet-stream; name=\"attachment-").append(i).append(".bin\"").append(CRLF)
+                    .append("Content-Transfer-Encoding: base64").append(CRLF)
+                    .append("Content-Disposition: attachment; filename=\"attachment-").append(i).append(".bin\"").append(CRLF)
+                    .append(CRLF)
+                    .append(Base64.getMimeEncoder().encodeToString(data)).append(CRLF);
+        }
+        mail.append("--").append(BOUNDARY).append("--").append(CRLF);
+        return mail.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] createMalformedMail() {
+        //multipart without boundary cannot be parsed and is stored as plain text fallback
+        var mail = "From: sender@example.com" + CRLF +
+                "To: receiver@example.com" + CRLF +
+                "Subject: Malformed" + CRLF +
+                "Content-Type: multipart/mixed" + CRLF +
+                CRLF +
+                "body without any boundary" + CRLF;
+        return mail.getBytes(StandardCharsets.US_ASCII);
+    }
+}
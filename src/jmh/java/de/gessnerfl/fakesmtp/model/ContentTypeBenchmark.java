@@ -0,0 +1,26 @@
+package de.gessnerfl.fakesmtp.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContentTypeBenchmark {
+
+    @Param({
+            "multipart/alternative; boundary=\"----=_Part_0\"",
+            "multipart/related; boundary=\"----=_Part_1\"",
+            "text/html; charset=UTF-8",
+            "text/plain; charset=us-ascii",
+            "image/png; name=app-icon.png",
+            "application/octet-stream"
+    })
+    public String contentType;
+
+    @Benchmark
+    public ContentType fromString() {
+        return ContentType.fromString(contentType);
+    }
+}
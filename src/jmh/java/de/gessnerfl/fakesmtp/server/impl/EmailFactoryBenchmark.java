@@ -0,0 +1,39 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.BenchmarkCorpus;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.util.TimestampProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmailFactoryBenchmark {
+
+    @Param({BenchmarkCorpus.PLAIN, BenchmarkCorpus.HTML, BenchmarkCorpus.MULTIPART_ALTERNATIVE, BenchmarkCorpus.NESTED_RELATED, BenchmarkCorpus.LARGE_ATTACHMENTS, BenchmarkCorpus.MALFORMED})
+    public String mail;
+
+    private EmailFactory emailFactory;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        emailFactory = new EmailFactory(new TimestampProvider(), new IngestMetrics(new SimpleMeterRegistry()));
+        data = BenchmarkCorpus.load(mail);
+    }
+
+    @Benchmark
+    public Email convert() throws IOException {
+        return emailFactory.convert(new RawData("sender@example.com", List.of("receiver@example.com"), data));
+    }
+
+    @Benchmark
+    public Email convertHeaders() throws IOException {
+        return emailFactory.convertHeaders(new RawData("sender@example.com", List.of("receiver@example.com"), data));
+    }
+}
@@ -0,0 +1,62 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EmailFilterBenchmark {
+
+    @Param({"3", "10", "100", "1000"})
+    public int numberOfRules;
+
+    private EmailFilter emailFilter;
+    private String regexMatchingRecipient;
+
+    @Setup
+    public void setup() {
+        //mix of the kinds of rules the address matcher distinguishes: exact addresses, whole domains and real regexes
+        var rules = new ArrayList<String>();
+        for (var i = 0; i < numberOfRules; i++) {
+            switch (i % 3) {
+                case 0:
+                    rules.add("user" + i + "@filtered\\.com");
+                    break;
+                case 1:
+                    rules.add(".*@filtered" + i + "\\.com");
+                    break;
+                default:
+                    rules.add("test-" + i + "-[a-z]+@.*\\.org");
+                    //the last regex rule is the most expensive one to match
+                    regexMatchingRecipient = "test-" + i + "-abc@example.org";
+                    break;
+            }
+        }
+        var configurationProperties = new FakeSmtpConfigurationProperties();
+        configurationProperties.setFilteredEmailRegexList(String.join(",", rules));
+        emailFilter = new EmailFilter(configurationProperties, new SimpleMeterRegistry(), new IngestMetrics(new SimpleMeterRegistry()), NOPLogger.NOP_LOGGER);
+        //compile the rules outside of the measurement
+        emailFilter.ignore("sender@example.com", "receiver@example.com");
+    }
+
+    @Benchmark
+    public boolean ignoreAcceptedParticipants() {
+        return emailFilter.ignore("sender@example.com", "receiver@example.com");
+    }
+
+    @Benchmark
+    public boolean ignoreExactAddress() {
+        return emailFilter.ignore("sender@example.com", "user0@filtered.com");
+    }
+
+    @Benchmark
+    public boolean ignoreByRegex() {
+        return emailFilter.ignore("sender@example.com", regexMatchingRecipient);
+    }
+}
@@ -0,0 +1,59 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.BenchmarkCorpus;
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailContent;
+import de.gessnerfl.fakesmtp.server.impl.EmailFactory;
+import de.gessnerfl.fakesmtp.server.impl.IngestMetrics;
+import de.gessnerfl.fakesmtp.util.TimestampProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HtmlContentRendererBenchmark {
+
+    @Param({BenchmarkCorpus.PLAIN, BenchmarkCorpus.HTML, BenchmarkCorpus.MULTIPART_ALTERNATIVE, BenchmarkCorpus.NESTED_RELATED})
+    public String mail;
+
+    private HtmlContentRenderer renderer;
+    private EmailContent content;
+
+    @Setup
+    public void setup() throws IOException {
+        var buildProperties = new Properties();
+        buildProperties.setProperty(HtmlContentRenderer.BOOTSTRAP_VERSION, "5.2.2");
+        var applicationContext = new StaticApplicationContext();
+        applicationContext.getBeanFactory().registerSingleton("buildProperties", new BuildProperties(buildProperties));
+        //the cache is disabled, so that every call measures the rendering itself
+        var configurationProperties = new FakeSmtpConfigurationProperties();
+        configurationProperties.getRendering().setCacheSize(DataSize.ofBytes(0));
+        renderer = new HtmlContentRenderer(applicationContext, new RenderedContentCache(configurationProperties, new SimpleMeterRegistry()));
+
+        var email = new Email();
+        email.setFromAddress("sender@example.com");
+        email.setRecipients(List.of("receiver@example.com"));
+        var data = BenchmarkCorpus.load(mail);
+        email.setRawData(new String(data, StandardCharsets.UTF_8));
+        email.setOriginalContent(data);
+        new EmailFactory(new TimestampProvider(), new IngestMetrics(new SimpleMeterRegistry())).materialize(email);
+        //the html content is preferred like in the web ui
+        content = email.getHtmlContent().or(email::getPlainContent).orElseThrow();
+    }
+
+    @Benchmark
+    public String render() {
+        return renderer.render(content);
+    }
+}
@@ -0,0 +1,79 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+public class V1_5_1__email_blob_data extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        var connection = context.getConnection();
+        var blobIds = new HashMap<String, Long>();
+        moveData(connection, "email_attachment", blobIds, rs -> rs.getBytes("data"));
+        moveData(connection, "email_inline_image", blobIds, rs -> decodeInlineImage(rs.getString("data")));
+    }
+
+    private static void moveData(Connection connection, String table, Map<String, Long> blobIds, DataReader reader) throws Exception {
+        try (var select = connection.prepareStatement("SELECT id, data FROM " + table);
+             var update = connection.prepareStatement("UPDATE " + table + " SET blob = ? WHERE id = ?");
+             var rs = select.executeQuery()) {
+            while (rs.next()) {
+                var data = reader.read(rs);
+                var hash = hash(data);
+                var blobId = blobIds.get(hash);
+                if (blobId == null) {
+                    blobId = insertBlob(connection, hash, data);
+                    blobIds.put(hash, blobId);
+                }
+                update.setLong(1, blobId);
+                update.setLong(2, rs.getLong("id"));
+                update.executeUpdate();
+            }
+        }
+    }
+
+    private static long insertBlob(Connection connection, String hash, byte[] data) throws SQLException {
+        long id;
+        try (var sequence = connection.prepareStatement("SELECT NEXT VALUE FOR email_blob_sequence");
+             var rs = sequence.executeQuery()) {
+            rs.next();
+            id = rs.getLong(1);
+        }
+        try (var insert = connection.prepareStatement("INSERT INTO email_blob (id, hash, size, reference_count, data) VALUES (?, ?, ?, 0, ?)")) {
+            insert.setLong(1, id);
+            insert.setString(2, hash);
+            insert.setLong(3, data.length);
+            insert.setBytes(4, data);
+            insert.executeUpdate();
+        }
+        return id;
+    }
+
+    //inline images were stored base64 encoded; data which cannot be decoded is kept as is
+    private static byte[] decodeInlineImage(String data) {
+        try {
+            return Base64.getMimeDecoder().decode(data);
+        } catch (IllegalArgumentException e) {
+            return data.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String hash(byte[] data) throws Exception {
+        var digest = MessageDigest.getInstance("SHA-256").digest(data);
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
+    private interface DataReader {
+        byte[] read(ResultSet rs) throws SQLException;
+    }
+}
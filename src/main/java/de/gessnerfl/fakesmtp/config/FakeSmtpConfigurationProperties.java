@@ -2,9 +2,15 @@ package de.gessnerfl.fakesmtp.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
 import javax.validation.constraints.NotNull;
+import java.io.File;
 import java.net.InetAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @ConfigurationProperties(prefix = "fakesmtp")
@@ -18,9 +24,24 @@ public class FakeSmtpConfigurationProperties {
     private Authentication authentication;
     private String filteredEmailRegexList;
     private boolean forwardEmails = false;
+    @NotNull
+    private Threading threading = Threading.PLATFORM;
+    private Integer maxConnections;
+    private Integer backlog;
+    private Duration connectionTimeout;
+    private DataSize maxMessageSize;
+    private Integer maxRecipients;
 
     @NotNull
     private Persistence persistence = new Persistence();
+    @NotNull
+    private Ingest ingest = new Ingest();
+    @NotNull
+    private Spool spool = new Spool();
+    @NotNull
+    private Rendering rendering = new Rendering();
+    @NotNull
+    private Forwarding forwarding = new Forwarding();
 
     public Integer getPort() {
         return port;
@@ -54,6 +75,38 @@ public class FakeSmtpConfigurationProperties {
         this.persistence = persistence;
     }
 
+    public Ingest getIngest() {
+        return ingest;
+    }
+
+    public void setIngest(Ingest ingest) {
+        this.ingest = ingest;
+    }
+
+    public Spool getSpool() {
+        return spool;
+    }
+
+    public void setSpool(Spool spool) {
+        this.spool = spool;
+    }
+
+    public Rendering getRendering() {
+        return rendering;
+    }
+
+    public void setRendering(Rendering rendering) {
+        this.rendering = rendering;
+    }
+
+    public Forwarding getForwarding() {
+        return forwarding;
+    }
+
+    public void setForwarding(Forwarding forwarding) {
+        this.forwarding = forwarding;
+    }
+
     public String getFilteredEmailRegexList() {
         return filteredEmailRegexList;
     }
@@ -70,6 +123,58 @@ public class FakeSmtpConfigurationProperties {
         this.forwardEmails = forwardEmails;
     }
 
+    public Threading getThreading() {
+        return threading;
+    }
+
+    public void setThreading(Threading threading) {
+        this.threading = threading;
+    }
+
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public Integer getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(Integer backlog) {
+        this.backlog = backlog;
+    }
+
+    public Duration getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Duration connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public DataSize getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(DataSize maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public Integer getMaxRecipients() {
+        return maxRecipients;
+    }
+
+    public void setMaxRecipients(Integer maxRecipients) {
+        this.maxRecipients = maxRecipients;
+    }
+
+    public enum Threading {
+        PLATFORM, VIRTUAL
+    }
+
     public static class Authentication {
         @NotNull
         private String username;
@@ -98,6 +203,8 @@ public class FakeSmtpConfigurationProperties {
 
         @NotNull
         private Integer maxNumberEmails = DEFAULT_MAX_NUMBER_EMAILS;
+        private DataSize maxStoredSize;
+        private Duration maxAge;
 
         public Integer getMaxNumberEmails() {
             return maxNumberEmails;
@@ -106,5 +213,446 @@ public class FakeSmtpConfigurationProperties {
         public void setMaxNumberEmails(Integer maxNumberEmails) {
             this.maxNumberEmails = maxNumberEmails;
         }
+
+        public DataSize getMaxStoredSize() {
+            return maxStoredSize;
+        }
+
+        public void setMaxStoredSize(DataSize maxStoredSize) {
+            this.maxStoredSize = maxStoredSize;
+        }
+
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+
+        public void setMaxAge(Duration maxAge) {
+            this.maxAge = maxAge;
+        }
+    }
+
+    public static class Spool {
+        static final DataSize DEFAULT_MEMORY_THRESHOLD = DataSize.ofMegabytes(1);
+
+        @NotNull
+        private DataSize memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+        private File directory;
+
+        public DataSize getMemoryThreshold() {
+            return memoryThreshold;
+        }
+
+        public void setMemoryThreshold(DataSize memoryThreshold) {
+            this.memoryThreshold = memoryThreshold;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(File directory) {
+            this.directory = directory;
+        }
+    }
+
+    public static class Rendering {
+        static final DataSize DEFAULT_CACHE_SIZE = DataSize.ofMegabytes(16);
+        static final int DEFAULT_PRE_RENDER_QUEUE_SIZE = 1000;
+
+        @NotNull
+        private DataSize cacheSize = DEFAULT_CACHE_SIZE;
+        private boolean preRender = false;
+        @NotNull
+        private Integer preRenderQueueSize = DEFAULT_PRE_RENDER_QUEUE_SIZE;
+
+        public DataSize getCacheSize() {
+            return cacheSize;
+        }
+
+        public void setCacheSize(DataSize cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+
+        public boolean isPreRender() {
+            return preRender;
+        }
+
+        public void setPreRender(boolean preRender) {
+            this.preRender = preRender;
+        }
+
+        public Integer getPreRenderQueueSize() {
+            return preRenderQueueSize;
+        }
+
+        public void setPreRenderQueueSize(Integer preRenderQueueSize) {
+            this.preRenderQueueSize = preRenderQueueSize;
+        }
+    }
+
+    public static class Forwarding {
+        static final int DEFAULT_QUEUE_SIZE = 1000;
+        static final int DEFAULT_BATCH_SIZE = 10;
+        static final int DEFAULT_MAX_ATTEMPTS = 5;
+        static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+        static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(5);
+        static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+        static final Duration DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = Duration.ofSeconds(30);
+        static final int DEFAULT_MAX_DEAD_LETTERS = 100;
+        static final Duration DEFAULT_CONNECTION_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+        @NotNull
+        private Integer queueSize = DEFAULT_QUEUE_SIZE;
+        @NotNull
+        private Integer batchSize = DEFAULT_BATCH_SIZE;
+        @NotNull
+        private Integer maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        @NotNull
+        private Duration initialBackoff = DEFAULT_INITIAL_BACKOFF;
+        @NotNull
+        private Duration maxBackoff = DEFAULT_MAX_BACKOFF;
+        @NotNull
+        private Integer circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+        @NotNull
+        private Duration circuitBreakerOpenDuration = DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION;
+        @NotNull
+        private Integer maxDeadLetters = DEFAULT_MAX_DEAD_LETTERS;
+        @NotNull
+        private Duration connectionIdleTimeout = DEFAULT_CONNECTION_IDLE_TIMEOUT;
+        private boolean rawRelay = false;
+        @NotNull
+        private List<Route> routes = new ArrayList<>();
+
+        public Integer getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(Integer queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Integer getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(Integer maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        public Integer getCircuitBreakerThreshold() {
+            return circuitBreakerThreshold;
+        }
+
+        public void setCircuitBreakerThreshold(Integer circuitBreakerThreshold) {
+            this.circuitBreakerThreshold = circuitBreakerThreshold;
+        }
+
+        public Duration getCircuitBreakerOpenDuration() {
+            return circuitBreakerOpenDuration;
+        }
+
+        public void setCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration) {
+            this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+        }
+
+        public Integer getMaxDeadLetters() {
+            return maxDeadLetters;
+        }
+
+        public void setMaxDeadLetters(Integer maxDeadLetters) {
+            this.maxDeadLetters = maxDeadLetters;
+        }
+
+        public Duration getConnectionIdleTimeout() {
+            return connectionIdleTimeout;
+        }
+
+        public void setConnectionIdleTimeout(Duration connectionIdleTimeout) {
+            this.connectionIdleTimeout = connectionIdleTimeout;
+        }
+
+        public boolean isRawRelay() {
+            return rawRelay;
+        }
+
+        public void setRawRelay(boolean rawRelay) {
+            this.rawRelay = rawRelay;
+        }
+
+        public List<Route> getRoutes() {
+            return routes;
+        }
+
+        public void setRoutes(List<Route> routes) {
+            this.routes = routes;
+        }
+    }
+
+    public static class Route {
+        static final int DEFAULT_CONCURRENCY = 1;
+        static final int DEFAULT_QUEUE_SIZE = 1000;
+        static final int DEFAULT_SMTP_PORT = 25;
+
+        @NotNull
+        private String name;
+        private List<String> senders = new ArrayList<>();
+        private List<String> recipients = new ArrayList<>();
+        private String header;
+        private String headerPattern;
+        @NotNull
+        private DestinationType type = DestinationType.SMTP;
+        private String host;
+        @NotNull
+        private Integer port = DEFAULT_SMTP_PORT;
+        private String username;
+        private String password;
+        private File directory;
+        private URI url;
+        @NotNull
+        private Integer concurrency = DEFAULT_CONCURRENCY;
+        @NotNull
+        private Integer queueSize = DEFAULT_QUEUE_SIZE;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<String> getSenders() {
+            return senders;
+        }
+
+        public void setSenders(List<String> senders) {
+            this.senders = senders;
+        }
+
+        public List<String> getRecipients() {
+            return recipients;
+        }
+
+        public void setRecipients(List<String> recipients) {
+            this.recipients = recipients;
+        }
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public String getHeaderPattern() {
+            return headerPattern;
+        }
+
+        public void setHeaderPattern(String headerPattern) {
+            this.headerPattern = headerPattern;
+        }
+
+        public DestinationType getType() {
+            return type;
+        }
+
+        public void setType(DestinationType type) {
+            this.type = type;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public Integer getPort() {
+            return port;
+        }
+
+        public void setPort(Integer port) {
+            this.port = port;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(File directory) {
+            this.directory = directory;
+        }
+
+        public URI getUrl() {
+            return url;
+        }
+
+        public void setUrl(URI url) {
+            this.url = url;
+        }
+
+        public Integer getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(Integer concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Integer getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(Integer queueSize) {
+            this.queueSize = queueSize;
+        }
+    }
+
+    public enum DestinationType {
+        SMTP, DIRECTORY, WEBHOOK
+    }
+
+    public static class Ingest {
+        static final int DEFAULT_PARSE_CONCURRENCY = 2;
+        static final int DEFAULT_STORE_CONCURRENCY = 1;
+        static final int DEFAULT_FORWARD_CONCURRENCY = 1;
+
+        private boolean asynchronous = false;
+        private boolean lazyParsing = false;
+        @NotNull
+        private Stage parse = new Stage(DEFAULT_PARSE_CONCURRENCY);
+        @NotNull
+        private Stage store = new Stage(DEFAULT_STORE_CONCURRENCY);
+        @NotNull
+        private Stage forward = new Stage(DEFAULT_FORWARD_CONCURRENCY);
+
+        public boolean isAsynchronous() {
+            return asynchronous;
+        }
+
+        public void setAsynchronous(boolean asynchronous) {
+            this.asynchronous = asynchronous;
+        }
+
+        public boolean isLazyParsing() {
+            return lazyParsing;
+        }
+
+        public void setLazyParsing(boolean lazyParsing) {
+            this.lazyParsing = lazyParsing;
+        }
+
+        public Stage getParse() {
+            return parse;
+        }
+
+        public void setParse(Stage parse) {
+            this.parse = parse;
+        }
+
+        public Stage getStore() {
+            return store;
+        }
+
+        public void setStore(Stage store) {
+            this.store = store;
+        }
+
+        public Stage getForward() {
+            return forward;
+        }
+
+        public void setForward(Stage forward) {
+            this.forward = forward;
+        }
+    }
+
+    public static class Stage {
+        static final int DEFAULT_QUEUE_SIZE = 1000;
+
+        @NotNull
+        private Integer concurrency;
+        @NotNull
+        private Integer queueSize = DEFAULT_QUEUE_SIZE;
+        @NotNull
+        private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+
+        public Stage() {
+            this(1);
+        }
+
+        public Stage(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Integer getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(Integer concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Integer getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(Integer queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        public BackpressurePolicy getBackpressurePolicy() {
+            return backpressurePolicy;
+        }
+
+        public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+            this.backpressurePolicy = backpressurePolicy;
+        }
+    }
+
+    public enum BackpressurePolicy {
+        BLOCK, REJECT, DROP_OLDEST
     }
 }
@@ -0,0 +1,47 @@
+package de.gessnerfl.fakesmtp.controller;
+
+import de.gessnerfl.fakesmtp.repository.EmailBlobRepository;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+//opens a new database stream on every access, so that range requests can read the blob without buffering it in memory
+class EmailBlobResource extends AbstractResource {
+    private final EmailBlobRepository emailBlobRepository;
+    private final Long blobId;
+    private final long size;
+    private final String filename;
+
+    EmailBlobResource(EmailBlobRepository emailBlobRepository, Long blobId, long size, String filename) {
+        this.emailBlobRepository = emailBlobRepository;
+        this.blobId = blobId;
+        this.size = size;
+        this.filename = filename;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return emailBlobRepository.openDataStream(blobId);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Email blob [" + blobId + "]";
+    }
+}
@@ -1,10 +1,15 @@
 package de.gessnerfl.fakesmtp.controller;
 
 import de.gessnerfl.fakesmtp.model.Email;
-import de.gessnerfl.fakesmtp.repository.EmailAttachmentRepository;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.service.EmailDeletedEvent;
+import de.gessnerfl.fakesmtp.service.EmailMaterializer;
+import de.gessnerfl.fakesmtp.service.EmailSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
@@ -13,6 +18,8 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @Controller
 @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
 public class EmailController {
@@ -21,31 +28,43 @@ public class EmailController {
     static final String APP_VERSION_MODEL_NAME = "appVersion";
     static final String EMAIL_LIST_VIEW = "email-list";
     static final String EMAIL_LIST_MODEL_NAME = "mails";
+    static final String SEARCH_QUERY_MODEL_NAME = "query";
     static final String SINGLE_EMAIL_VIEW = "email";
     static final String SINGLE_EMAIL_MODEL_NAME = "mail";
     static final String REDIRECT_EMAIL_LIST_VIEW = "redirect:/email";
 
     private final EmailRepository emailRepository;
-    private final EmailAttachmentRepository emailAttachmentRepository;
     private final BuildProperties buildProperties;
+    private final EmailMaterializer emailMaterializer;
+    private final EmailSearchService emailSearchService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public EmailController(EmailRepository emailRepository, EmailAttachmentRepository emailAttachmentRepository, BuildProperties buildProperties) {
+    public EmailController(EmailRepository emailRepository, BuildProperties buildProperties, EmailMaterializer emailMaterializer, EmailSearchService emailSearchService, ApplicationEventPublisher eventPublisher) {
         this.emailRepository = emailRepository;
-        this.emailAttachmentRepository = emailAttachmentRepository;
         this.buildProperties = buildProperties;
+        this.emailMaterializer = emailMaterializer;
+        this.emailSearchService = emailSearchService;
+        this.eventPublisher = eventPublisher;
     }
 
     @GetMapping({"/", "/email"})
-    public String getAll(@RequestParam(value = "page", defaultValue = "0") int page, @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size, Model model) {
-        return getAllEmailsPaged(page, size, model);
+    public String getAll(@RequestParam(value = "page", defaultValue = "0") int page, @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+                         @RequestParam(value = "q", required = false) String query, Model model) {
+        return getAllEmailsPaged(page, size, query, model);
     }
 
-    private String getAllEmailsPaged(int page, int size, Model model) {
+    private String getAllEmailsPaged(int page, int size, String query, Model model) {
         if(page < 0 || size <= 0){
             return REDIRECT_EMAIL_LIST_VIEW;
         }
-        var result = emailRepository.findAll(PageRequest.of(page, size, DEFAULT_SORT));
+        Page<EmailSummary> result;
+        if (query != null && !query.isBlank()) {
+            result = emailSearchService.search(query, PageRequest.of(page, size));
+            model.addAttribute(SEARCH_QUERY_MODEL_NAME, query);
+        } else {
+            result = emailRepository.findAllSummaries(PageRequest.of(page, size, DEFAULT_SORT));
+        }
         if (result.getNumber() != 0 && result.getNumber() >= result.getTotalPages()) {
             return REDIRECT_EMAIL_LIST_VIEW;
         }
@@ -56,6 +75,7 @@ public class EmailController {
 
     @GetMapping("/email/{id}")
     public String getEmailById(@PathVariable Long id, Model model) {
+        emailMaterializer.materialize(id);
         return emailRepository.findById(id).map(email -> appendToModelAndReturnView(model, email)).orElse(REDIRECT_EMAIL_LIST_VIEW);
     }
 
@@ -69,14 +89,15 @@ public class EmailController {
     public String deleteEmailById(@PathVariable Long id) {
         emailRepository.deleteById(id);
         emailRepository.flush();
+        eventPublisher.publishEvent(EmailDeletedEvent.of(List.of(id)));
         return REDIRECT_EMAIL_LIST_VIEW;
     }
 
     @DeleteMapping("/email")
     public String deleteAllEmails() {
-        emailAttachmentRepository.deleteAllInBatch();
         emailRepository.deleteAllInBatch();
         emailRepository.flush();
+        eventPublisher.publishEvent(EmailDeletedEvent.all());
         return REDIRECT_EMAIL_LIST_VIEW;
     }
 
@@ -1,22 +1,50 @@
 package de.gessnerfl.fakesmtp.controller;
 
 import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
 import de.gessnerfl.fakesmtp.repository.EmailAttachmentRepository;
+import de.gessnerfl.fakesmtp.repository.EmailBlobRepository;
+import de.gessnerfl.fakesmtp.repository.EmailCursor;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.repository.EmailCriteria;
+import de.gessnerfl.fakesmtp.repository.InlineImageRepository;
+import de.gessnerfl.fakesmtp.service.EmailArrivalNotifier;
+import de.gessnerfl.fakesmtp.service.EmailDeletedEvent;
+import de.gessnerfl.fakesmtp.service.EmailMaterializer;
+import de.gessnerfl.fakesmtp.service.EmailSearchService;
+import de.gessnerfl.fakesmtp.service.EmailStreamBroadcaster;
 import de.gessnerfl.fakesmtp.util.MediaTypeUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.ServletContext;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api")
@@ -24,65 +52,235 @@ import java.util.List;
 public class EmailRestController {
 
     private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_LIMIT = 1000;
+    private static final String DEFAULT_AWAIT_TIMEOUT = "30s";
+    private static final Duration MAX_AWAIT_TIMEOUT = Duration.ofMinutes(5);
+    private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(30);
+    //inline images of an email never change, they are identified by the hash of their content
+    static final String INLINE_IMAGE_CACHE_CONTROL = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().getHeaderValue() + ", immutable";
+    static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
 
     private static final String DEFAULT_SORT_PROPERTY = "receivedOn";
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    static final String FULL_VIEW = "full";
+    static final String SUMMARY_VIEW = "summary";
+
     private final EmailRepository emailRepository;
     private final EmailAttachmentRepository emailAttachmentRepository;
+    private final InlineImageRepository inlineImageRepository;
+    private final EmailBlobRepository emailBlobRepository;
     private final MediaTypeUtil mediaTypeUtil;
     private final ServletContext servletContext;
+    private final EmailMaterializer emailMaterializer;
+    private final EmailArrivalNotifier emailArrivalNotifier;
+    private final EmailStreamBroadcaster emailStreamBroadcaster;
+    private final EmailSearchService emailSearchService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public EmailRestController(EmailRepository emailRepository, EmailAttachmentRepository emailAttachmentRepository, MediaTypeUtil mediaTypeUtil, ServletContext servletContext) {
+    public EmailRestController(EmailRepository emailRepository, EmailAttachmentRepository emailAttachmentRepository, InlineImageRepository inlineImageRepository, EmailBlobRepository emailBlobRepository, MediaTypeUtil mediaTypeUtil, ServletContext servletContext, EmailMaterializer emailMaterializer, EmailArrivalNotifier emailArrivalNotifier, EmailStreamBroadcaster emailStreamBroadcaster, EmailSearchService emailSearchService, ApplicationEventPublisher eventPublisher) {
         this.emailRepository = emailRepository;
         this.emailAttachmentRepository = emailAttachmentRepository;
+        this.inlineImageRepository = inlineImageRepository;
+        this.emailBlobRepository = emailBlobRepository;
         this.mediaTypeUtil = mediaTypeUtil;
         this.servletContext = servletContext;
+        this.emailMaterializer = emailMaterializer;
+        this.emailArrivalNotifier = emailArrivalNotifier;
+        this.emailStreamBroadcaster = emailStreamBroadcaster;
+        this.emailSearchService = emailSearchService;
+        this.eventPublisher = eventPublisher;
     }
 
     @GetMapping("/email")
-    public List<Email> all(@RequestParam(value = "page", defaultValue = "0") @Min(0) int page,
-                           @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(0) int size,
-                           @RequestParam(value = "sort", defaultValue = "DESC") Sort.Direction sort) {
-        var result = emailRepository.findAll(PageRequest.of(page, size, Sort.by(sort, DEFAULT_SORT_PROPERTY)));
+    public List<?> all(@RequestParam(value = "page", defaultValue = "0") @Min(0) int page,
+                       @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(0) int size,
+                       @RequestParam(value = "sort", defaultValue = "DESC") Sort.Direction sort,
+                       @RequestParam(value = "view", defaultValue = FULL_VIEW) @Pattern(regexp = FULL_VIEW + "|" + SUMMARY_VIEW, flags = Pattern.Flag.CASE_INSENSITIVE) String view,
+                       @RequestParam(value = "to", required = false) String to,
+                       @RequestParam(value = "from", required = false) String from,
+                       @RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date since,
+                       @RequestParam(value = "until", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date until) {
+        var pageRequest = PageRequest.of(page, size, Sort.by(sort, DEFAULT_SORT_PROPERTY));
+        var criteria = new EmailCriteria().to(to).from(from).since(since).until(until);
+        Page<?> result;
+        if (criteria.isEmpty()) {
+            result = SUMMARY_VIEW.equalsIgnoreCase(view) ? emailRepository.findAllSummaries(pageRequest) : emailRepository.findAll(pageRequest);
+        } else {
+            result = SUMMARY_VIEW.equalsIgnoreCase(view) ? emailRepository.findAllSummariesMatching(criteria, pageRequest) : emailRepository.findAllMatching(criteria, pageRequest);
+        }
         if (result.getNumber() != 0 && result.getNumber() >= result.getTotalPages()) {
             return Collections.emptyList();
         }
         return result.getContent();
     }
 
+    @GetMapping(value = "/email", params = "limit")
+    public ResponseEntity<List<?>> allAfter(@RequestParam(value = "after", required = false) String after,
+                                            @RequestParam(value = "limit") @Min(1) @Max(MAX_LIMIT) int limit,
+                                            @RequestParam(value = "sort", defaultValue = "DESC") Sort.Direction sort,
+                                            @RequestParam(value = "view", defaultValue = FULL_VIEW) @Pattern(regexp = FULL_VIEW + "|" + SUMMARY_VIEW, flags = Pattern.Flag.CASE_INSENSITIVE) String view,
+                                            @RequestParam(value = "count", defaultValue = "false") boolean count,
+                                            @RequestParam(value = "to", required = false) String to,
+                                            @RequestParam(value = "from", required = false) String from,
+                                            @RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date since,
+                                            @RequestParam(value = "until", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date until) {
+        var cursor = after != null ? toCursor(after) : null;
+        var criteria = new EmailCriteria().to(to).from(from).since(since).until(until);
+        List<?> result;
+        EmailCursor nextCursor;
+        if (SUMMARY_VIEW.equalsIgnoreCase(view)) {
+            var summaries = emailRepository.findAllSummariesAfter(criteria, cursor, sort, limit);
+            nextCursor = nextCursor(summaries, limit, EmailSummary::getReceivedOn, EmailSummary::getId);
+            result = summaries;
+        } else {
+            var emails = emailRepository.findAllAfter(criteria, cursor, sort, limit);
+            nextCursor = nextCursor(emails, limit, Email::getReceivedOn, Email::getId);
+            result = emails;
+        }
+
+        var response = ResponseEntity.ok();
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor.toString());
+        }
+        if (count) {
+            response.header(TOTAL_COUNT_HEADER, String.valueOf(criteria.isEmpty() ? emailRepository.count() : emailRepository.countMatching(criteria)));
+        }
+        return response.body(result);
+    }
+
+    private static <T> EmailCursor nextCursor(List<T> items, int limit, Function<T, Date> receivedOn, Function<T, Long> id) {
+        if (items.size() < limit) {
+            return null;
+        }
+        var last = items.get(items.size() - 1);
+        return new EmailCursor(receivedOn.apply(last), id.apply(last));
+    }
+
+    private EmailCursor toCursor(String after) {
+        try {
+            if (EmailCursor.isCursor(after)) {
+                return EmailCursor.parse(after);
+            }
+            var id = Long.parseLong(after.trim());
+            return emailRepository.findReceivedOnById(id)
+                    .map(receivedOn -> new EmailCursor(receivedOn, id))
+                    .orElseThrow(() -> new EmailNotFoundException("Could not find email " + id + " referenced by cursor"));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidParameterException("Invalid cursor " + after, e);
+        }
+    }
+
+    @GetMapping("/email/search")
+    public ResponseEntity<List<EmailSummary>> search(@RequestParam(value = "q") String query,
+                                                     @RequestParam(value = "page", defaultValue = "0") @Min(0) int page,
+                                                     @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_LIMIT) int size) {
+        var result = emailSearchService.search(query, PageRequest.of(page, size));
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(result.getTotalElements()))
+                .body(result.getContent());
+    }
+
+    @GetMapping("/email/await")
+    public DeferredResult<ResponseEntity<Email>> awaitEmail(@RequestParam(value = "to", required = false) String to,
+                                                            @RequestParam(value = "from", required = false) String from,
+                                                            @RequestParam(value = "subjectContains", required = false) String subjectContains,
+                                                            @RequestParam(value = "since", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date since,
+                                                            @RequestParam(value = "timeout", defaultValue = DEFAULT_AWAIT_TIMEOUT) String timeout) {
+        var criteria = new EmailCriteria().to(to).from(from).subjectContains(subjectContains).since(since);
+        return emailArrivalNotifier.await(criteria, toAwaitTimeout(timeout));
+    }
+
+    private static Duration toAwaitTimeout(String timeout) {
+        try {
+            var duration = DurationStyle.detectAndParse(timeout);
+            if (duration.isNegative() || duration.isZero()) {
+                throw new InvalidParameterException("Timeout must be positive");
+            }
+            return duration.compareTo(MAX_AWAIT_TIMEOUT) > 0 ? MAX_AWAIT_TIMEOUT : duration;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterException("Invalid timeout " + timeout, e);
+        }
+    }
+
+    @GetMapping(value = "/email/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEmails(@RequestParam(value = "to", required = false) String to,
+                                   @RequestParam(value = "from", required = false) String from,
+                                   @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) Long lastEventId) {
+        var emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+        emailStreamBroadcaster.subscribe(emitter, new EmailCriteria().to(to).from(from), lastEventId);
+        return emitter;
+    }
+
     @GetMapping("/email/{id}")
     public Email getEmailById(@PathVariable Long id) {
+        emailMaterializer.materialize(id);
         return emailRepository.findById(id).orElseThrow(() -> new EmailNotFoundException("Could not find email " + id));
     }
 
     @GetMapping("/email/{mailId}/attachment/{attachmentId}")
     @ResponseBody
-    public ResponseEntity<ByteArrayResource> getEmailAttachmentById(@PathVariable Long mailId, @PathVariable Long attachmentId) {
-        var attachment = emailAttachmentRepository.findById(attachmentId)
-                .filter(a -> a.getEmail().getId().equals(mailId))
+    public ResponseEntity<Resource> getEmailAttachmentById(@PathVariable Long mailId, @PathVariable Long attachmentId, WebRequest request) {
+        emailMaterializer.materialize(mailId);
+        var attachment = emailAttachmentRepository.findSummaryByIdAndEmailId(attachmentId, mailId)
                 .orElseThrow(() -> new AttachmentNotFoundException("Attachment with id " + attachmentId + " not found for mail " + mailId));
+        var etag = "\"" + attachment.getHash() + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
 
         var mediaType = mediaTypeUtil.getMediaTypeForFileName(this.servletContext, attachment.getFilename());
 
+        //range requests and the content length are handled by the resource message converters
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=" + attachment.getFilename())
+                .eTag(etag)
                 .contentType(mediaType)
-                .contentLength(attachment.getData().length) //
-                .body(new ByteArrayResource(attachment.getData()));
+                .body(new EmailBlobResource(emailBlobRepository, attachment.getBlobId(), attachment.getSize(), attachment.getFilename()));
+    }
+
+    @GetMapping("/email/{mailId}/inline/{contentId}")
+    @ResponseBody
+    public ResponseEntity<ByteArrayResource> getEmailInlineImage(@PathVariable Long mailId, @PathVariable String contentId, WebRequest request) {
+        emailMaterializer.materialize(mailId);
+        var inlineImage = inlineImageRepository.findFirstByEmailIdAndContentId(mailId, contentId)
+                .orElseThrow(() -> new InlineImageNotFoundException("Inline image " + contentId + " not found for mail " + mailId));
+        var etag = emailBlobRepository.findHashById(inlineImage.getBlobId()).map(hash -> "\"" + hash + "\"").orElse(null);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+
+        var data = inlineImage.getData();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, INLINE_IMAGE_CACHE_CONTROL)
+                .eTag(etag)
+                .contentType(toMediaType(inlineImage.getContentType()))
+                .contentLength(data.length)
+                .body(new ByteArrayResource(data));
+    }
+
+    private static MediaType toMediaType(String contentType) {
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
     }
 
     @DeleteMapping("/email/{id}")
     public void deleteEmailById(@PathVariable Long id) {
         emailRepository.deleteById(id);
         emailRepository.flush();
+        eventPublisher.publishEvent(EmailDeletedEvent.of(List.of(id)));
     }
 
     @DeleteMapping("/email")
     public void deleteAllEmails() {
-        emailAttachmentRepository.deleteAllInBatch();
         emailRepository.deleteAllInBatch();
         emailRepository.flush();
+        eventPublisher.publishEvent(EmailDeletedEvent.all());
     }
 
 }
\ No newline at end of file
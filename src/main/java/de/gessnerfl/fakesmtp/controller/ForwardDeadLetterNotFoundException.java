@@ -0,0 +1,12 @@
+package de.gessnerfl.fakesmtp.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND)
+public class ForwardDeadLetterNotFoundException extends RuntimeException {
+
+    public ForwardDeadLetterNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,64 @@
+package de.gessnerfl.fakesmtp.controller;
+
+import de.gessnerfl.fakesmtp.model.ForwardDeadLetter;
+import de.gessnerfl.fakesmtp.repository.ForwardDeadLetterRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/forward/deadletter")
+@Validated
+public class ForwardDeadLetterRestController {
+
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 1000;
+    static final MediaType MESSAGE_RFC822 = MediaType.parseMediaType("message/rfc822");
+
+    private final ForwardDeadLetterRepository forwardDeadLetterRepository;
+
+    @Autowired
+    public ForwardDeadLetterRestController(ForwardDeadLetterRepository forwardDeadLetterRepository) {
+        this.forwardDeadLetterRepository = forwardDeadLetterRepository;
+    }
+
+    @GetMapping
+    public List<ForwardDeadLetter> all(@RequestParam(value = "page", defaultValue = "0") @Min(0) int page,
+                                       @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) @Min(1) @Max(MAX_PAGE_SIZE) int size) {
+        return forwardDeadLetterRepository.findAll(PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "id"))).getContent();
+    }
+
+    @GetMapping("/{id}/raw")
+    public ResponseEntity<ByteArrayResource> getRawData(@PathVariable Long id) {
+        var deadLetter = forwardDeadLetterRepository.findById(id)
+                .orElseThrow(() -> new ForwardDeadLetterNotFoundException("Could not find forwarding dead letter " + id));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=deadletter-" + id + ".eml")
+                .contentType(MESSAGE_RFC822)
+                .contentLength(deadLetter.getRawData().length)
+                .body(new ByteArrayResource(deadLetter.getRawData()));
+    }
+
+    @DeleteMapping("/{id}")
+    public void deleteById(@PathVariable Long id) {
+        if (!forwardDeadLetterRepository.existsById(id)) {
+            throw new ForwardDeadLetterNotFoundException("Could not find forwarding dead letter " + id);
+        }
+        forwardDeadLetterRepository.deleteById(id);
+    }
+
+    @DeleteMapping
+    public void deleteAll() {
+        forwardDeadLetterRepository.deleteAllInBatch();
+    }
+}
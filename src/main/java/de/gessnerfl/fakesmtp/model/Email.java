@@ -20,10 +20,16 @@ public class Email {
     @Basic(optional = false)
     private String fromAddress;
 
-    @Column(name="to_address", length = 255, nullable = false)
+    @Column(name="to_address", length = 65536, nullable = false)
     @Basic(optional = false)
     private String toAddress;
 
+    @ElementCollection
+    @CollectionTable(name = "email_recipient", joinColumns = @JoinColumn(name = "email"))
+    @OrderColumn(name = "position")
+    @Column(name = "address", length = 255, nullable = false)
+    private List<String> recipients = new ArrayList<>();
+
     @Lob
     @Column(name="subject", nullable = false)
     @Basic(optional = false)
@@ -39,6 +45,15 @@ public class Email {
     @Basic(optional = false)
     private String rawData;
 
+    @JsonIgnore
+    @Column(name="materialized", nullable = false)
+    @Basic(optional = false)
+    private boolean materialized = true;
+
+    //original bytes of a not yet materialized email; the raw data is decoded as UTF-8 and therefore not lossless
+    @Transient
+    private byte[] originalContent;
+
     @OneToMany(mappedBy="email", cascade = CascadeType.ALL, orphanRemoval=true)
     private List<EmailContent> contents = new ArrayList<>();
 
@@ -72,6 +87,14 @@ public class Email {
         this.toAddress = toAddress;
     }
 
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(List<String> recipients) {
+        this.recipients = recipients;
+    }
+
     public String getSubject() {
         return subject;
     }
@@ -96,6 +119,23 @@ public class Email {
         return rawData;
     }
 
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    public void setMaterialized(boolean materialized) {
+        this.materialized = materialized;
+    }
+
+    @JsonIgnore
+    public byte[] getOriginalContent() {
+        return originalContent;
+    }
+
+    public void setOriginalContent(byte[] originalContent) {
+        this.originalContent = originalContent;
+    }
+
     public void addContent(EmailContent content) {
         content.setEmail(this);
         contents.add(content);
@@ -20,9 +20,16 @@ public class EmailAttachment {
     @Basic(optional = false)
     private String filename;
 
-    @Lob
-    @Column(name="data", nullable = false)
+    @Column(name="blob", nullable = false)
     @Basic(optional = false)
+    private Long blobId;
+
+    @ManyToOne(fetch= FetchType.LAZY, optional = false)
+    @JoinColumn(name="blob", insertable = false, updatable = false)
+    private EmailBlob blob;
+
+    //data of an attachment which is not stored yet; stored attachments read the data from the shared blob
+    @Transient
     private byte[] data;
 
     public Long getId() {
@@ -50,8 +57,17 @@ public class EmailAttachment {
         this.filename = filename;
     }
 
+    @JsonIgnore
+    public Long getBlobId() {
+        return blobId;
+    }
+
+    public void setBlobId(Long blobId) {
+        this.blobId = blobId;
+    }
+
     public byte[] getData() {
-        return data;
+        return data == null && blob != null ? blob.getData() : data;
     }
 
     public void setData(byte[] data) {
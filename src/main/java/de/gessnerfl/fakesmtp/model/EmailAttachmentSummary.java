@@ -0,0 +1,37 @@
+package de.gessnerfl.fakesmtp.model;
+
+public class EmailAttachmentSummary {
+    private final Long id;
+    private final String filename;
+    private final Long blobId;
+    private final String hash;
+    private final long size;
+
+    public EmailAttachmentSummary(Long id, String filename, Long blobId, String hash, long size) {
+        this.id = id;
+        this.filename = filename;
+        this.blobId = blobId;
+        this.hash = hash;
+        this.size = size;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public Long getBlobId() {
+        return blobId;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,69 @@
+package de.gessnerfl.fakesmtp.model;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "email_blob")
+public class EmailBlob {
+    @Id
+    @SequenceGenerator(name = "email_blob_generator", sequenceName = "email_blob_sequence", allocationSize = 1)
+    @GeneratedValue(generator = "email_blob_generator")
+    private Long id;
+
+    @Column(name = "hash", length = 64, nullable = false, unique = true)
+    @Basic(optional = false)
+    private String hash;
+
+    @Column(name = "size", nullable = false)
+    @Basic(optional = false)
+    private long size;
+
+    @Column(name = "reference_count", nullable = false)
+    @Basic(optional = false)
+    private int referenceCount;
+
+    @Lob
+    @Column(name = "data", nullable = false)
+    @Basic(optional = false)
+    private byte[] data;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(int referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
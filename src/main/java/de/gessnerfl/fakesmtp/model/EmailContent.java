@@ -1,5 +1,7 @@
 package de.gessnerfl.fakesmtp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
 
 @Entity
@@ -12,6 +14,16 @@ public class EmailContent extends EmailPart {
     @Basic(optional = false)
     private ContentType contentType;
 
+    @Lob
+    @Column(name = "data", nullable = false)
+    @Basic(optional = false)
+    private String data;
+
+    @JsonIgnore
+    @Lob
+    @Column(name = "rendered")
+    private String rendered;
+
     public ContentType getContentType() {
         return contentType;
     }
@@ -19,4 +31,20 @@ public class EmailContent extends EmailPart {
     public void setContentType(ContentType contentType) {
         this.contentType = contentType;
     }
+
+    public String getData() {
+        return data;
+    }
+
+    public void setData(String data) {
+        this.data = data;
+    }
+
+    public String getRendered() {
+        return rendered;
+    }
+
+    public void setRendered(String rendered) {
+        this.rendered = rendered;
+    }
 }
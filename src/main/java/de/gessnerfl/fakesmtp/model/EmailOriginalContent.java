@@ -0,0 +1,32 @@
+package de.gessnerfl.fakesmtp.model;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "email_original_content")
+public class EmailOriginalContent {
+    @Id
+    @Column(name = "email", nullable = false)
+    private Long emailId;
+
+    @Lob
+    @Column(name = "data", nullable = false)
+    @Basic(optional = false)
+    private byte[] data;
+
+    public Long getEmailId() {
+        return emailId;
+    }
+
+    public void setEmailId(Long emailId) {
+        this.emailId = emailId;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
@@ -0,0 +1,53 @@
+package de.gessnerfl.fakesmtp.model;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "email_search_text")
+@SecondaryTable(name = "email_search_header", pkJoinColumns = @PrimaryKeyJoinColumn(name = "email"))
+public class EmailSearchText {
+    @Id
+    @Column(name = "email", nullable = false)
+    private Long emailId;
+
+    @Lob
+    @Column(name = "headers", nullable = false)
+    @Basic(optional = false)
+    private String headers;
+
+    //the headers are indexed on their own as well, so that emails matching in their headers are ranked first
+    @Lob
+    @Column(name = "headers", table = "email_search_header", nullable = false)
+    @Basic(optional = false)
+    private String headerIndex;
+
+    //null as long as the body of a lazily parsed email is not materialized
+    @Lob
+    @Column(name = "body")
+    private String body;
+
+    public Long getEmailId() {
+        return emailId;
+    }
+
+    public void setEmailId(Long emailId) {
+        this.emailId = emailId;
+    }
+
+    public String getHeaders() {
+        return headers;
+    }
+
+    public void setHeaders(String headers) {
+        this.headers = headers;
+        this.headerIndex = headers;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+}
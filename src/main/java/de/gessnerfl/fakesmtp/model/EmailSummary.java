@@ -0,0 +1,51 @@
+package de.gessnerfl.fakesmtp.model;
+
+import java.util.Date;
+
+public class EmailSummary {
+    private final Long id;
+    private final String fromAddress;
+    private final String toAddress;
+    private final String subject;
+    private final Date receivedOn;
+    private final long contentCount;
+    private final long attachmentCount;
+
+    public EmailSummary(Long id, String fromAddress, String toAddress, String subject, Date receivedOn, long contentCount, long attachmentCount) {
+        this.id = id;
+        this.fromAddress = fromAddress;
+        this.toAddress = toAddress;
+        this.subject = subject;
+        this.receivedOn = receivedOn;
+        this.contentCount = contentCount;
+        this.attachmentCount = attachmentCount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFromAddress() {
+        return fromAddress;
+    }
+
+    public String getToAddress() {
+        return toAddress;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Date getReceivedOn() {
+        return receivedOn;
+    }
+
+    public long getContentCount() {
+        return contentCount;
+    }
+
+    public long getAttachmentCount() {
+        return attachmentCount;
+    }
+}
@@ -0,0 +1,108 @@
+package de.gessnerfl.fakesmtp.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.persistence.*;
+import java.util.Date;
+
+@Entity
+@Table(name = "forward_dead_letter")
+public class ForwardDeadLetter {
+    @Id
+    @SequenceGenerator(name = "forward_dead_letter_generator", sequenceName = "forward_dead_letter_sequence", allocationSize = 1)
+    @GeneratedValue(generator = "forward_dead_letter_generator")
+    private Long id;
+
+    @Column(name="destination", length = 255)
+    private String destination;
+
+    @Column(name="from_address", length = 255)
+    private String fromAddress;
+
+    @Lob
+    @Column(name="recipients", nullable = false)
+    @Basic(optional = false)
+    private String recipients;
+
+    @Lob
+    @Column(name="raw_data", nullable = false)
+    @Basic(optional = false)
+    private byte[] rawData;
+
+    @Column(name="attempts", nullable = false)
+    @Basic(optional = false)
+    private int attempts;
+
+    @Column(name="last_error", length = 2048)
+    private String lastError;
+
+    @Column(name="failed_on", nullable = false)
+    @Basic(optional = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date failedOn;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    public String getFromAddress() {
+        return fromAddress;
+    }
+
+    public void setFromAddress(String fromAddress) {
+        this.fromAddress = fromAddress;
+    }
+
+    public String getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(String recipients) {
+        this.recipients = recipients;
+    }
+
+    @JsonIgnore
+    public byte[] getRawData() {
+        return rawData;
+    }
+
+    public void setRawData(byte[] rawData) {
+        this.rawData = rawData;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Date getFailedOn() {
+        return failedOn;
+    }
+
+    public void setFailedOn(Date failedOn) {
+        this.failedOn = failedOn;
+    }
+}
@@ -1,5 +1,7 @@
 package de.gessnerfl.fakesmtp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
 
 @Entity
@@ -14,6 +16,18 @@ public class InlineImage extends EmailPart {
     @Basic(optional = false)
     private String contentType;
 
+    @Column(name = "blob", nullable = false)
+    @Basic(optional = false)
+    private Long blobId;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "blob", insertable = false, updatable = false)
+    private EmailBlob blob;
+
+    //data of an inline image which is not stored yet; stored inline images read the data from the shared blob
+    @Transient
+    private byte[] data;
+
     public String getContentId() {
         return contentId;
     }
@@ -29,4 +43,21 @@ public class InlineImage extends EmailPart {
     public void setContentType(String contentType) {
         this.contentType = contentType;
     }
+
+    @JsonIgnore
+    public Long getBlobId() {
+        return blobId;
+    }
+
+    public void setBlobId(Long blobId) {
+        this.blobId = blobId;
+    }
+
+    public byte[] getData() {
+        return data == null && blob != null ? blob.getData() : data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
 }
@@ -1,10 +1,18 @@
 package de.gessnerfl.fakesmtp.repository;
 
 import de.gessnerfl.fakesmtp.model.EmailAttachment;
+import de.gessnerfl.fakesmtp.model.EmailAttachmentSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface EmailAttachmentRepository extends JpaRepository<EmailAttachment,Long> {
 
+    @Query("SELECT new de.gessnerfl.fakesmtp.model.EmailAttachmentSummary(a.id, a.filename, b.id, b.hash, b.size) " +
+            "FROM EmailAttachment a JOIN a.blob b WHERE a.id = :id AND a.email.id = :emailId")
+    Optional<EmailAttachmentSummary> findSummaryByIdAndEmailId(@Param("id") Long id, @Param("emailId") Long emailId);
 }
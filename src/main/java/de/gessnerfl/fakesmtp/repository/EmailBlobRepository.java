@@ -0,0 +1,36 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.EmailBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EmailBlobRepository extends JpaRepository<EmailBlob, Long>, EmailBlobRepositoryCustom {
+
+    @Query("SELECT b.id FROM EmailBlob b WHERE b.hash = :hash")
+    Optional<Long> findIdByHash(@Param("hash") String hash);
+
+    @Query("SELECT b.hash FROM EmailBlob b WHERE b.id = :id")
+    Optional<String> findHashById(@Param("id") Long id);
+
+    @Query("SELECT a.blobId FROM EmailAttachment a WHERE a.email.id IN :emailIds")
+    List<Long> findBlobIdsOfAttachments(@Param("emailIds") Collection<Long> emailIds);
+
+    @Query("SELECT i.blobId FROM InlineImage i WHERE i.email.id IN :emailIds")
+    List<Long> findBlobIdsOfInlineImages(@Param("emailIds") Collection<Long> emailIds);
+
+    @Modifying
+    @Query("UPDATE EmailBlob b SET b.referenceCount = b.referenceCount + :delta WHERE b.id = :id")
+    int addReferences(@Param("id") Long id, @Param("delta") int delta);
+
+    @Modifying
+    @Query("DELETE FROM EmailBlob b WHERE b.referenceCount <= 0")
+    int deleteUnreferenced();
+}
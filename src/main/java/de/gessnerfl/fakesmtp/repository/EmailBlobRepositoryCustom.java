@@ -0,0 +1,10 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface EmailBlobRepositoryCustom {
+
+    //streams the data of a blob directly from the database; the returned stream holds a database connection until it is closed
+    InputStream openDataStream(Long id) throws IOException;
+}
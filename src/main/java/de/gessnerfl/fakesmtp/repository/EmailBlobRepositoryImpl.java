@@ -0,0 +1,83 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class EmailBlobRepositoryImpl implements EmailBlobRepositoryCustom {
+    private static final String SELECT_DATA = "SELECT data FROM email_blob WHERE id = ?";
+
+    private final DataSource dataSource;
+
+    public EmailBlobRepositoryImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public InputStream openDataStream(Long id) throws IOException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        var opened = false;
+        try {
+            connection = DataSourceUtils.getConnection(dataSource);
+            statement = connection.prepareStatement(SELECT_DATA);
+            statement.setLong(1, id);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new FileNotFoundException("Blob " + id + " not found");
+            }
+            var stream = new BlobInputStream(resultSet.getBinaryStream(1), resultSet, statement, connection);
+            opened = true;
+            return stream;
+        } catch (SQLException e) {
+            throw new IOException("Failed to read blob " + id, e);
+        } finally {
+            if (!opened) {
+                release(resultSet, statement, connection);
+            }
+        }
+    }
+
+    private void release(ResultSet resultSet, PreparedStatement statement, Connection connection) {
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+
+    private class BlobInputStream extends FilterInputStream {
+        private final ResultSet resultSet;
+        private final PreparedStatement statement;
+        private final Connection connection;
+        private boolean closed;
+
+        private BlobInputStream(InputStream in, ResultSet resultSet, PreparedStatement statement, Connection connection) {
+            super(in);
+            this.resultSet = resultSet;
+            this.statement = statement;
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                release(resultSet, statement, connection);
+            }
+        }
+    }
+}
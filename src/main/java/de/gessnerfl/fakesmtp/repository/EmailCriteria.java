@@ -0,0 +1,69 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import java.util.Date;
+import java.util.List;
+
+public class EmailCriteria {
+    private String to;
+    private String from;
+    private String subjectContains;
+    private Date since;
+    private Date until;
+
+    public String getTo() {
+        return to;
+    }
+
+    public EmailCriteria to(String to) {
+        this.to = to;
+        return this;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public EmailCriteria from(String from) {
+        this.from = from;
+        return this;
+    }
+
+    public String getSubjectContains() {
+        return subjectContains;
+    }
+
+    public EmailCriteria subjectContains(String subjectContains) {
+        this.subjectContains = subjectContains;
+        return this;
+    }
+
+    public Date getSince() {
+        return since;
+    }
+
+    public EmailCriteria since(Date since) {
+        this.since = since;
+        return this;
+    }
+
+    public Date getUntil() {
+        return until;
+    }
+
+    public EmailCriteria until(Date until) {
+        this.until = until;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return to == null && from == null && subjectContains == null && since == null && until == null;
+    }
+
+    public boolean matches(String fromAddress, List<String> recipients, String subject, Date receivedOn) {
+        return (to == null || recipients.contains(to))
+                && (from == null || from.equals(fromAddress))
+                && (subjectContains == null || (subject != null && subject.contains(subjectContains)))
+                && (since == null || (receivedOn != null && !receivedOn.before(since)))
+                && (until == null || (receivedOn != null && receivedOn.before(until)));
+    }
+}
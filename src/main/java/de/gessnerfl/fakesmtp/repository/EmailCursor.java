@@ -0,0 +1,66 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Objects;
+
+public class EmailCursor {
+    private static final String SEPARATOR = ",";
+
+    private final Date receivedOn;
+    private final Long id;
+
+    public EmailCursor(Date receivedOn, Long id) {
+        this.receivedOn = Objects.requireNonNull(receivedOn);
+        this.id = Objects.requireNonNull(id);
+    }
+
+    public static boolean isCursor(String value) {
+        return value.contains(SEPARATOR);
+    }
+
+    public static EmailCursor parse(String value) {
+        var separatorIndex = value.lastIndexOf(SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new IllegalArgumentException("Cursor " + value + " does not match the format <receivedOn>,<id>");
+        }
+        var receivedOn = value.substring(0, separatorIndex).trim();
+        var id = Long.parseLong(value.substring(separatorIndex + 1).trim());
+        return new EmailCursor(Date.from(parseInstant(receivedOn)), id);
+    }
+
+    private static Instant parseInstant(String value) {
+        if (value.chars().allMatch(Character::isDigit)) {
+            return Instant.ofEpochMilli(Long.parseLong(value));
+        }
+        return Instant.parse(value);
+    }
+
+    public Date getReceivedOn() {
+        return receivedOn;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        var that = (EmailCursor) o;
+
+        return receivedOn.equals(that.receivedOn) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(receivedOn, id);
+    }
+
+    @Override
+    public String toString() {
+        return receivedOn.toInstant() + SEPARATOR + id;
+    }
+}
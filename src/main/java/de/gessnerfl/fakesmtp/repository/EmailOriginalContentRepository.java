@@ -0,0 +1,10 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.EmailOriginalContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EmailOriginalContentRepository extends JpaRepository<EmailOriginalContent, Long> {
+
+}
@@ -1,17 +1,62 @@
 package de.gessnerfl.fakesmtp.repository;
 
 import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface EmailRepository extends JpaRepository<Email,Long>{
+public interface EmailRepository extends JpaRepository<Email,Long>, EmailRepositoryCustom {
+
+    @Override
+    <S extends Email> S save(S email);
+
+    @Override
+    void deleteById(Long id);
+
+    @Query("SELECT e.id FROM Email e ORDER BY e.id")
+    List<Long> findAllIds();
+
+    //stored bytes of an email; text is counted UTF-8 encoded like EmailReceivedEvent does
+    String STORED_SIZE = "OCTET_LENGTH(e.raw_data)" +
+            " + COALESCE((SELECT OCTET_LENGTH(o.data) FROM email_original_content o WHERE o.email = e.id), 0)" +
+            " + COALESCE((SELECT SUM(OCTET_LENGTH(c.data) + COALESCE(OCTET_LENGTH(c.rendered), 0)) FROM email_content c WHERE c.email = e.id), 0)" +
+            " + COALESCE((SELECT SUM(b.size) FROM email_attachment a JOIN email_blob b ON b.id = a.blob WHERE a.email = e.id), 0)" +
+            " + COALESCE((SELECT SUM(b.size) FROM email_inline_image i JOIN email_blob b ON b.id = i.blob WHERE i.email = e.id), 0)";
+
+    @Query(value = "SELECT e.id, e.received_on, " + STORED_SIZE + " FROM email e ORDER BY e.id", nativeQuery = true)
+    List<Object[]> findStoredSizeOfAllEmails();
+
+    @Query(value = "SELECT " + STORED_SIZE + " FROM email e WHERE e.id = :id", nativeQuery = true)
+    Optional<Number> findStoredSizeById(@Param("id") Long id);
+
+    @Query(value = "SELECT e FROM Email e WHERE :recipient MEMBER OF e.recipients",
+            countQuery = "SELECT COUNT(e) FROM Email e WHERE :recipient MEMBER OF e.recipients")
+    Page<Email> findAllByRecipient(@Param("recipient") String recipient, Pageable pageable);
+
+    @Query(value = "SELECT new de.gessnerfl.fakesmtp.model.EmailSummary(e.id, e.fromAddress, e.toAddress, e.subject, e.receivedOn, " +
+            "(SELECT COUNT(c) FROM EmailContent c WHERE c.email = e), (SELECT COUNT(a) FROM EmailAttachment a WHERE a.email = e)) FROM Email e",
+            countQuery = "SELECT COUNT(e) FROM Email e")
+    Page<EmailSummary> findAllSummaries(Pageable pageable);
+
+    @Query("SELECT e.receivedOn FROM Email e WHERE e.id = :id")
+    Optional<Date> findReceivedOnById(@Param("id") Long id);
+
+    boolean existsByIdAndMaterializedFalse(Long id);
 
-    @Transactional
     @Modifying
-    @Query(value = "DELETE email o WHERE o.id IN ( SELECT i.id FROM email i ORDER BY i.received_on DESC OFFSET ?1)", nativeQuery = true)
-    int deleteEmailsExceedingDateRetentionLimit(int maxNumber);
+    @Query("UPDATE Email e SET e.materialized = true WHERE e.id = :id AND e.materialized = false")
+    int markAsMaterialized(@Param("id") Long id);
+
+    @Query("SELECT e.id FROM Email e WHERE e.materialized = false ORDER BY e.id")
+    List<Long> findIdsOfNotMaterializedEmails(Pageable pageable);
 }
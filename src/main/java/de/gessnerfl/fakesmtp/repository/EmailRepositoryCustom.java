@@ -0,0 +1,40 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface EmailRepositoryCustom {
+
+    //attachments and inline images reference shared, reference counted blobs; saving and deleting emails has to
+    //maintain the reference counts, therefore these methods replace the default implementations
+    <S extends Email> S save(S email);
+
+    void deleteById(Long id);
+
+    void deleteAllByIdInBatch(Iterable<Long> ids);
+
+    void deleteAllInBatch();
+
+    void deleteAll();
+
+    List<Email> findAllAfter(EmailCriteria criteria, EmailCursor cursor, Sort.Direction direction, int limit);
+
+    List<EmailSummary> findAllSummariesAfter(EmailCriteria criteria, EmailCursor cursor, Sort.Direction direction, int limit);
+
+    Page<Email> findAllMatching(EmailCriteria criteria, Pageable pageable);
+
+    Page<EmailSummary> findAllSummariesMatching(EmailCriteria criteria, Pageable pageable);
+
+    List<EmailSummary> findAllSummariesById(Collection<Long> ids);
+
+    long countMatching(EmailCriteria criteria);
+
+    Optional<Long> findIdOfLatestEmailMatching(EmailCriteria criteria);
+}
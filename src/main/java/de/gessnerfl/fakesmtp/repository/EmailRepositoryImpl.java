@@ -0,0 +1,365 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailAttachment;
+import de.gessnerfl.fakesmtp.model.EmailContent;
+import de.gessnerfl.fakesmtp.model.EmailOriginalContent;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+import org.hibernate.Session;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+
+public class EmailRepositoryImpl implements EmailRepositoryCustom {
+    private static final String ID = "id";
+    private static final String RECEIVED_ON = "receivedOn";
+    private static final String EMAIL = "email";
+    private static final String FROM_ADDRESS = "fromAddress";
+    private static final String SUBJECT = "subject";
+    private static final String RECIPIENTS = "recipients";
+    private static final char LIKE_ESCAPE_CHARACTER = '\\';
+
+    private static final int MAX_BLOB_ACQUIRE_ATTEMPTS = 3;
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private static final String INSERT_BLOB = "INSERT INTO email_blob (id, hash, size, reference_count, data) VALUES (NEXT VALUE FOR email_blob_sequence, ?, ?, ?, ?)";
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final EmailBlobRepository emailBlobRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public EmailRepositoryImpl(EmailBlobRepository emailBlobRepository) {
+        this.emailBlobRepository = emailBlobRepository;
+    }
+
+    @Override
+    @Transactional
+    public <S extends Email> S save(S email) {
+        //the blob queries must not flush new parts of an already managed email before their blob is assigned
+        var flushMode = entityManager.getFlushMode();
+        entityManager.setFlushMode(FlushModeType.COMMIT);
+        try {
+            acquireBlobsOf(email);
+        } finally {
+            entityManager.setFlushMode(flushMode);
+        }
+        if (email.getId() == null) {
+            entityManager.persist(email);
+            persistOriginalContent(email);
+            return email;
+        }
+        return entityManager.merge(email);
+    }
+
+    @Override
+    @Transactional
+    public void deleteById(Long id) {
+        var email = entityManager.find(Email.class, id);
+        if (email == null) {
+            throw new EmptyResultDataAccessException(String.format("No %s entity with id %s exists!", Email.class, id), 1);
+        }
+        releaseBlobsOf(List.of(id));
+        entityManager.remove(email);
+        entityManager.flush();
+        emailBlobRepository.deleteUnreferenced();
+    }
+
+    @Override
+    @Transactional
+    public void deleteAllByIdInBatch(Iterable<Long> ids) {
+        var idList = new ArrayList<Long>();
+        ids.forEach(idList::add);
+        if (idList.isEmpty()) {
+            return;
+        }
+        deleteInBatch(idList);
+        emailBlobRepository.deleteUnreferenced();
+    }
+
+    //only emails which exist at this point are deleted and their blob references released, so that blobs which are
+    //acquired by concurrently stored emails are kept
+    @Override
+    @Transactional
+    public void deleteAllInBatch() {
+        var ids = entityManager.createQuery("SELECT e.id FROM Email e ORDER BY e.id", Long.class).getResultList();
+        for (var from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+            deleteInBatch(ids.subList(from, Math.min(from + DELETE_BATCH_SIZE, ids.size())));
+        }
+        emailBlobRepository.deleteUnreferenced();
+    }
+
+    private void deleteInBatch(List<Long> ids) {
+        releaseBlobsOf(ids);
+        entityManager.createQuery("DELETE FROM Email e WHERE e.id IN :ids").setParameter("ids", ids).executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public void deleteAll() {
+        deleteAllInBatch();
+    }
+
+    //the original bytes of a not yet materialized email are kept until materialization, as the raw data is not lossless
+    private void persistOriginalContent(Email email) {
+        if (email.getOriginalContent() == null) {
+            return;
+        }
+        var originalContent = new EmailOriginalContent();
+        originalContent.setEmailId(email.getId());
+        originalContent.setData(email.getOriginalContent());
+        entityManager.persist(originalContent);
+    }
+
+    //blobs are acquired in the order of their hash, so that concurrently stored emails with the same parts wait for
+    //each other instead of deadlocking
+    private void acquireBlobsOf(Email email) {
+        var pendingBlobs = new TreeMap<String, PendingBlob>();
+        for (var attachment : email.getAttachments()) {
+            if (attachment.getBlobId() == null) {
+                pendingBlobs.computeIfAbsent(hash(attachment.getData()), hash -> new PendingBlob(attachment.getData())).assignments.add(attachment::setBlobId);
+            }
+        }
+        for (var inlineImage : email.getInlineImages()) {
+            if (inlineImage.getBlobId() == null) {
+                pendingBlobs.computeIfAbsent(hash(inlineImage.getData()), hash -> new PendingBlob(inlineImage.getData())).assignments.add(inlineImage::setBlobId);
+            }
+        }
+        pendingBlobs.forEach((hash, pendingBlob) -> {
+            var id = acquireBlob(hash, pendingBlob.data, pendingBlob.assignments.size());
+            pendingBlob.assignments.forEach(assignment -> assignment.accept(id));
+        });
+    }
+
+    private Long acquireBlob(String hash, byte[] data, int references) {
+        for (var attempt = 0; attempt < MAX_BLOB_ACQUIRE_ATTEMPTS; attempt++) {
+            var id = emailBlobRepository.findIdByHash(hash);
+            if (id.isEmpty()) {
+                var insertedId = insertBlob(hash, data, references);
+                if (insertedId.isPresent()) {
+                    return insertedId.get();
+                }
+            } else if (emailBlobRepository.addReferences(id.get(), references) == 1) {
+                return id.get();
+            }
+        }
+        throw new IllegalStateException("Failed to store blob " + hash);
+    }
+
+    //the blob is inserted within the transaction of the email, so that storing an email needs a single connection;
+    //an insert of a blob which is stored concurrently waits for the other transaction and fails on the unique hash
+    //once it is committed, which only rolls back the statement, so that the committed blob is referenced instead
+    private Optional<Long> insertBlob(String hash, byte[] data, int references) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (var insert = connection.prepareStatement(INSERT_BLOB, new String[]{ID})) {
+                insert.setString(1, hash);
+                insert.setLong(2, data.length);
+                insert.setInt(3, references);
+                insert.setBytes(4, data);
+                insert.executeUpdate();
+                try (var keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    return Optional.of(keys.getLong(1));
+                }
+            } catch (SQLException e) {
+                if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    return Optional.empty();
+                }
+                throw e;
+            }
+        });
+    }
+
+    private void releaseBlobsOf(Collection<Long> emailIds) {
+        var blobIds = new ArrayList<>(emailBlobRepository.findBlobIdsOfAttachments(emailIds));
+        blobIds.addAll(emailBlobRepository.findBlobIdsOfInlineImages(emailIds));
+        blobIds.stream().collect(groupingBy(Function.identity(), counting()))
+                .forEach((blobId, references) -> emailBlobRepository.addReferences(blobId, -references.intValue()));
+    }
+
+    private static class PendingBlob {
+        private final byte[] data;
+        private final List<LongConsumer> assignments = new ArrayList<>();
+
+        private PendingBlob(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    @Override
+    public List<Email> findAllAfter(EmailCriteria criteria, EmailCursor cursor, Sort.Direction direction, int limit) {
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(Email.class);
+        var email = query.from(Email.class);
+        query.select(email);
+        return execute(cb, query, email, criteria, cursor, direction, limit);
+    }
+
+    @Override
+    public List<EmailSummary> findAllSummariesAfter(EmailCriteria criteria, EmailCursor cursor, Sort.Direction direction, int limit) {
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(EmailSummary.class);
+        var email = query.from(Email.class);
+        selectSummary(cb, query, email);
+        return execute(cb, query, email, criteria, cursor, direction, limit);
+    }
+
+    @Override
+    public Page<Email> findAllMatching(EmailCriteria criteria, Pageable pageable) {
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(Email.class);
+        var email = query.from(Email.class);
+        query.select(email);
+        return execute(cb, query, email, criteria, pageable);
+    }
+
+    @Override
+    public Page<EmailSummary> findAllSummariesMatching(EmailCriteria criteria, Pageable pageable) {
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(EmailSummary.class);
+        var email = query.from(Email.class);
+        selectSummary(cb, query, email);
+        return execute(cb, query, email, criteria, pageable);
+    }
+
+    @Override
+    public List<EmailSummary> findAllSummariesById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(EmailSummary.class);
+        var email = query.from(Email.class);
+        selectSummary(cb, query, email);
+        query.where(email.get(ID).in(ids));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public long countMatching(EmailCriteria criteria) {
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(Long.class);
+        var email = query.from(Email.class);
+        query.select(cb.count(email)).where(toPredicates(cb, query, email, criteria).toArray(new Predicate[0]));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    @Override
+    public Optional<Long> findIdOfLatestEmailMatching(EmailCriteria criteria) {
+        var cb = entityManager.getCriteriaBuilder();
+        var query = cb.createQuery(Long.class);
+        var email = query.from(Email.class);
+        query.select(email.get(ID)).where(toPredicates(cb, query, email, criteria).toArray(new Predicate[0]))
+                .orderBy(cb.desc(email.get(RECEIVED_ON)), cb.desc(email.get(ID)));
+        return entityManager.createQuery(query).setMaxResults(1).getResultStream().findFirst();
+    }
+
+    private static void selectSummary(CriteriaBuilder cb, CriteriaQuery<EmailSummary> query, Root<Email> email) {
+        var contentCount = query.subquery(Long.class);
+        var content = contentCount.from(EmailContent.class);
+        contentCount.select(cb.count(content)).where(cb.equal(content.get(EMAIL), email));
+
+        var attachmentCount = query.subquery(Long.class);
+        var attachment = attachmentCount.from(EmailAttachment.class);
+        attachmentCount.select(cb.count(attachment)).where(cb.equal(attachment.get(EMAIL), email));
+
+        query.select(cb.construct(EmailSummary.class, email.get(ID), email.get(FROM_ADDRESS), email.get("toAddress"),
+                email.get(SUBJECT), email.get(RECEIVED_ON), contentCount, attachmentCount));
+    }
+
+    private static List<Predicate> toPredicates(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Email> email, EmailCriteria criteria) {
+        var predicates = new ArrayList<Predicate>();
+        if (criteria.getTo() != null) {
+            //uncorrelated sub query, so that the index on the recipient address can be used
+            var recipientQuery = query.subquery(Long.class);
+            var recipientEmail = recipientQuery.from(Email.class);
+            recipientQuery.select(recipientEmail.get(ID)).where(cb.equal(recipientEmail.join(RECIPIENTS), criteria.getTo()));
+            predicates.add(email.get(ID).in(recipientQuery));
+        }
+        if (criteria.getFrom() != null) {
+            predicates.add(cb.equal(email.get(FROM_ADDRESS), criteria.getFrom()));
+        }
+        if (criteria.getSubjectContains() != null) {
+            predicates.add(cb.like(email.<String>get(SUBJECT), "%" + escapeLikePattern(criteria.getSubjectContains()) + "%", LIKE_ESCAPE_CHARACTER));
+        }
+        if (criteria.getSince() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(email.<Date>get(RECEIVED_ON), criteria.getSince()));
+        }
+        if (criteria.getUntil() != null) {
+            predicates.add(cb.lessThan(email.<Date>get(RECEIVED_ON), criteria.getUntil()));
+        }
+        return predicates;
+    }
+
+    private static String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private <T> Page<T> execute(CriteriaBuilder cb, CriteriaQuery<T> query, Root<Email> email, EmailCriteria criteria, Pageable pageable) {
+        query.where(toPredicates(cb, query, email, criteria).toArray(new Predicate[0]));
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), email, cb));
+        var typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(typedQuery.getResultList(), pageable, () -> countMatching(criteria));
+    }
+
+    private <T> List<T> execute(CriteriaBuilder cb, CriteriaQuery<T> query, Root<Email> email, EmailCriteria criteria, EmailCursor cursor, Sort.Direction direction, int limit) {
+        var predicates = toPredicates(cb, query, email, criteria);
+        if (cursor != null) {
+            var receivedOn = email.<Date>get(RECEIVED_ON);
+            var id = email.<Long>get(ID);
+            if (direction.isAscending()) {
+                predicates.add(cb.or(cb.greaterThan(receivedOn, cursor.getReceivedOn()),
+                        cb.and(cb.equal(receivedOn, cursor.getReceivedOn()), cb.greaterThan(id, cursor.getId()))));
+            } else {
+                predicates.add(cb.or(cb.lessThan(receivedOn, cursor.getReceivedOn()),
+                        cb.and(cb.equal(receivedOn, cursor.getReceivedOn()), cb.lessThan(id, cursor.getId()))));
+            }
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        if (direction.isAscending()) {
+            query.orderBy(cb.asc(email.get(RECEIVED_ON)), cb.asc(email.get(ID)));
+        } else {
+            query.orderBy(cb.desc(email.get(RECEIVED_ON)), cb.desc(email.get(ID)));
+        }
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+}
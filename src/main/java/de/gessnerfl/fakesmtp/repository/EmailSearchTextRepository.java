@@ -0,0 +1,29 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.EmailSearchText;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EmailSearchTextRepository extends JpaRepository<EmailSearchText, Long> {
+
+    //uses the native full text index of H2 which is maintained by triggers on email_search_text; all words have to match.
+    //A second pass on the index of email_search_header ranks emails whose headers match all words ahead of the others
+    @Query(value = "SELECT e.id FROM FT_SEARCH_DATA(:query, 0, 0) ft JOIN email e ON e.id = ft.KEYS[1]" +
+            " LEFT JOIN FT_SEARCH_DATA(:query, 0, 0) h ON h.\"TABLE\" = 'EMAIL_SEARCH_HEADER' AND h.KEYS[1] = e.id" +
+            " WHERE ft.\"TABLE\" = 'EMAIL_SEARCH_TEXT'" +
+            " ORDER BY CASE WHEN h.KEYS IS NULL THEN 1 ELSE 0 END, e.received_on DESC, e.id DESC",
+            countQuery = "SELECT COUNT(*) FROM FT_SEARCH_DATA(:query, 0, 0) ft WHERE ft.\"TABLE\" = 'EMAIL_SEARCH_TEXT'",
+            nativeQuery = true)
+    Page<Number> findIdsOfEmailsMatching(@Param("query") String query, Pageable pageable);
+
+    @Query("SELECT e.id FROM Email e WHERE NOT EXISTS (SELECT s.emailId FROM EmailSearchText s" +
+            " WHERE s.emailId = e.id AND (s.body IS NOT NULL OR e.materialized = false)) ORDER BY e.id")
+    List<Long> findIdsOfEmailsToIndex();
+}
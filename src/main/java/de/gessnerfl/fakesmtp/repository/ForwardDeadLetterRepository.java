@@ -0,0 +1,24 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.ForwardDeadLetter;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ForwardDeadLetterRepository extends JpaRepository<ForwardDeadLetter, Long> {
+
+    @Query("SELECT d.id FROM ForwardDeadLetter d ORDER BY d.id DESC")
+    List<Long> findIdsNewestFirst(Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ForwardDeadLetter d WHERE d.id <= :id")
+    int deleteAllUpTo(@Param("id") Long id);
+}
@@ -0,0 +1,13 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import de.gessnerfl.fakesmtp.model.InlineImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface InlineImageRepository extends JpaRepository<InlineImage, Long> {
+
+    Optional<InlineImage> findFirstByEmailIdAndContentId(Long emailId, String contentId);
+}
@@ -0,0 +1,144 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+public class AddressMatcher {
+    private static final Pattern LITERAL_ADDRESS = Pattern.compile("(?:[\\w\\-]|\\\\\\.)+@(?:[\\w\\-]|\\\\\\.)+");
+    private static final Pattern LITERAL_DOMAIN = Pattern.compile("\\.\\*@((?:[\\w\\-]|\\\\\\.)+)");
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:\\d|k<)");
+    //group names must be unique within the combined pattern
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<[a-zA-Z]");
+    private static final String ESCAPED_DOT = "\\.";
+
+    private final List<String> rules;
+    private final List<String> invalidRules;
+    private final Map<String, String> exactAddresses;
+    private final Map<String, String> exactDomains;
+    private final Pattern combinedPattern;
+    private final int[] combinedGroupIndexes;
+    private final List<String> combinedRules;
+    private final List<Pattern> combinedRulePatterns;
+    private final List<Pattern> standalonePatterns;
+    private final List<String> standaloneRules;
+
+    private AddressMatcher(List<String> rules) {
+        this.rules = new ArrayList<>();
+        this.invalidRules = new ArrayList<>();
+        this.exactAddresses = new HashMap<>();
+        this.exactDomains = new HashMap<>();
+        this.combinedRules = new ArrayList<>();
+        this.combinedRulePatterns = new ArrayList<>();
+        this.standalonePatterns = new ArrayList<>();
+        this.standaloneRules = new ArrayList<>();
+
+        var combinedGroupIndexList = new ArrayList<Integer>();
+        var combinedRegex = new StringBuilder();
+        var groupIndex = 1;
+        for (var rule : rules) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(rule);
+            } catch (PatternSyntaxException e) {
+                invalidRules.add(rule);
+                continue;
+            }
+            this.rules.add(rule);
+            Matcher domainMatcher;
+            if (LITERAL_ADDRESS.matcher(rule).matches()) {
+                exactAddresses.putIfAbsent(unescape(rule), rule);
+            } else if ((domainMatcher = LITERAL_DOMAIN.matcher(rule)).matches()) {
+                exactDomains.putIfAbsent(unescape(domainMatcher.group(1)), rule);
+            } else if (BACK_REFERENCE.matcher(rule).find() || NAMED_GROUP.matcher(rule).find()) {
+                standalonePatterns.add(pattern);
+                standaloneRules.add(rule);
+            } else {
+                if (combinedRegex.length() > 0) {
+                    combinedRegex.append('|');
+                }
+                combinedRegex.append('(').append(rule).append(')');
+                combinedRules.add(rule);
+                combinedRulePatterns.add(pattern);
+                combinedGroupIndexList.add(groupIndex);
+                groupIndex += pattern.matcher("").groupCount() + 1;
+            }
+        }
+        this.combinedPattern = combinedRules.isEmpty() ? null : compileCombined(combinedRegex.toString());
+        this.combinedGroupIndexes = combinedGroupIndexList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //rules which are valid on their own might still conflict once they are joined; they are matched one by one then
+    private Pattern compileCombined(String combinedRegex) {
+        try {
+            return Pattern.compile(combinedRegex);
+        } catch (PatternSyntaxException e) {
+            standalonePatterns.addAll(0, combinedRulePatterns);
+            standaloneRules.addAll(0, combinedRules);
+            combinedRules.clear();
+            return null;
+        }
+    }
+
+    public static AddressMatcher compile(List<String> rules) {
+        return new AddressMatcher(rules);
+    }
+
+    public List<String> getRules() {
+        return rules;
+    }
+
+    public List<String> getInvalidRules() {
+        return invalidRules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public Optional<String> match(String address) {
+        if (address == null || rules.isEmpty()) {
+            return Optional.empty();
+        }
+        var rule = exactAddresses.get(address);
+        if (rule != null) {
+            return Optional.of(rule);
+        }
+        var domainSeparator = address.lastIndexOf('@');
+        if (domainSeparator >= 0 && !containsLineTerminator(address)) {
+            rule = exactDomains.get(address.substring(domainSeparator + 1));
+            if (rule != null) {
+                return Optional.of(rule);
+            }
+        }
+        if (combinedPattern != null) {
+            var matcher = combinedPattern.matcher(address);
+            if (matcher.matches()) {
+                for (var i = 0; i < combinedGroupIndexes.length; i++) {
+                    if (matcher.start(combinedGroupIndexes[i]) >= 0) {
+                        return Optional.of(combinedRules.get(i));
+                    }
+                }
+            }
+        }
+        for (var i = 0; i < standalonePatterns.size(); i++) {
+            if (standalonePatterns.get(i).matcher(address).matches()) {
+                return Optional.of(standaloneRules.get(i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean containsLineTerminator(String address) {
+        return address.chars().anyMatch(c -> c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029');
+    }
+
+    private static String unescape(String literal) {
+        return literal.replace(ESCAPED_DOT, ".");
+    }
+}
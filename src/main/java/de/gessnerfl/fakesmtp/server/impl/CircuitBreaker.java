@@ -0,0 +1,40 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import java.time.Clock;
+import java.time.Duration;
+
+//opens after a number of consecutive failures; once the open duration has elapsed a single trial is let through,
+//which either closes the circuit again or re-opens it immediately
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final Clock clock;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMillis = openDuration.toMillis();
+        this.clock = clock;
+    }
+
+    synchronized boolean isOpen() {
+        return getRemainingOpenTime() > 0;
+    }
+
+    synchronized long getRemainingOpenTime() {
+        return Math.max(0, openUntil - clock.millis());
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntil = clock.millis() + openDurationMillis;
+        }
+    }
+}
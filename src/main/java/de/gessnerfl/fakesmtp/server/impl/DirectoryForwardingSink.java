@@ -0,0 +1,48 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//stores the received bytes of each email as .eml file; files are written under a temporary name and renamed once
+//complete, so that consumers polling the directory never read partial emails
+class DirectoryForwardingSink implements ForwardingSink {
+    static final String FILE_SUFFIX = ".eml";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    DirectoryForwardingSink(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Map<OutboundMessage, Exception> send(List<OutboundMessage> messages) {
+        var failures = new LinkedHashMap<OutboundMessage, Exception>();
+        for (var message : messages) {
+            try {
+                write(message.getRawData());
+            } catch (IOException | RuntimeException e) {
+                failures.put(message, e);
+            }
+        }
+        return failures;
+    }
+
+    private void write(RawData rawData) throws IOException {
+        Files.createDirectories(directory);
+        var name = System.currentTimeMillis() + "-" + UUID.randomUUID();
+        var tempFile = directory.resolve(name + TEMP_FILE_SUFFIX);
+        try (var content = rawData.getContentAsStream()) {
+            Files.copy(content, tempFile);
+            Files.move(tempFile, directory.resolve(name + FILE_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
-import com.sun.mail.util.BASE64DecoderStream;
 import de.gessnerfl.fakesmtp.model.*;
 import de.gessnerfl.fakesmtp.util.TimestampProvider;
 import org.apache.commons.io.IOUtils;
@@ -8,8 +7,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.mail.*;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MimeUtility;
 import java.io.IOException;
-import java.util.Base64;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -18,39 +22,79 @@ public class EmailFactory {
     public static final String UNDEFINED = "<undefined>";
 
     private final TimestampProvider timestampProvider;
+    private final IngestMetrics ingestMetrics;
 
     @Autowired
-    public EmailFactory(TimestampProvider timestampProvider) {
+    public EmailFactory(TimestampProvider timestampProvider, IngestMetrics ingestMetrics) {
         this.timestampProvider = timestampProvider;
+        this.ingestMetrics = ingestMetrics;
     }
 
     public Email convert(RawData rawData) throws IOException {
+        var start = System.nanoTime();
+        var contentType = ContentType.UNDEFINED;
+        Email email;
         try {
             var mimeMessage = rawData.toMimeMessage();
             var subject = Objects.toString(mimeMessage.getSubject(), UNDEFINED);
-            var contentType = ContentType.fromString(mimeMessage.getContentType());
+            contentType = ContentType.fromString(mimeMessage.getContentType());
             var messageContent = mimeMessage.getContent();
-
-            switch (contentType) {
-                case HTML:
-                case PLAIN:
-                    return createPlainOrHtmlMail(rawData, subject, contentType, messageContent);
-                case MULTIPART_ALTERNATIVE:
-                case MULTIPART_MIXED:
-                case MULTIPART_RELATED:
-                    return createMultipartMail(rawData, subject, (Multipart) messageContent);
-                default:
-                    throw new IllegalStateException("Unsupported e-mail content type " + contentType.name());
-            }
+            email = createMail(rawData, subject, contentType, messageContent);
         } catch (MessagingException e) {
-            return buildFallbackEmail(rawData);
+            email = buildFallbackEmail(rawData);
+        }
+        ingestMetrics.messageConverted(contentType, email.getAttachments().size(), System.nanoTime() - start);
+        return email;
+    }
+
+    private Email createMail(RawData rawData, String subject, ContentType contentType, Object messageContent) throws IOException, MessagingException {
+        switch (contentType) {
+            case HTML:
+            case PLAIN:
+                return createPlainOrHtmlMail(rawData, subject, contentType, messageContent);
+            case MULTIPART_ALTERNATIVE:
+            case MULTIPART_MIXED:
+            case MULTIPART_RELATED:
+                return createMultipartMail(rawData, subject, (Multipart) messageContent);
+            default:
+                throw new IllegalStateException("Unsupported e-mail content type " + contentType.name());
+        }
+    }
+
+    public Email convertHeaders(RawData rawData) throws IOException {
+        var email = createEmailFromRawData(rawData);
+        email.setSubject(readSubject(rawData));
+        email.setOriginalContent(rawData.getContentAsBytes());
+        email.setMaterialized(false);
+        return email;
+    }
+
+    public void materialize(Email email) throws IOException {
+        //emails stored without their original bytes can only be materialized from the decoded raw data
+        var content = email.getOriginalContent() != null ? email.getOriginalContent() : email.getRawData().getBytes(StandardCharsets.UTF_8);
+        var rawData = new RawData(email.getFromAddress(), email.getRecipients(), content);
+        var parsedEmail = convert(rawData);
+        email.setSubject(parsedEmail.getSubject());
+        parsedEmail.getContents().forEach(email::addContent);
+        parsedEmail.getAttachments().forEach(email::addAttachment);
+        parsedEmail.getInlineImages().forEach(email::addInlineImage);
+        email.setOriginalContent(null);
+        email.setMaterialized(true);
+    }
+
+    private String readSubject(RawData rawData) throws IOException {
+        try (var inputStream = rawData.getContentAsStream()) {
+            var subject = new InternetHeaders(inputStream).getHeader("Subject", null);
+            return subject != null ? MimeUtility.decodeText(MimeUtility.unfold(subject)) : UNDEFINED;
+        } catch (MessagingException | UnsupportedEncodingException e) {
+            return UNDEFINED;
         }
     }
 
     private Email createPlainOrHtmlMail(RawData rawData, String subject, ContentType contentType, Object messageContent) {
         var email = createEmailFromRawData(rawData);
         email.setSubject(subject);
-        createEmailContent(rawData, contentType, messageContent).ifPresent(email::addContent);
+        createEmailContent(email, contentType, messageContent).ifPresent(email::addContent);
         return email;
     }
 
@@ -58,17 +102,17 @@ public class EmailFactory {
         var email = createEmailFromRawData(rawData);
         email.setSubject(subject);
 
-        appendMultipartBodyParts(email, rawData, multipart);
+        appendMultipartBodyParts(email, multipart);
 
         return email;
     }
 
-    private void appendMultipartBodyParts(Email email, RawData rawData, Multipart multipart) throws MessagingException, IOException {
+    private void appendMultipartBodyParts(Email email, Multipart multipart) throws MessagingException, IOException {
         for (int i = 0; i < multipart.getCount(); i++) {
             final var part = multipart.getBodyPart(i);
             final var disposition = part.getDisposition();
             if (disposition == null || disposition.equalsIgnoreCase(Part.INLINE)) {
-                appendMultipartContent(email, rawData, part);
+                appendMultipartContent(email, part);
             } else if (disposition.equalsIgnoreCase(Part.ATTACHMENT)) {
                 var attachment = createAttachment(part);
                 email.addAttachment(attachment);
@@ -76,25 +120,26 @@ public class EmailFactory {
         }
     }
 
-    private void appendMultipartContent(Email email, RawData rawData, BodyPart part) throws MessagingException, IOException {
+    private void appendMultipartContent(Email email, BodyPart part) throws MessagingException, IOException {
         var partContentType = ContentType.fromString(part.getContentType());
         if (partContentType == ContentType.HTML || partContentType == ContentType.PLAIN) {
             final var partContent = part.getContent();
-            createEmailContent(rawData, partContentType, partContent).ifPresent(email::addContent);
+            createEmailContent(email, partContentType, partContent).ifPresent(email::addContent);
         } else if (partContentType == ContentType.MULTIPART_RELATED || partContentType == ContentType.MULTIPART_ALTERNATIVE) {
             final var content = (Multipart) part.getContent();
-            appendMultipartBodyParts(email, rawData, content);
+            appendMultipartBodyParts(email, content);
         } else if (partContentType == ContentType.IMAGE) {
             createInlineImage(part).ifPresent(email::addInlineImage);
         }
     }
 
     private Email buildFallbackEmail(RawData rawData) {
+        ingestMetrics.fallbackParsed();
+        var email = createEmailFromRawData(rawData);
         var content = new EmailContent();
         content.setContentType(ContentType.PLAIN);
-        content.setData(rawData.getContentAsString());
+        content.setData(email.getRawData());
 
-        var email = createEmailFromRawData(rawData);
         email.setSubject(UNDEFINED);
         email.addContent(content);
         return email;
@@ -104,14 +149,15 @@ public class EmailFactory {
         var email = new Email();
         email.setFromAddress(rawData.getFrom());
         email.setToAddress(rawData.getTo());
+        email.setRecipients(new ArrayList<>(rawData.getRecipients()));
         email.setReceivedOn(timestampProvider.now());
         email.setRawData(rawData.getContentAsString());
         return email;
     }
 
-    private Optional<EmailContent> createEmailContent(RawData rawData, ContentType contentType, Object messageContent) {
+    private Optional<EmailContent> createEmailContent(Email email, ContentType contentType, Object messageContent) {
         var data = Optional.ofNullable(Objects.toString(messageContent, null))
-                .map(this::normalizeContent).orElseGet(() -> normalizeContent(rawData.getContentAsString()));
+                .map(this::normalizeContent).orElseGet(() -> normalizeContent(email.getRawData()));
         if (data == null) {
             return Optional.empty();
         }
@@ -123,9 +169,7 @@ public class EmailFactory {
 
     private Optional<InlineImage> createInlineImage(final BodyPart part) throws MessagingException, IOException {
         var contentType = part.getContentType();
-        Object rawContent = part.getContent();
-        var content = rawContent instanceof BASE64DecoderStream ? readBase64EncodedData((BASE64DecoderStream)rawContent) : Objects.toString(rawContent, null);
-        var data = Optional.ofNullable(content);
+        var data = readInlineImageData(part.getContent());
         return extractContentId(part).flatMap(contentId ->
             data.map(d -> {
                 var img = new InlineImage();
@@ -136,13 +180,15 @@ public class EmailFactory {
             }));
     }
 
-    private String readBase64EncodedData(BASE64DecoderStream stream){
-        try {
-            var byteArray = IOUtils.toByteArray(stream);
-            return Base64.getEncoder().encodeToString(byteArray);
-        } catch (IOException e) {
-            throw new EmailProcessingException("Failed to read inline image", e);
+    private Optional<byte[]> readInlineImageData(Object rawContent) {
+        if (rawContent instanceof InputStream) {
+            try (var stream = (InputStream) rawContent) {
+                return Optional.of(IOUtils.toByteArray(stream));
+            } catch (IOException e) {
+                throw new EmailProcessingException("Failed to read inline image", e);
+            }
         }
+        return Optional.ofNullable(Objects.toString(rawContent, null)).map(c -> c.getBytes(StandardCharsets.UTF_8));
     }
 
     private Optional<String> extractContentId(BodyPart part) throws MessagingException {
@@ -1,42 +1,107 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
 import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
 @Service
 public class EmailFilter {
+  static final String HITS_METRIC = "fakesmtp.filter.hits";
+  static final String RULE_TAG = "rule";
 
   private final FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
+  private final MeterRegistry meterRegistry;
+  private final IngestMetrics ingestMetrics;
   private final Logger logger;
+  private volatile CompiledFilter compiledFilter;
 
   @Autowired
-  public EmailFilter(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, Logger logger) {
+  public EmailFilter(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, MeterRegistry meterRegistry, IngestMetrics ingestMetrics, Logger logger) {
     this.fakeSmtpConfigurationProperties = fakeSmtpConfigurationProperties;
+    this.meterRegistry = meterRegistry;
+    this.ingestMetrics = ingestMetrics;
     this.logger = logger;
   }
 
   public boolean ignore(String sender, String recipient){
-    if(!StringUtils.hasText(this.fakeSmtpConfigurationProperties.getFilteredEmailRegexList())){
+    var start = System.nanoTime();
+    var ignored = false;
+    try {
+      ignored = matches(sender, recipient);
+      return ignored;
+    } finally {
+      ingestMetrics.participantsFiltered(ignored, System.nanoTime() - start);
+    }
+  }
+
+  private boolean matches(String sender, String recipient){
+    var filteredEmailRegexList = this.fakeSmtpConfigurationProperties.getFilteredEmailRegexList();
+    if(!StringUtils.hasText(filteredEmailRegexList)){
       return false;
     }
-    return ignoreParticipant(sender) || ignoreParticipant(recipient);
+    var filter = getCompiledFilter(filteredEmailRegexList);
+    return ignoreParticipant(filter, sender) || ignoreParticipant(filter, recipient);
   }
 
-  private boolean ignoreParticipant(String participant) {
+  private boolean ignoreParticipant(CompiledFilter filter, String participant) {
     if(StringUtils.hasText(participant)){
-      try{
-        if(Arrays.stream(this.fakeSmtpConfigurationProperties.getFilteredEmailRegexList().split(",")).anyMatch(participant::matches)){
-          logger.info("Participant '{}' matches a filtered email regex entry. Email will be filtered.", participant);
-          return true;
-        }
-      }catch(RuntimeException e){
-        logger.error("Unable to check participant '{}' against configured email filteredEmailRegexList '{}'", participant, this.fakeSmtpConfigurationProperties.getFilteredEmailRegexList(), e);
+      var rule = filter.matcher.match(participant);
+      if(rule.isPresent()){
+        filter.hitCounters.get(rule.get()).increment();
+        logger.info("Participant '{}' matches a filtered email regex entry. Email will be filtered.", participant);
+        return true;
       }
     }
     return false;
   }
+
+  private CompiledFilter getCompiledFilter(String filteredEmailRegexList) {
+    var filter = compiledFilter;
+    if (filter != null && filter.source.equals(filteredEmailRegexList)) {
+      return filter;
+    }
+    synchronized (this) {
+      if (compiledFilter == null || !compiledFilter.source.equals(filteredEmailRegexList)) {
+        compiledFilter = compile(filteredEmailRegexList, compiledFilter);
+      }
+      return compiledFilter;
+    }
+  }
+
+  private CompiledFilter compile(String filteredEmailRegexList, CompiledFilter previous) {
+    if (previous != null) {
+      previous.hitCounters.values().forEach(meterRegistry::remove);
+    }
+    var rules = Arrays.stream(filteredEmailRegexList.split(",")).filter(StringUtils::hasText).distinct().collect(toList());
+    var matcher = AddressMatcher.compile(rules);
+    for (var invalidRule : matcher.getInvalidRules()) {
+      logger.error("Ignore invalid regex '{}' of configured email filteredEmailRegexList '{}'", invalidRule, filteredEmailRegexList);
+    }
+    var hitCounters = matcher.getRules().stream()
+            .collect(toMap(Function.identity(), rule -> Counter.builder(HITS_METRIC).tag(RULE_TAG, rule).register(meterRegistry)));
+    return new CompiledFilter(filteredEmailRegexList, matcher, hitCounters);
+  }
+
+  private static class CompiledFilter {
+    private final String source;
+    private final AddressMatcher matcher;
+    private final Map<String, Counter> hitCounters;
+
+    private CompiledFilter(String source, AddressMatcher matcher, Map<String, Counter> hitCounters) {
+      this.source = Objects.requireNonNull(source);
+      this.matcher = matcher;
+      this.hitCounters = hitCounters;
+    }
+  }
 }
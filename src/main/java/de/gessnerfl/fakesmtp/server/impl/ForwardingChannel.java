@@ -0,0 +1,242 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.ForwardDeadLetter;
+import de.gessnerfl.fakesmtp.repository.ForwardDeadLetterRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//queue, workers, retries and circuit breaker of a single forwarding destination, so that a slow or unavailable
+//destination does not delay emails routed to other destinations
+class ForwardingChannel {
+    static final String QUEUE_SIZE_METRIC = "fakesmtp.forward.queue.size";
+    static final String SENT_METRIC = "fakesmtp.forward.sent";
+    static final String RETRIES_METRIC = "fakesmtp.forward.retries";
+    static final String DEAD_LETTERS_METRIC = "fakesmtp.forward.deadletters";
+    static final String CIRCUIT_OPEN_METRIC = "fakesmtp.forward.circuit.open";
+    static final String DESTINATION_TAG = "destination";
+    static final int MAX_ERROR_LENGTH = 2048;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final String name;
+    private final ForwardingSink sink;
+    private final int concurrency;
+    private final int queueSize;
+    private final Supplier<FakeSmtpConfigurationProperties.Forwarding> forwarding;
+    private final ForwardDeadLetterRepository forwardDeadLetterRepository;
+    private final ExecutorService executor;
+    private final Clock clock;
+    private final Logger logger;
+    //messages waiting for their first attempt or for their next retry; only messages which are due are taken
+    private final DelayQueue<OutboundMessage> queue = new DelayQueue<>();
+    private final CircuitBreaker circuitBreaker;
+    private final Counter sentCounter;
+    private final Counter retriesCounter;
+    private final Counter deadLettersCounter;
+
+    ForwardingChannel(String name, ForwardingSink sink, int concurrency, int queueSize, Supplier<FakeSmtpConfigurationProperties.Forwarding> forwarding, ForwardDeadLetterRepository forwardDeadLetterRepository, ExecutorService executor, MeterRegistry meterRegistry, Clock clock, Logger logger) {
+        this.name = name;
+        this.sink = sink;
+        this.concurrency = Math.max(1, concurrency);
+        this.queueSize = queueSize;
+        this.forwarding = forwarding;
+        this.forwardDeadLetterRepository = forwardDeadLetterRepository;
+        this.executor = executor;
+        this.clock = clock;
+        this.logger = logger;
+        var settings = forwarding.get();
+        this.circuitBreaker = new CircuitBreaker(settings.getCircuitBreakerThreshold(), settings.getCircuitBreakerOpenDuration(), clock);
+
+        Gauge.builder(QUEUE_SIZE_METRIC, queue, DelayQueue::size).tag(DESTINATION_TAG, name).register(meterRegistry);
+        Gauge.builder(CIRCUIT_OPEN_METRIC, circuitBreaker, c -> c.isOpen() ? 1 : 0).tag(DESTINATION_TAG, name).register(meterRegistry);
+        this.sentCounter = Counter.builder(SENT_METRIC).tag(DESTINATION_TAG, name).register(meterRegistry);
+        this.retriesCounter = Counter.builder(RETRIES_METRIC).tag(DESTINATION_TAG, name).register(meterRegistry);
+        this.deadLettersCounter = Counter.builder(DEAD_LETTERS_METRIC).tag(DESTINATION_TAG, name).register(meterRegistry);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void start() {
+        try {
+            for (var i = 0; i < concurrency; i++) {
+                executor.execute(this::forwardContinuously);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.debug("Email forwarding to {} is shut down: {}", name, e.getMessage());
+        }
+    }
+
+    //takes ownership of the given copy of the received data
+    void enqueue(RawData rawData) {
+        var message = new OutboundMessage(rawData, clock);
+        if (queue.size() >= queueSize) {
+            deadLetter(message, "Forwarding queue is full");
+            return;
+        }
+        logger.info("Queue message for forwarding to {}", name);
+        queue.add(message);
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    private void forwardContinuously() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    var message = queue.poll(forwarding.get().getConnectionIdleTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                    if (message != null) {
+                        forwardBatch(message);
+                    } else {
+                        sink.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected failure while forwarding emails to {}", name, e);
+                }
+            }
+        } finally {
+            sink.release();
+        }
+    }
+
+    void forwardDueMessages() {
+        OutboundMessage message;
+        while ((message = queue.poll()) != null) {
+            forwardBatch(message);
+        }
+        sink.release();
+    }
+
+    private void forwardBatch(OutboundMessage first) {
+        var batch = new ArrayList<OutboundMessage>();
+        batch.add(first);
+        queue.drainTo(batch, Math.max(1, forwarding.get().getBatchSize()) - 1);
+
+        var remainingOpenTime = circuitBreaker.getRemainingOpenTime();
+        if (remainingOpenTime > 0) {
+            //messages are not attempted while the destination is considered unavailable
+            batch.forEach(message -> reschedule(message, remainingOpenTime));
+            return;
+        }
+
+        batch.forEach(OutboundMessage::recordAttempt);
+        var failures = sink.send(batch);
+        for (var message : batch) {
+            var failure = failures.get(message);
+            if (failure != null) {
+                retryOrDeadLetter(message, failure);
+            } else {
+                sentCounter.increment();
+                closeQuietly(message);
+            }
+        }
+        if (failures.size() == batch.size()) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordSuccess();
+        }
+    }
+
+    private void retryOrDeadLetter(OutboundMessage message, Exception e) {
+        var rawData = message.getRawData();
+        if (message.getAttempts() >= forwarding.get().getMaxAttempts()) {
+            logger.error("Failed to forward email from {} for {} to {} after {} attempts", rawData.getFrom(), rawData.getTo(), name, message.getAttempts(), e);
+            deadLetter(message, e.getMessage());
+            return;
+        }
+        var backoff = getBackoff(message.getAttempts());
+        logger.warn("Failed to forward email from {} for {} to {}; retry in {} ms: {}", rawData.getFrom(), rawData.getTo(), name, backoff, e.getMessage());
+        retriesCounter.increment();
+        reschedule(message, backoff);
+    }
+
+    long getBackoff(int attempts) {
+        var settings = forwarding.get();
+        var maxBackoff = settings.getMaxBackoff().toMillis();
+        var backoff = settings.getInitialBackoff().toMillis();
+        for (var i = 1; i < attempts && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoff);
+    }
+
+    private void reschedule(OutboundMessage message, long delay) {
+        message.delay(delay);
+        queue.add(message);
+    }
+
+    private void deadLetter(OutboundMessage message, String error) {
+        var rawData = message.getRawData();
+        var maxDeadLetters = forwarding.get().getMaxDeadLetters();
+        deadLettersCounter.increment();
+        if (maxDeadLetters <= 0) {
+            logger.warn("Dropped email from {} for {} which could not be forwarded to {}: {}", rawData.getFrom(), rawData.getTo(), name, error);
+            closeQuietly(message);
+            return;
+        }
+        try (message; var content = rawData.getContentAsStream()) {
+            var deadLetter = new ForwardDeadLetter();
+            deadLetter.setDestination(name);
+            deadLetter.setFromAddress(rawData.getFrom());
+            deadLetter.setRecipients(rawData.getTo());
+            deadLetter.setRawData(content.readAllBytes());
+            deadLetter.setAttempts(message.getAttempts());
+            deadLetter.setLastError(error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+            deadLetter.setFailedOn(new Date(clock.millis()));
+            forwardDeadLetterRepository.save(deadLetter);
+            evictOldestDeadLetters(maxDeadLetters);
+            logger.warn("Stored email from {} for {} as forwarding dead letter of {}: {}", rawData.getFrom(), rawData.getTo(), name, error);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to store forwarding dead letter of email from {} for {}", rawData.getFrom(), rawData.getTo(), e);
+        }
+    }
+
+    //dead letters keep the whole message in the database, so only the newest ones are kept
+    private void evictOldestDeadLetters(int maxDeadLetters) {
+        var ids = forwardDeadLetterRepository.findIdsNewestFirst(PageRequest.of(maxDeadLetters, 1));
+        if (!ids.isEmpty()) {
+            forwardDeadLetterRepository.deleteAllUpTo(ids.get(0));
+        }
+    }
+
+    private void closeQuietly(OutboundMessage message) {
+        try {
+            message.close();
+        } catch (IOException e) {
+            logger.warn("Failed to delete spooled data of forwarded email: {}", e.getMessage());
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Email forwarding to {} did not terminate within {} seconds", name, SHUTDOWN_TIMEOUT_SECONDS);
+        }
+        var pending = List.copyOf(queue);
+        queue.clear();
+        pending.forEach(message -> deadLetter(message, "Forwarding aborted by shutdown"));
+    }
+}
@@ -0,0 +1,55 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import javax.mail.internet.InternetHeaders;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+//compiled entry of the forwarding routing table; it is evaluated per envelope recipient and all configured criteria
+//have to match, a route without any criteria matches every recipient
+class ForwardingRoute {
+    private final String name;
+    private final AddressMatcher senders;
+    private final AddressMatcher recipients;
+    private final String header;
+    private final Pattern headerPattern;
+
+    ForwardingRoute(String name, AddressMatcher senders, AddressMatcher recipients, String header, Pattern headerPattern) {
+        this.name = name;
+        this.senders = senders;
+        this.recipients = recipients;
+        this.header = header;
+        this.headerPattern = headerPattern;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean matches(RawData rawData, String recipient, Supplier<InternetHeaders> headers) {
+        return matchesRecipient(recipient) && matchesSender(rawData) && matchesHeader(headers);
+    }
+
+    private boolean matchesSender(RawData rawData) {
+        return senders.isEmpty() || (rawData.getFrom() != null && senders.match(rawData.getFrom()).isPresent());
+    }
+
+    private boolean matchesRecipient(String recipient) {
+        return recipients.isEmpty() || recipients.match(recipient).isPresent();
+    }
+
+    private boolean matchesHeader(Supplier<InternetHeaders> headers) {
+        if (header == null) {
+            return true;
+        }
+        var values = headers.get().getHeader(header);
+        if (values == null) {
+            return false;
+        }
+        for (var value : values) {
+            if (headerPattern == null || headerPattern.matcher(value.trim()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
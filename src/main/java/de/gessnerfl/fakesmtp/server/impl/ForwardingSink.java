@@ -0,0 +1,13 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import java.util.List;
+import java.util.Map;
+
+//target of a forwarding channel; returns the messages which could not be delivered together with their failure
+interface ForwardingSink {
+    Map<OutboundMessage, Exception> send(List<OutboundMessage> messages);
+
+    //called by a worker when it is idle or stops, so that connections kept open for it can be closed
+    default void release() {
+    }
+}
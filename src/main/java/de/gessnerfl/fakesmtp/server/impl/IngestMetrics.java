@@ -0,0 +1,88 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.model.ContentType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class IngestMetrics {
+    static final String DELIVER_DURATION_METRIC = "fakesmtp.ingest.deliver.duration";
+    static final String CONVERT_DURATION_METRIC = "fakesmtp.ingest.convert.duration";
+    static final String FALLBACK_PARSES_METRIC = "fakesmtp.ingest.convert.fallbacks";
+    static final String SAVE_DURATION_METRIC = "fakesmtp.ingest.save.duration";
+    static final String FORWARD_DURATION_METRIC = "fakesmtp.ingest.forward.duration";
+    static final String FILTER_DURATION_METRIC = "fakesmtp.ingest.filter.duration";
+    static final String MESSAGE_SIZE_METRIC = "fakesmtp.ingest.message.size";
+    static final String MESSAGE_RECIPIENTS_METRIC = "fakesmtp.ingest.message.recipients";
+    static final String MESSAGE_ATTACHMENTS_METRIC = "fakesmtp.ingest.message.attachments";
+    static final String CONTENT_TYPE_TAG = "contentType";
+    static final String RESULT_TAG = "result";
+    static final String IGNORED_RESULT = "ignored";
+    static final String ACCEPTED_RESULT = "accepted";
+
+    private final Timer deliverDuration;
+    //meters are registered upfront, so that no registry lookup is needed per email
+    private final Map<ContentType, Timer> convertDurations = new EnumMap<>(ContentType.class);
+    private final Counter fallbackParses;
+    private final Timer saveDuration;
+    private final Timer forwardDuration;
+    private final Timer filterIgnoredDuration;
+    private final Timer filterAcceptedDuration;
+    private final DistributionSummary messageSize;
+    private final DistributionSummary messageRecipients;
+    private final DistributionSummary messageAttachments;
+
+    @Autowired
+    public IngestMetrics(MeterRegistry meterRegistry) {
+        this.deliverDuration = Timer.builder(DELIVER_DURATION_METRIC).publishPercentileHistogram().register(meterRegistry);
+        for (var contentType : ContentType.values()) {
+            convertDurations.put(contentType, Timer.builder(CONVERT_DURATION_METRIC).tag(CONTENT_TYPE_TAG, contentType.name()).publishPercentileHistogram().register(meterRegistry));
+        }
+        this.fallbackParses = Counter.builder(FALLBACK_PARSES_METRIC).register(meterRegistry);
+        this.saveDuration = Timer.builder(SAVE_DURATION_METRIC).publishPercentileHistogram().register(meterRegistry);
+        this.forwardDuration = Timer.builder(FORWARD_DURATION_METRIC).publishPercentileHistogram().register(meterRegistry);
+        this.filterIgnoredDuration = Timer.builder(FILTER_DURATION_METRIC).tag(RESULT_TAG, IGNORED_RESULT).register(meterRegistry);
+        this.filterAcceptedDuration = Timer.builder(FILTER_DURATION_METRIC).tag(RESULT_TAG, ACCEPTED_RESULT).register(meterRegistry);
+        this.messageSize = DistributionSummary.builder(MESSAGE_SIZE_METRIC).baseUnit("bytes").register(meterRegistry);
+        this.messageRecipients = DistributionSummary.builder(MESSAGE_RECIPIENTS_METRIC).register(meterRegistry);
+        this.messageAttachments = DistributionSummary.builder(MESSAGE_ATTACHMENTS_METRIC).register(meterRegistry);
+    }
+
+    void messageDelivered(int recipients, long durationNanos) {
+        messageRecipients.record(recipients);
+        deliverDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void messageAccepted(long size) {
+        messageSize.record(size);
+    }
+
+    void messageConverted(ContentType contentType, int attachments, long durationNanos) {
+        messageAttachments.record(attachments);
+        convertDurations.get(contentType).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void fallbackParsed() {
+        fallbackParses.increment();
+    }
+
+    void messageSaved(long durationNanos) {
+        saveDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void messageForwarded(long durationNanos) {
+        forwardDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void participantsFiltered(boolean ignored, long durationNanos) {
+        (ignored ? filterIgnoredDuration : filterAcceptedDuration).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+}
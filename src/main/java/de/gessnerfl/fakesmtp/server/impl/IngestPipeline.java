@@ -0,0 +1,175 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.service.EmailReceivedEvent;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.subethamail.smtp.RejectException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class IngestPipeline {
+    static final String PARSE_STAGE = "parse";
+    static final String STORE_STAGE = "store";
+    static final String FORWARD_STAGE = "forward";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final EmailFactory emailFactory;
+    private final EmailRepository emailRepository;
+    private final MessageForwarder messageForwarder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IngestMetrics ingestMetrics;
+    private final Logger logger;
+    private final boolean asynchronous;
+    private final boolean lazyParsing;
+    private final AtomicInteger synchronousEmailsInProcess = new AtomicInteger();
+    private IngestStage parseStage;
+    private IngestStage storeStage;
+    private IngestStage forwardStage;
+
+    @Autowired
+    public IngestPipeline(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailFactory emailFactory, EmailRepository emailRepository, MessageForwarder messageForwarder, ApplicationEventPublisher eventPublisher, IngestMetrics ingestMetrics, ThreadFactoryProvider threadFactoryProvider, MeterRegistry meterRegistry, Logger logger) {
+        this.emailFactory = emailFactory;
+        this.emailRepository = emailRepository;
+        this.messageForwarder = messageForwarder;
+        this.eventPublisher = eventPublisher;
+        this.ingestMetrics = ingestMetrics;
+        this.logger = logger;
+
+        var ingest = fakeSmtpConfigurationProperties.getIngest();
+        this.asynchronous = ingest != null && ingest.isAsynchronous();
+        this.lazyParsing = ingest != null && ingest.isLazyParsing();
+        if (asynchronous) {
+            this.parseStage = createStage(PARSE_STAGE, ingest.getParse(), threadFactoryProvider, meterRegistry);
+            this.storeStage = createStage(STORE_STAGE, ingest.getStore(), threadFactoryProvider, meterRegistry);
+            this.forwardStage = createStage(FORWARD_STAGE, ingest.getForward(), threadFactoryProvider, meterRegistry);
+        }
+    }
+
+    private static IngestStage createStage(String name, FakeSmtpConfigurationProperties.Stage configuration, ThreadFactoryProvider threadFactoryProvider, MeterRegistry meterRegistry) {
+        return new IngestStage(name, configuration, threadFactoryProvider.create("ingest-" + name + "-"), meterRegistry);
+    }
+
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    //background work which is only an optimization defers to received emails while this is true
+    public boolean isBusy() {
+        if (!asynchronous) {
+            return synchronousEmailsInProcess.get() > 0;
+        }
+        return parseStage.getQueueSize() > 0 || storeStage.getQueueSize() > 0 || forwardStage.getQueueSize() > 0;
+    }
+
+    void submit(RawData rawData) throws IOException {
+        if (!asynchronous) {
+            synchronousEmailsInProcess.incrementAndGet();
+            try (rawData) {
+                var email = convert(rawData);
+                save(email);
+                forwardTimed(rawData);
+            } finally {
+                synchronousEmailsInProcess.decrementAndGet();
+            }
+            return;
+        }
+        try {
+            parseStage.submit(new IngestTask(rawData, () -> parse(rawData)));
+        } catch (RejectedExecutionException e) {
+            IOUtils.closeQuietly(rawData);
+            logger.warn("Reject email from {} for {}: {}", rawData.getFrom(), rawData.getTo(), e.getMessage());
+            throw new RejectException(451, "4.3.2 Too many messages in process; try again later");
+        }
+    }
+
+    private void parse(RawData rawData) {
+        Email email;
+        try {
+            email = convert(rawData);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to parse email from {} for {}", rawData.getFrom(), rawData.getTo(), e);
+            IOUtils.closeQuietly(rawData);
+            return;
+        }
+        handOver(storeStage, new IngestTask(rawData, () -> store(rawData, email)));
+    }
+
+    private Email convert(RawData rawData) throws IOException {
+        return lazyParsing ? emailFactory.convertHeaders(rawData) : emailFactory.convert(rawData);
+    }
+
+    private void store(RawData rawData, Email email) {
+        try {
+            save(email);
+        } catch (RuntimeException e) {
+            logger.error("Failed to store email from {} for {}", rawData.getFrom(), rawData.getTo(), e);
+            IOUtils.closeQuietly(rawData);
+            return;
+        }
+        handOver(forwardStage, new IngestTask(rawData, () -> forward(rawData)));
+    }
+
+    private void save(Email email) {
+        var start = System.nanoTime();
+        try {
+            emailRepository.save(email);
+        } finally {
+            ingestMetrics.messageSaved(System.nanoTime() - start);
+        }
+        eventPublisher.publishEvent(new EmailReceivedEvent(email));
+    }
+
+    private void forward(RawData rawData) {
+        try {
+            forwardTimed(rawData);
+        } catch (RuntimeException e) {
+            logger.error("Failed to forward email from {} for {}", rawData.getFrom(), rawData.getTo(), e);
+        } finally {
+            IOUtils.closeQuietly(rawData);
+        }
+    }
+
+    private void forwardTimed(RawData rawData) {
+        var start = System.nanoTime();
+        try {
+            messageForwarder.forward(rawData);
+        } finally {
+            ingestMetrics.messageForwarded(System.nanoTime() - start);
+        }
+    }
+
+    private void handOver(IngestStage stage, IngestTask task) {
+        try {
+            stage.submit(task);
+        } catch (RejectedExecutionException e) {
+            var rawData = task.getRawData();
+            logger.warn("Drop email from {} for {} in ingest stage {}: {}", rawData.getFrom(), rawData.getTo(), stage.getName(), e.getMessage());
+            task.discard();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (asynchronous) {
+            for (var stage : List.of(parseStage, storeStage, forwardStage)) {
+                if (!stage.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warn("Ingest stage {} did not terminate within {} seconds; {} emails pending", stage.getName(), SHUTDOWN_TIMEOUT_SECONDS, stage.getQueueSize());
+                }
+            }
+        }
+    }
+}
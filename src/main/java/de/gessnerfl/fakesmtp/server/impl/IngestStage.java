@@ -0,0 +1,99 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class IngestStage {
+    static final String QUEUE_SIZE_METRIC = "fakesmtp.ingest.queue.size";
+    static final String QUEUE_REMAINING_CAPACITY_METRIC = "fakesmtp.ingest.queue.remaining";
+    static final String ACTIVE_WORKERS_METRIC = "fakesmtp.ingest.workers.active";
+    static final String REJECTED_METRIC = "fakesmtp.ingest.rejected";
+    static final String DROPPED_METRIC = "fakesmtp.ingest.dropped";
+    static final String STAGE_TAG = "stage";
+
+    private final String name;
+    private final FakeSmtpConfigurationProperties.BackpressurePolicy backpressurePolicy;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+
+    IngestStage(String name, FakeSmtpConfigurationProperties.Stage configuration, ThreadFactory threadFactory, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.backpressurePolicy = configuration.getBackpressurePolicy();
+        var concurrency = configuration.getConcurrency();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(configuration.getQueueSize()),
+                threadFactory,
+                this::handleSaturation);
+
+        Gauge.builder(QUEUE_SIZE_METRIC, executor, e -> e.getQueue().size()).tag(STAGE_TAG, name).register(meterRegistry);
+        Gauge.builder(QUEUE_REMAINING_CAPACITY_METRIC, executor, e -> e.getQueue().remainingCapacity()).tag(STAGE_TAG, name).register(meterRegistry);
+        Gauge.builder(ACTIVE_WORKERS_METRIC, executor, ThreadPoolExecutor::getActiveCount).tag(STAGE_TAG, name).register(meterRegistry);
+        this.rejectedCounter = Counter.builder(REJECTED_METRIC).tag(STAGE_TAG, name).register(meterRegistry);
+        this.droppedCounter = Counter.builder(DROPPED_METRIC).tag(STAGE_TAG, name).register(meterRegistry);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    void submit(IngestTask task) {
+        executor.execute(task);
+    }
+
+    boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(timeout, unit)) {
+            return true;
+        }
+        executor.shutdownNow().forEach(this::discard);
+        return false;
+    }
+
+    private void handleSaturation(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Ingest stage " + name + " is shut down");
+        }
+        switch (backpressurePolicy) {
+            case REJECT:
+                rejectedCounter.increment();
+                throw new RejectedExecutionException("Queue of ingest stage " + name + " is full");
+            case DROP_OLDEST:
+                var dropped = executor.getQueue().poll();
+                if (dropped != null) {
+                    droppedCounter.increment();
+                    discard(dropped);
+                }
+                executor.execute(task);
+                break;
+            case BLOCK:
+            default:
+                waitForQueueCapacity(task, executor);
+        }
+    }
+
+    private void waitForQueueCapacity(Runnable task, ThreadPoolExecutor executor) {
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for capacity in ingest stage " + name, e);
+        }
+    }
+
+    private void discard(Runnable task) {
+        ((IngestTask) task).discard();
+    }
+}
@@ -0,0 +1,26 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.apache.commons.io.IOUtils;
+
+class IngestTask implements Runnable {
+    private final RawData rawData;
+    private final Runnable action;
+
+    IngestTask(RawData rawData, Runnable action) {
+        this.rawData = rawData;
+        this.action = action;
+    }
+
+    RawData getRawData() {
+        return rawData;
+    }
+
+    @Override
+    public void run() {
+        action.run();
+    }
+
+    void discard() {
+        IOUtils.closeQuietly(rawData);
+    }
+}
@@ -2,34 +2,148 @@ package de.gessnerfl.fakesmtp.server.impl;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMailMessage;
 import org.springframework.stereotype.Service;
 
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
 import javax.mail.internet.MimeMessage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 @Service
 public class JavaMailSenderFacade {
 
     static final String ERROR_MESSAGE = "Spring mail system is not configured; Skip email forwarding";
+    static final String RELAY_ERROR_MESSAGE = "Raw relay requires the Spring mail system to be configured by host";
 
     private JavaMailSender javaMailSender;
     private Logger logger;
+    //raw relay keeps the connection of each forwarding worker open across batches until the worker releases it
+    private final ThreadLocal<Transport> connections = new ThreadLocal<>();
 
-    public void send(MimeMessage mimeMessage){
+    public boolean isConfigured() {
+        return javaMailSender != null;
+    }
+
+    //all messages are sent over a single connection of the mail system
+    public void send(List<MimeMessage> mimeMessages){
         if(javaMailSender != null){
-            javaMailSender.send(mimeMessage);
+            javaMailSender.send(mimeMessages.toArray(MimeMessage[]::new));
         } else{
             logger.error(ERROR_MESSAGE);
         }
     }
 
-    public void send(SimpleMailMessage message){
-        if(javaMailSender != null){
-            javaMailSender.send(message);
-        } else{
+    //sends the messages as they are over the connection of the calling thread; in contrast to the JavaMailSender no headers are added or
+    //rewritten and the envelope of raw messages is used instead of the recipients of the headers
+    public void relay(List<? extends MimeMessage> mimeMessages){
+        if(javaMailSender == null){
             logger.error(ERROR_MESSAGE);
+            return;
+        }
+        if(!(javaMailSender instanceof JavaMailSenderImpl)){
+            throw new MailPreparationException(RELAY_ERROR_MESSAGE);
+        }
+        var sender = (JavaMailSenderImpl) javaMailSender;
+        Transport transport;
+        try {
+            transport = getConnection(sender);
+        } catch (MessagingException e) {
+            throw new MailSendException("Failed to connect to mail server", e, allFailed(mimeMessages, e));
+        }
+        var failedMessages = new LinkedHashMap<Object, Exception>();
+        for (var i = 0; i < mimeMessages.size(); i++) {
+            var mimeMessage = mimeMessages.get(i);
+            try {
+                transport.sendMessage(mimeMessage, getEnvelopeRecipients(mimeMessage));
+            } catch (MessagingException e) {
+                failedMessages.put(mimeMessage, e);
+                if (!transport.isConnected()) {
+                    //the remaining messages are retried over a new connection
+                    releaseConnection();
+                    mimeMessages.subList(i + 1, mimeMessages.size()).forEach(remaining -> failedMessages.put(remaining, e));
+                    break;
+                }
+            }
+        }
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    //isConnected() checks the connection with a NOOP command, so connections closed by the server are replaced
+    private Transport getConnection(JavaMailSenderImpl sender) throws MessagingException {
+        var transport = connections.get();
+        if (transport != null && transport.isConnected()) {
+            return transport;
+        }
+        releaseConnection();
+        transport = connect(sender);
+        connections.set(transport);
+        return transport;
+    }
+
+    //closes the connection kept open for the calling thread, if any
+    public void releaseConnection() {
+        var transport = connections.get();
+        if (transport == null) {
+            return;
         }
+        connections.remove();
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            logger.debug("Failed to close connection to mail server: {}", e.getMessage());
+        }
+    }
+
+    private static Transport connect(JavaMailSenderImpl sender) throws MessagingException {
+        var protocol = sender.getProtocol() != null ? sender.getProtocol() : JavaMailSenderImpl.DEFAULT_PROTOCOL;
+        var transport = sender.getSession().getTransport(protocol);
+        var username = sender.getUsername();
+        var password = sender.getPassword();
+        if ("".equals(username)) {
+            username = null;
+            if ("".equals(password)) {
+                password = null;
+            }
+        }
+        transport.connect(sender.getHost(), sender.getPort(), username, password);
+        return transport;
+    }
+
+    private static Address[] getEnvelopeRecipients(MimeMessage mimeMessage) throws MessagingException {
+        if (mimeMessage instanceof RawMessage) {
+            return ((RawMessage) mimeMessage).getEnvelopeRecipients();
+        }
+        var recipients = mimeMessage.getAllRecipients();
+        return recipients != null ? recipients : new Address[0];
+    }
+
+    private static Map<Object, Exception> allFailed(List<? extends MimeMessage> mimeMessages, Exception e) {
+        var failedMessages = new LinkedHashMap<Object, Exception>();
+        mimeMessages.forEach(mimeMessage -> failedMessages.put(mimeMessage, e));
+        return failedMessages;
+    }
+
+    public Session getSession(){
+        return javaMailSender instanceof JavaMailSenderImpl ? ((JavaMailSenderImpl) javaMailSender).getSession() : Session.getInstance(new Properties());
+    }
+
+    public MimeMessage toMimeMessage(SimpleMailMessage message){
+        var mimeMessage = javaMailSender != null ? javaMailSender.createMimeMessage() : new MimeMessage(getSession());
+        message.copyTo(new MimeMailMessage(mimeMessage));
+        return mimeMessage;
     }
 
     @Autowired(required = false)
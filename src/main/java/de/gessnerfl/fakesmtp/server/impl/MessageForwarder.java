@@ -1,40 +1,238 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
 import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.repository.ForwardDeadLetterRepository;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.mail.MessagingException;
+import javax.mail.internet.InternetHeaders;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @Service
 public class MessageForwarder {
+    static final String DEFAULT_DESTINATION = "default";
 
     private final FakeSmtpConfigurationProperties configurationProperties;
     private final JavaMailSenderFacade javaMailSenderFacade;
+    private final ForwardDeadLetterRepository forwardDeadLetterRepository;
+    private final BiFunction<String, Integer, ExecutorService> executorFactory;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
     private final Logger logger;
+    //routes are compiled once on startup and evaluated in the configured order; the first matching route wins
+    private final Map<ForwardingRoute, ForwardingChannel> routes = new LinkedHashMap<>();
+    private final Map<String, ForwardingChannel> channels = new LinkedHashMap<>();
+    private final ForwardingChannel defaultChannel;
 
     @Autowired
-    public MessageForwarder(FakeSmtpConfigurationProperties configurationProperties, JavaMailSenderFacade javaMailSenderFacade, Logger logger) {
+    public MessageForwarder(FakeSmtpConfigurationProperties configurationProperties, JavaMailSenderFacade javaMailSenderFacade, ForwardDeadLetterRepository forwardDeadLetterRepository, ThreadFactoryProvider threadFactoryProvider, MeterRegistry meterRegistry, Logger logger) {
+        this(configurationProperties, javaMailSenderFacade, forwardDeadLetterRepository, (name, concurrency) -> Executors.newFixedThreadPool(concurrency, threadFactoryProvider.create("forward-" + name + "-")), meterRegistry, Clock.systemUTC(), logger);
+    }
+
+    MessageForwarder(FakeSmtpConfigurationProperties configurationProperties, JavaMailSenderFacade javaMailSenderFacade, ForwardDeadLetterRepository forwardDeadLetterRepository, BiFunction<String, Integer, ExecutorService> executorFactory, MeterRegistry meterRegistry, Clock clock, Logger logger) {
         this.configurationProperties = configurationProperties;
         this.javaMailSenderFacade = javaMailSenderFacade;
+        this.forwardDeadLetterRepository = forwardDeadLetterRepository;
+        this.executorFactory = executorFactory;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
         this.logger = logger;
+        this.defaultChannel = createChannel(DEFAULT_DESTINATION, new SmtpForwardingSink(javaMailSenderFacade, () -> getForwarding().isRawRelay(), logger), 1, getForwarding().getQueueSize());
+        for (var route : getForwarding().getRoutes()) {
+            compile(route);
+        }
+    }
+
+    private void compile(FakeSmtpConfigurationProperties.Route route) {
+        var name = route.getName();
+        if (!StringUtils.hasText(name) || channels.containsKey(name)) {
+            logger.error("Ignore forwarding route with missing or duplicate name '{}'", name);
+            return;
+        }
+        var senders = compileAddressRules(name, route.getSenders());
+        var recipients = compileAddressRules(name, route.getRecipients());
+        Pattern headerPattern;
+        try {
+            headerPattern = StringUtils.hasText(route.getHeaderPattern()) ? Pattern.compile(route.getHeaderPattern()) : null;
+        } catch (PatternSyntaxException e) {
+            logger.error("Ignore forwarding route '{}' with invalid header pattern '{}'", name, route.getHeaderPattern());
+            return;
+        }
+        //a route whose rules are all invalid must not turn into a route matching every email
+        if (senders == null || recipients == null) {
+            logger.error("Ignore forwarding route '{}' without any valid sender or recipient regex", name);
+            return;
+        }
+        var sink = createSink(route);
+        if (sink == null) {
+            return;
+        }
+        var header = StringUtils.hasText(route.getHeader()) ? route.getHeader() : null;
+        routes.put(new ForwardingRoute(name, senders, recipients, header, headerPattern), createChannel(name, sink, route.getConcurrency(), route.getQueueSize()));
+    }
+
+    private AddressMatcher compileAddressRules(String name, List<String> rules) {
+        var matcher = AddressMatcher.compile(rules != null ? rules : List.of());
+        for (var invalidRule : matcher.getInvalidRules()) {
+            logger.error("Ignore invalid regex '{}' of forwarding route '{}'", invalidRule, name);
+        }
+        return matcher.isEmpty() && !matcher.getInvalidRules().isEmpty() ? null : matcher;
+    }
+
+    private ForwardingSink createSink(FakeSmtpConfigurationProperties.Route route) {
+        switch (route.getType()) {
+            case DIRECTORY:
+                if (route.getDirectory() == null) {
+                    logger.error("Ignore forwarding route '{}' without directory", route.getName());
+                    return null;
+                }
+                return new DirectoryForwardingSink(route.getDirectory().toPath());
+            case WEBHOOK:
+                if (route.getUrl() == null) {
+                    logger.error("Ignore forwarding route '{}' without url", route.getName());
+                    return null;
+                }
+                return new WebhookForwardingSink(route.getUrl(), HttpClient.newBuilder().connectTimeout(WebhookForwardingSink.TIMEOUT).build());
+            default:
+                return createSmtpSink(route);
+        }
+    }
+
+    private ForwardingSink createSmtpSink(FakeSmtpConfigurationProperties.Route route) {
+        if (!StringUtils.hasText(route.getHost())) {
+            if (!javaMailSenderFacade.isConfigured()) {
+                logger.error("Ignore forwarding route '{}' without host; {}", route.getName(), JavaMailSenderFacade.ERROR_MESSAGE);
+                return null;
+            }
+            return new SmtpForwardingSink(javaMailSenderFacade, () -> getForwarding().isRawRelay(), logger);
+        }
+        var sender = new JavaMailSenderImpl();
+        sender.setHost(route.getHost());
+        sender.setPort(route.getPort());
+        sender.setUsername(route.getUsername());
+        sender.setPassword(route.getPassword());
+        var facade = new JavaMailSenderFacade();
+        facade.setJavaMailSender(sender);
+        facade.setLogger(logger);
+        return new SmtpForwardingSink(facade, () -> getForwarding().isRawRelay(), logger);
+    }
+
+    private ForwardingChannel createChannel(String name, ForwardingSink sink, int concurrency, int queueSize) {
+        var channel = new ForwardingChannel(name, sink, concurrency, queueSize, this::getForwarding, forwardDeadLetterRepository, executorFactory.apply(name, Math.max(1, concurrency)), meterRegistry, clock, logger);
+        channels.put(name, channel);
+        return channel;
+    }
+
+    @PostConstruct
+    public void start() {
+        channels.values().forEach(ForwardingChannel::start);
     }
 
     public void forward(RawData rawData){
-        if(configurationProperties.isForwardEmails()){
-            logger.info("Forward message to configured target email system");
+        if(!configurationProperties.isForwardEmails()){
+            return;
+        }
+        for (var entry : route(rawData).entrySet()) {
             try {
-                javaMailSenderFacade.send(rawData.toMimeMessage());
-            } catch (MessagingException e) {
-                logger.warn("Failed to convert raw data to MimeMessage; fall back to simple message forwarding", e);
-                var message = new SimpleMailMessage();
-                message.setFrom(rawData.getFrom());
-                message.setTo(rawData.getTo());
-                message.setText(rawData.getContentAsString());
-                javaMailSenderFacade.send(message);
+                entry.getKey().enqueue(rawData.copy(entry.getValue()));
+            } catch (IOException e) {
+                logger.error("Failed to queue email from {} for {} for forwarding", rawData.getFrom(), entry.getValue(), e);
+            }
+        }
+    }
+
+    //each recipient is forwarded by the first route matching it, so an email whose recipients match different routes is
+    //split up and every destination only receives the recipients routed to it
+    private Map<ForwardingChannel, List<String>> route(RawData rawData) {
+        var headers = new LazyHeaders(rawData);
+        var recipientsByChannel = new LinkedHashMap<ForwardingChannel, List<String>>();
+        var unrouted = new ArrayList<String>();
+        for (var recipient : rawData.getRecipients()) {
+            var channel = route(rawData, recipient, headers);
+            if (channel != null) {
+                recipientsByChannel.computeIfAbsent(channel, c -> new ArrayList<>()).add(recipient);
+            } else {
+                unrouted.add(recipient);
+            }
+        }
+        if (unrouted.isEmpty()) {
+            return recipientsByChannel;
+        }
+        if (javaMailSenderFacade.isConfigured()) {
+            recipientsByChannel.computeIfAbsent(defaultChannel, c -> new ArrayList<>()).addAll(unrouted);
+        } else if (routes.isEmpty()) {
+            logger.error(JavaMailSenderFacade.ERROR_MESSAGE);
+        } else {
+            logger.debug("Recipients {} of email from {} match no forwarding route; Skip email forwarding", unrouted, rawData.getFrom());
+        }
+        return recipientsByChannel;
+    }
+
+    private ForwardingChannel route(RawData rawData, String recipient, Supplier<InternetHeaders> headers) {
+        for (var entry : routes.entrySet()) {
+            if (entry.getKey().matches(rawData, recipient, headers)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    ForwardingChannel getChannel(String name) {
+        return channels.get(name);
+    }
+
+    private FakeSmtpConfigurationProperties.Forwarding getForwarding() {
+        var forwarding = configurationProperties.getForwarding();
+        return forwarding != null ? forwarding : new FakeSmtpConfigurationProperties.Forwarding();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (var channel : channels.values()) {
+            channel.shutdown();
+        }
+    }
+
+    //headers are only read when a route matching on headers is evaluated and at most once per email
+    private class LazyHeaders implements Supplier<InternetHeaders> {
+        private final RawData rawData;
+        private InternetHeaders headers;
+
+        private LazyHeaders(RawData rawData) {
+            this.rawData = rawData;
+        }
+
+        @Override
+        public InternetHeaders get() {
+            if (headers == null) {
+                try (var content = rawData.getContentAsStream()) {
+                    headers = new InternetHeaders(content);
+                } catch (IOException | MessagingException e) {
+                    logger.warn("Failed to read headers of email from {} for routing: {}", rawData.getFrom(), e.getMessage());
+                    headers = new InternetHeaders();
+                }
             }
+            return headers;
         }
     }
 }
@@ -1,50 +1,93 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
-import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
-import org.subethamail.smtp.helper.SimpleMessageListener;
+import org.subethamail.smtp.MessageContext;
+import org.subethamail.smtp.MessageHandler;
+import org.subethamail.smtp.MessageHandlerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
 
 @Service
-@Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = IOException.class)
-public class MessageListener implements SimpleMessageListener {
-    private final EmailFactory emailFactory;
+public class MessageListener implements MessageHandlerFactory {
+    private final FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
     private final EmailFilter emailFilter;
-    private final EmailRepository emailRepository;
-    private final MessageForwarder messageForwarder;
+    private final IngestPipeline ingestPipeline;
+    private final SmtpServerMetrics smtpServerMetrics;
+    private final IngestMetrics ingestMetrics;
     private final Logger logger;
 
     @Autowired
-    public MessageListener(EmailFactory emailFactory, EmailFilter emailFilter, EmailRepository emailRepository, MessageForwarder messageForwarder, Logger logger) {
-        this.emailFactory = emailFactory;
+    public MessageListener(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailFilter emailFilter, IngestPipeline ingestPipeline, SmtpServerMetrics smtpServerMetrics, IngestMetrics ingestMetrics, Logger logger) {
+        this.fakeSmtpConfigurationProperties = fakeSmtpConfigurationProperties;
         this.emailFilter = emailFilter;
-        this.emailRepository = emailRepository;
-        this.messageForwarder = messageForwarder;
+        this.ingestPipeline = ingestPipeline;
+        this.smtpServerMetrics = smtpServerMetrics;
+        this.ingestMetrics = ingestMetrics;
         this.logger = logger;
     }
 
     @Override
-    public boolean accept(String from, String recipient) {
-        return true;
+    public MessageHandler create(MessageContext context) {
+        return new RecipientCollectingMessageHandler();
     }
 
-    @Override
-    public void deliver(String sender, String recipient, InputStream data) throws IOException {
-        logger.info("Received email from {} for {}", sender, recipient);
+    public void deliver(String sender, List<String> recipients, InputStream data) throws IOException {
+        var start = System.nanoTime();
+        try {
+            accept(sender, recipients, data);
+        } finally {
+            ingestMetrics.messageDelivered(recipients.size(), System.nanoTime() - start);
+        }
+    }
 
-        var rawData = new RawData(sender, recipient, IOUtils.toByteArray(data));
+    private void accept(String sender, List<String> recipients, InputStream data) throws IOException {
+        logger.info("Received email from {} for {}", sender, recipients);
+
+        var acceptedRecipients = recipients.stream().filter(recipient -> !emailFilter.ignore(sender, recipient)).collect(toList());
+
+        if(acceptedRecipients.isEmpty()) {
+            smtpServerMetrics.bytesReceived(IOUtils.consume(data));
+            return;
+        }
+        var spool = fakeSmtpConfigurationProperties.getSpool();
+        var memoryThreshold = (int) Math.min(spool.getMemoryThreshold().toBytes(), Integer.MAX_VALUE);
+        var rawData = RawData.spool(sender, acceptedRecipients, data, memoryThreshold, spool.getDirectory());
+        smtpServerMetrics.bytesReceived(rawData.getSize());
+        ingestMetrics.messageAccepted(rawData.getSize());
+        ingestPipeline.submit(rawData);
+    }
+
+    class RecipientCollectingMessageHandler implements MessageHandler {
+        private final List<String> recipients = new ArrayList<>();
+        private String sender;
+
+        @Override
+        public void from(String from) {
+            this.sender = from;
+        }
+
+        @Override
+        public void recipient(String recipient) {
+            recipients.add(recipient);
+        }
+
+        @Override
+        public void data(InputStream data) throws IOException {
+            deliver(sender, recipients, data);
+        }
 
-        if(!emailFilter.ignore(sender,recipient)) {
-            var email = emailFactory.convert(rawData);
-            emailRepository.save(email);
-            messageForwarder.forward(rawData);
+        @Override
+        public void done() {
+            recipients.clear();
         }
     }
 }
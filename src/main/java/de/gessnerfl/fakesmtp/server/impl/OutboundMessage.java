@@ -0,0 +1,58 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class OutboundMessage implements Delayed, Closeable {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final RawData rawData;
+    private final Clock clock;
+    //keeps messages which are due at the same time in the order they were received
+    private final long sequence = SEQUENCE.incrementAndGet();
+    private int attempts;
+    private long dueAt;
+
+    OutboundMessage(RawData rawData, Clock clock) {
+        this.rawData = rawData;
+        this.clock = clock;
+        this.dueAt = clock.millis();
+    }
+
+    RawData getRawData() {
+        return rawData;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    void recordAttempt() {
+        attempts++;
+    }
+
+    void delay(long millis) {
+        dueAt = clock.millis() + millis;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(dueAt - clock.millis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        var message = (OutboundMessage) other;
+        var result = Long.compare(dueAt, message.dueAt);
+        return result != 0 ? result : Long.compare(sequence, message.sequence);
+    }
+
+    @Override
+    public void close() throws IOException {
+        rawData.close();
+    }
+}
@@ -1,23 +1,84 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedByteArrayInputStream;
+import javax.mail.util.SharedFileInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Properties;
 
-class RawData {
+class RawData implements Closeable {
+    private static final String RECIPIENT_SEPARATOR = ", ";
+    private static final String SPOOL_FILE_PREFIX = "fakesmtp-";
+    private static final String SPOOL_FILE_SUFFIX = ".eml";
+
     private final String from;
-    private final String to;
+    private final List<String> recipients;
     private final byte[] content;
+    private final File file;
+    private SharedFileInputStream sharedFileInputStream;
     private MimeMessage mimeMessage;
 
     RawData(String from, String to, byte[] content) {
+        this(from, List.of(to), content);
+    }
+
+    RawData(String from, List<String> recipients, byte[] content) {
+        this(from, recipients, content, null);
+    }
+
+    private RawData(String from, List<String> recipients, byte[] content, File file) {
         this.from = from;
-        this.to = to;
+        this.recipients = List.copyOf(recipients);
         this.content = content;
+        this.file = file;
+    }
+
+    static RawData spool(String from, List<String> recipients, InputStream data, int memoryThreshold, File directory) throws IOException {
+        var outputStream = new DeferredFileOutputStream(memoryThreshold, SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX, directory);
+        try (outputStream) {
+            IOUtils.copyLarge(data, outputStream);
+        } catch (IOException e) {
+            deleteSpoolFile(outputStream.getFile());
+            throw e;
+        }
+        if (outputStream.isInMemory()) {
+            return new RawData(from, recipients, outputStream.getData(), null);
+        }
+        return new RawData(from, recipients, null, outputStream.getFile());
+    }
+
+    //the copy owns its own spool file, so that it can outlive the processing of the received email
+    RawData copy() throws IOException {
+        return copy(recipients);
+    }
+
+    RawData copy(List<String> recipients) throws IOException {
+        if (!isSpooledToFile()) {
+            return new RawData(from, recipients, content, null);
+        }
+        var copy = File.createTempFile(SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX, file.getParentFile());
+        try {
+            Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteSpoolFile(copy);
+            throw e;
+        }
+        return new RawData(from, recipients, null, copy);
     }
 
     public String getFrom() {
@@ -25,15 +86,45 @@ class RawData {
     }
 
     public String getTo() {
-        return to;
+        return String.join(RECIPIENT_SEPARATOR, recipients);
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    public boolean isSpooledToFile() {
+        return file != null;
+    }
+
+    public long getSize() {
+        return isSpooledToFile() ? file.length() : content.length;
     }
 
     public String getContentAsString() {
-        return new String(content, StandardCharsets.UTF_8);
+        if (!isSpooledToFile()) {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+        try {
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new EmailProcessingException("Failed to read spooled email data", e);
+        }
+    }
+
+    public byte[] getContentAsBytes() {
+        if (!isSpooledToFile()) {
+            return content;
+        }
+        try {
+            return FileUtils.readFileToByteArray(file);
+        } catch (IOException e) {
+            throw new EmailProcessingException("Failed to read spooled email data", e);
+        }
     }
 
-    public InputStream getContentAsStream() {
-        return new ByteArrayInputStream(content);
+    public InputStream getContentAsStream() throws IOException {
+        return isSpooledToFile() ? new FileInputStream(file) : new ByteArrayInputStream(content);
     }
 
     public MimeMessage toMimeMessage() throws MessagingException {
@@ -45,7 +136,35 @@ class RawData {
 
     private MimeMessage parseMimeMessage() throws MessagingException {
         var s = Session.getDefaultInstance(new Properties());
-        return new MimeMessage(s, getContentAsStream());
+        return new MimeMessage(s, openSharedContentStream());
     }
 
+    private synchronized InputStream openSharedContentStream() throws MessagingException {
+        if (!isSpooledToFile()) {
+            return new SharedByteArrayInputStream(content);
+        }
+        try {
+            if (sharedFileInputStream == null) {
+                sharedFileInputStream = new SharedFileInputStream(file);
+            }
+            return sharedFileInputStream.newStream(0, -1);
+        } catch (IOException e) {
+            throw new MessagingException("Failed to open spooled email data", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (sharedFileInputStream != null) {
+            sharedFileInputStream.close();
+            sharedFileInputStream = null;
+        }
+        deleteSpoolFile(file);
+    }
+
+    private static void deleteSpoolFile(File file) throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import com.sun.mail.smtp.SMTPMessage;
+
+import javax.mail.Session;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//message which writes the received bytes as they are instead of serializing parsed headers and parts;
+//the envelope is taken from the SMTP session in which the email was received
+class RawMessage extends SMTPMessage {
+    private static final String NULL_SENDER = "<>";
+
+    private final RawData rawData;
+
+    RawMessage(Session session, RawData rawData) {
+        super(session);
+        this.rawData = rawData;
+        var from = rawData.getFrom();
+        setEnvelopeFrom(from == null || from.isBlank() ? NULL_SENDER : from);
+    }
+
+    InternetAddress[] getEnvelopeRecipients() throws AddressException {
+        var recipients = rawData.getRecipients();
+        var addresses = new InternetAddress[recipients.size()];
+        for (var i = 0; i < addresses.length; i++) {
+            addresses[i] = new InternetAddress(recipients.get(i), false);
+        }
+        return addresses;
+    }
+
+    @Override
+    public int getSize() {
+        return (int) Math.min(rawData.getSize(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        writeTo(os, null);
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String[] ignoreList) throws IOException {
+        try (var content = rawData.getContentAsStream()) {
+            content.transferTo(os);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.slf4j.Logger;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+class SmtpForwardingSink implements ForwardingSink {
+    private final JavaMailSenderFacade javaMailSenderFacade;
+    private final BooleanSupplier rawRelay;
+    private final Logger logger;
+
+    SmtpForwardingSink(JavaMailSenderFacade javaMailSenderFacade, BooleanSupplier rawRelay, Logger logger) {
+        this.javaMailSenderFacade = javaMailSenderFacade;
+        this.rawRelay = rawRelay;
+        this.logger = logger;
+    }
+
+    @Override
+    public Map<OutboundMessage, Exception> send(List<OutboundMessage> messages) {
+        var relay = rawRelay.getAsBoolean();
+        var failures = new LinkedHashMap<OutboundMessage, Exception>();
+        var mimeMessages = new LinkedHashMap<MimeMessage, OutboundMessage>();
+        for (var message : messages) {
+            try {
+                var rawData = message.getRawData();
+                mimeMessages.put(relay ? new RawMessage(javaMailSenderFacade.getSession(), rawData) : toMimeMessage(rawData), message);
+            } catch (RuntimeException e) {
+                failures.put(message, e);
+            }
+        }
+        if (mimeMessages.isEmpty()) {
+            return failures;
+        }
+        try {
+            if (relay) {
+                javaMailSenderFacade.relay(List.copyOf(mimeMessages.keySet()));
+            } else {
+                javaMailSenderFacade.send(List.copyOf(mimeMessages.keySet()));
+            }
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                mimeMessages.values().forEach(message -> failures.put(message, e));
+            } else {
+                e.getFailedMessages().forEach((mimeMessage, failure) -> failures.put(mimeMessages.get(mimeMessage), failure));
+            }
+        } catch (MailException e) {
+            mimeMessages.values().forEach(message -> failures.put(message, e));
+        }
+        return failures;
+    }
+
+    @Override
+    public void release() {
+        javaMailSenderFacade.releaseConnection();
+    }
+
+    private MimeMessage toMimeMessage(RawData rawData) {
+        try {
+            return rawData.toMimeMessage();
+        } catch (MessagingException e) {
+            logger.warn("Failed to convert raw data to MimeMessage; fall back to simple message forwarding", e);
+            var message = new SimpleMailMessage();
+            message.setFrom(rawData.getFrom());
+            message.setTo(rawData.getRecipients().toArray(String[]::new));
+            message.setText(rawData.getContentAsString());
+            return javaMailSenderFacade.toMimeMessage(message);
+        }
+    }
+}
@@ -25,6 +25,21 @@ public class SmtpServerConfigurator {
     public void configure(SMTPServer smtpServer) {
         smtpServer.setPort(fakeSmtpConfigurationProperties.getPort());
         smtpServer.setBindAddress(fakeSmtpConfigurationProperties.getBindAddress());
+        if (fakeSmtpConfigurationProperties.getMaxConnections() != null) {
+            smtpServer.setMaxConnections(fakeSmtpConfigurationProperties.getMaxConnections());
+        }
+        if (fakeSmtpConfigurationProperties.getBacklog() != null) {
+            smtpServer.setBacklog(fakeSmtpConfigurationProperties.getBacklog());
+        }
+        if (fakeSmtpConfigurationProperties.getConnectionTimeout() != null) {
+            smtpServer.setConnectionTimeout((int) Math.min(fakeSmtpConfigurationProperties.getConnectionTimeout().toMillis(), Integer.MAX_VALUE));
+        }
+        if (fakeSmtpConfigurationProperties.getMaxMessageSize() != null) {
+            smtpServer.setMaxMessageSize((int) Math.min(fakeSmtpConfigurationProperties.getMaxMessageSize().toBytes(), Integer.MAX_VALUE));
+        }
+        if (fakeSmtpConfigurationProperties.getMaxRecipients() != null) {
+            smtpServer.setMaxRecipients(fakeSmtpConfigurationProperties.getMaxRecipients());
+        }
         if (fakeSmtpConfigurationProperties.getAuthentication() != null) {
             configureAuthentication(smtpServer, fakeSmtpConfigurationProperties.getAuthentication());
         }
@@ -2,29 +2,35 @@ package de.gessnerfl.fakesmtp.server.impl;
 
 import de.gessnerfl.fakesmtp.server.SmtpServer;
 import de.gessnerfl.fakesmtp.server.SmtpServerFactory;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
-import org.subethamail.smtp.helper.SimpleMessageListenerAdapter;
 import org.subethamail.smtp.server.SMTPServer;
 
 @Profile("default")
 @Service
 public class SmtpServerFactoryImpl implements SmtpServerFactory {
 
+    static final String SESSION_THREAD_NAME_PREFIX = "smtp-session-";
+
     private final MessageListener messageListener;
     private final SmtpServerConfigurator configurator;
+    private final ThreadFactoryProvider threadFactoryProvider;
+    private final SmtpServerMetrics smtpServerMetrics;
 
     @Autowired
-    public SmtpServerFactoryImpl(MessageListener messageListener, SmtpServerConfigurator configurator) {
+    public SmtpServerFactoryImpl(MessageListener messageListener, SmtpServerConfigurator configurator, ThreadFactoryProvider threadFactoryProvider, SmtpServerMetrics smtpServerMetrics) {
         this.messageListener = messageListener;
         this.configurator = configurator;
+        this.threadFactoryProvider = threadFactoryProvider;
+        this.smtpServerMetrics = smtpServerMetrics;
     }
 
     @Override
     public SmtpServer create() {
-        var simpleMessageListenerAdapter = new SimpleMessageListenerAdapter(messageListener);
-        var smtpServer = new SMTPServer(simpleMessageListenerAdapter);
+        var sessionExecutor = new SmtpSessionExecutor(threadFactoryProvider.createThreadPerTaskExecutor(SESSION_THREAD_NAME_PREFIX), smtpServerMetrics);
+        var smtpServer = new SMTPServer(messageListener, null, sessionExecutor);
         configurator.configure(smtpServer);
         return new SmtpServerImpl(smtpServer);
     }
@@ -0,0 +1,50 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class SmtpServerMetrics {
+    static final String ACTIVE_SESSIONS_METRIC = "fakesmtp.smtp.sessions.active";
+    static final String REJECTED_CONNECTIONS_METRIC = "fakesmtp.smtp.connections.rejected";
+    static final String SESSION_DURATION_METRIC = "fakesmtp.smtp.session.duration";
+    static final String RECEIVED_BYTES_METRIC = "fakesmtp.smtp.received.bytes";
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final Counter rejectedConnections;
+    private final Timer sessionDuration;
+    private final DistributionSummary receivedBytes;
+
+    @Autowired
+    public SmtpServerMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder(ACTIVE_SESSIONS_METRIC, activeSessions, AtomicInteger::get).register(meterRegistry);
+        this.rejectedConnections = Counter.builder(REJECTED_CONNECTIONS_METRIC).register(meterRegistry);
+        this.sessionDuration = Timer.builder(SESSION_DURATION_METRIC).publishPercentileHistogram().register(meterRegistry);
+        this.receivedBytes = DistributionSummary.builder(RECEIVED_BYTES_METRIC).baseUnit("bytes").register(meterRegistry);
+    }
+
+    int sessionStarted() {
+        return activeSessions.incrementAndGet();
+    }
+
+    void sessionEnded(long durationNanos) {
+        activeSessions.decrementAndGet();
+        sessionDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    void bytesReceived(long bytes) {
+        receivedBytes.record(bytes);
+    }
+}
@@ -0,0 +1,62 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.subethamail.smtp.server.Session;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class SmtpSessionExecutor extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final SmtpServerMetrics smtpServerMetrics;
+
+    SmtpSessionExecutor(ExecutorService delegate, SmtpServerMetrics smtpServerMetrics) {
+        this.delegate = delegate;
+        this.smtpServerMetrics = smtpServerMetrics;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(() -> runSession(command));
+    }
+
+    private void runSession(Runnable command) {
+        var start = System.nanoTime();
+        var activeSessions = smtpServerMetrics.sessionStarted();
+        if (command instanceof Session && activeSessions > ((Session) command).getServer().getMaxConnections()) {
+            //the session itself answers with 421 and closes the connection in this case
+            smtpServerMetrics.connectionRejected();
+        }
+        try {
+            command.run();
+        } finally {
+            smtpServerMetrics.sessionEnded(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,64 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//posts the received bytes of each email to an http endpoint; the envelope is passed as request headers
+class WebhookForwardingSink implements ForwardingSink {
+    static final String CONTENT_TYPE = "message/rfc822";
+    static final String ENVELOPE_FROM_HEADER = "X-Envelope-From";
+    static final String ENVELOPE_TO_HEADER = "X-Envelope-To";
+    static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final URI url;
+    private final HttpClient httpClient;
+
+    WebhookForwardingSink(URI url, HttpClient httpClient) {
+        this.url = url;
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public Map<OutboundMessage, Exception> send(List<OutboundMessage> messages) {
+        var failures = new LinkedHashMap<OutboundMessage, Exception>();
+        for (var message : messages) {
+            try {
+                post(message.getRawData());
+            } catch (IOException | RuntimeException e) {
+                failures.put(message, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(message, e);
+            }
+        }
+        return failures;
+    }
+
+    private void post(RawData rawData) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(url)
+                .timeout(TIMEOUT)
+                .header("Content-Type", CONTENT_TYPE)
+                .header(ENVELOPE_FROM_HEADER, rawData.getFrom() != null ? rawData.getFrom() : "")
+                .header(ENVELOPE_TO_HEADER, rawData.getTo())
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                    try {
+                        return rawData.getContentAsStream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }))
+                .build();
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Webhook " + url + " responded with status " + response.statusCode());
+        }
+    }
+}
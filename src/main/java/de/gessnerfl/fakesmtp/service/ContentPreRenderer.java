@@ -0,0 +1,125 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.server.impl.IngestPipeline;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class ContentPreRenderer {
+    static final long INGEST_BUSY_DELAY_MILLIS = 100;
+
+    private final FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
+    private final EmailRepository emailRepository;
+    private final IngestPipeline ingestPipeline;
+    private final HtmlContentRenderer htmlContentRenderer;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService executor;
+    private final Logger logger;
+
+    @Autowired
+    public ContentPreRenderer(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailRepository emailRepository, IngestPipeline ingestPipeline, HtmlContentRenderer htmlContentRenderer, PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher, ThreadFactoryProvider threadFactoryProvider, Logger logger) {
+        this(fakeSmtpConfigurationProperties, emailRepository, ingestPipeline, htmlContentRenderer, transactionManager, eventPublisher, createExecutor(fakeSmtpConfigurationProperties, threadFactoryProvider), logger);
+    }
+
+    ContentPreRenderer(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailRepository emailRepository, IngestPipeline ingestPipeline, HtmlContentRenderer htmlContentRenderer, PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher, ExecutorService executor, Logger logger) {
+        this.fakeSmtpConfigurationProperties = fakeSmtpConfigurationProperties;
+        this.emailRepository = emailRepository;
+        this.ingestPipeline = ingestPipeline;
+        this.htmlContentRenderer = htmlContentRenderer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    private static ExecutorService createExecutor(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, ThreadFactoryProvider threadFactoryProvider) {
+        var rendering = fakeSmtpConfigurationProperties.getRendering();
+        var queueSize = rendering != null && rendering.getPreRenderQueueSize() != null ? rendering.getPreRenderQueueSize() : 1;
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(Math.max(1, queueSize)), threadFactoryProvider.create("pre-render-"));
+    }
+
+    //lazily parsed emails are not materialized for rendering; their contents are rendered once they are materialized
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailReceived(EmailReceivedEvent event) {
+        if (isEnabled() && event.isMaterialized()) {
+            var id = event.getSummary().getId();
+            execute(() -> preRender(id));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailMaterialized(EmailMaterializedEvent event) {
+        if (isEnabled()) {
+            execute(() -> preRender(event.getId()));
+        }
+    }
+
+    private void preRender(Long id) {
+        try {
+            if (!awaitIdleIngest()) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> emailRepository.findById(id).ifPresent(email -> {
+                for (var content : email.getContents()) {
+                    if (content.getRendered() == null) {
+                        content.setRendered(htmlContentRenderer.renderContent(content));
+                    }
+                }
+                eventPublisher.publishEvent(new EmailRenderedEvent(id));
+            }));
+        } catch (RuntimeException e) {
+            logger.error("Failed to pre-render contents of email {}", id, e);
+        }
+    }
+
+    //rendering is only an optimization for the web UI and must not take cpu time away from received emails; emails
+    //queued meanwhile are skipped once the queue is full and rendered on demand instead
+    private boolean awaitIdleIngest() {
+        try {
+            while (ingestPipeline.isBusy()) {
+                Thread.sleep(INGEST_BUSY_DELAY_MILLIS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean isEnabled() {
+        var rendering = fakeSmtpConfigurationProperties.getRendering();
+        return rendering != null && rendering.isPreRender();
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            //contents which are not pre-rendered are rendered on demand when the email is opened
+            logger.debug("Skip pre-rendering of email: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,125 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailAttachment;
+import de.gessnerfl.fakesmtp.model.InlineImage;
+import de.gessnerfl.fakesmtp.repository.EmailCriteria;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+public class EmailArrivalNotifier {
+
+    private final EmailRepository emailRepository;
+    private final EmailMaterializer emailMaterializer;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final Logger logger;
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public EmailArrivalNotifier(EmailRepository emailRepository, EmailMaterializer emailMaterializer, PlatformTransactionManager transactionManager, ThreadFactoryProvider threadFactoryProvider, Logger logger) {
+        this(emailRepository, emailMaterializer, transactionManager, Executors.newSingleThreadExecutor(threadFactoryProvider.create("arrival-notifier-")), logger);
+    }
+
+    EmailArrivalNotifier(EmailRepository emailRepository, EmailMaterializer emailMaterializer, PlatformTransactionManager transactionManager, ExecutorService executor, Logger logger) {
+        this.emailRepository = emailRepository;
+        this.emailMaterializer = emailMaterializer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    public DeferredResult<ResponseEntity<Email>> await(EmailCriteria criteria, Duration timeout) {
+        var result = new DeferredResult<ResponseEntity<Email>>(timeout.toMillis(), ResponseEntity.noContent().build());
+        var waiter = new Waiter(criteria, result);
+        result.onCompletion(() -> waiters.remove(waiter));
+        waiters.add(waiter);
+        emailRepository.findIdOfLatestEmailMatching(criteria).ifPresent(id -> complete(waiter, id));
+        return result;
+    }
+
+    int getNumberOfWaiters() {
+        return waiters.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailReceived(EmailReceivedEvent event) {
+        var summary = event.getSummary();
+        for (var waiter : waiters) {
+            if (waiter.criteria.matches(summary.getFromAddress(), event.getRecipients(), summary.getSubject(), summary.getReceivedOn())) {
+                complete(waiter, summary.getId());
+            }
+        }
+    }
+
+    //only the matching runs on the publishing thread; materializing and loading the email must not delay the ingest
+    private void complete(Waiter waiter, Long id) {
+        if (waiters.remove(waiter)) {
+            try {
+                executor.execute(() -> respond(waiter, id));
+            } catch (RejectedExecutionException e) {
+                logger.debug("Skip loading of email {} for waiting client: {}", id, e.getMessage());
+                waiter.result.setResult(ResponseEntity.noContent().build());
+            }
+        }
+    }
+
+    private void respond(Waiter waiter, Long id) {
+        try {
+            var email = loadEmail(id);
+            waiter.result.setResult(email.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.noContent().build()));
+        } catch (RuntimeException e) {
+            logger.error("Failed to load email {} for waiting client", id, e);
+            waiter.result.setErrorResult(e);
+        }
+    }
+
+    private Optional<Email> loadEmail(Long id) {
+        emailMaterializer.materialize(id);
+        return transactionTemplate.execute(status -> {
+            var email = emailRepository.findById(id);
+            email.ifPresent(e -> {
+                //initialize lazy associations as the result is serialized outside of this transaction
+                e.getRecipients().size();
+                e.getContents().size();
+                e.getAttachments().forEach(EmailAttachment::getData);
+                e.getInlineImages().forEach(InlineImage::getData);
+            });
+            return email;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class Waiter {
+        private final EmailCriteria criteria;
+        private final DeferredResult<ResponseEntity<Email>> result;
+
+        private Waiter(EmailCriteria criteria, DeferredResult<ResponseEntity<Email>> result) {
+            this.criteria = criteria;
+            this.result = result;
+        }
+    }
+}
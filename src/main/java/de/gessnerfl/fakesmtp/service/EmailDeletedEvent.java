@@ -0,0 +1,27 @@
+package de.gessnerfl.fakesmtp.service;
+
+import java.util.List;
+
+public class EmailDeletedEvent {
+    private final List<Long> ids;
+
+    private EmailDeletedEvent(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public static EmailDeletedEvent of(List<Long> ids) {
+        return new EmailDeletedEvent(List.copyOf(ids));
+    }
+
+    public static EmailDeletedEvent all() {
+        return new EmailDeletedEvent(null);
+    }
+
+    public boolean isAll() {
+        return ids == null;
+    }
+
+    public List<Long> getIds() {
+        return ids != null ? ids : List.of();
+    }
+}
@@ -0,0 +1,13 @@
+package de.gessnerfl.fakesmtp.service;
+
+public class EmailMaterializedEvent {
+    private final Long id;
+
+    public EmailMaterializedEvent(Long id) {
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
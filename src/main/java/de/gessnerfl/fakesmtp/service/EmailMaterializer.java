@@ -0,0 +1,94 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.EmailOriginalContent;
+import de.gessnerfl.fakesmtp.repository.EmailOriginalContentRepository;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.server.impl.EmailFactory;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+@Service
+@Transactional(propagation = Propagation.REQUIRES_NEW)
+public class EmailMaterializer {
+    static final int BATCH_SIZE = 100;
+
+    private final FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
+    private final EmailRepository emailRepository;
+    private final EmailOriginalContentRepository emailOriginalContentRepository;
+    private final EmailFactory emailFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Logger logger;
+
+    @Autowired
+    public EmailMaterializer(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailRepository emailRepository, EmailOriginalContentRepository emailOriginalContentRepository, EmailFactory emailFactory, PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher, Logger logger) {
+        this.fakeSmtpConfigurationProperties = fakeSmtpConfigurationProperties;
+        this.emailRepository = emailRepository;
+        this.emailOriginalContentRepository = emailOriginalContentRepository;
+        this.emailFactory = emailFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.logger = logger;
+    }
+
+    public void materialize(Long id) {
+        if (!emailRepository.existsByIdAndMaterializedFalse(id) || emailRepository.markAsMaterialized(id) == 0) {
+            return;
+        }
+        emailRepository.findById(id).ifPresent(email -> {
+            var originalContent = emailOriginalContentRepository.findById(id);
+            originalContent.map(EmailOriginalContent::getData).ifPresent(email::setOriginalContent);
+            try {
+                emailFactory.materialize(email);
+                emailRepository.save(email);
+                originalContent.ifPresent(emailOriginalContentRepository::delete);
+                eventPublisher.publishEvent(new EmailMaterializedEvent(id));
+            } catch (IOException e) {
+                //rethrown so that the materialized flag is rolled back and the email is retried later
+                throw new UncheckedIOException("Failed to materialize email " + id, e);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelay = 5000, initialDelay = 1000)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void materializePendingEmails() {
+        if (!isLazyParsingEnabled()) {
+            return;
+        }
+        var ids = emailRepository.findIdsOfNotMaterializedEmails(PageRequest.of(0, BATCH_SIZE));
+        ids.forEach(this::materializeInOwnTransaction);
+        if (!ids.isEmpty()) {
+            logger.debug("Materialized {} emails in background", ids.size());
+        }
+    }
+
+    //a self invocation bypasses the transactional proxy, so each email gets its own transaction explicitly and a
+    //failing email neither rolls back nor aborts the remaining ones
+    private void materializeInOwnTransaction(Long id) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> materialize(id));
+        } catch (RuntimeException e) {
+            logger.error("Failed to materialize email {}", id, e);
+        }
+    }
+
+    private boolean isLazyParsingEnabled() {
+        var ingest = fakeSmtpConfigurationProperties.getIngest();
+        return ingest != null && ingest.isLazyParsing();
+    }
+}
@@ -0,0 +1,72 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+
+import java.util.List;
+
+public class EmailReceivedEvent {
+    private final EmailSummary summary;
+    private final List<String> recipients;
+    private final long storedSize;
+    private final boolean materialized;
+
+    public EmailReceivedEvent(Email email) {
+        this.summary = new EmailSummary(email.getId(), email.getFromAddress(), email.getToAddress(), email.getSubject(),
+                email.getReceivedOn(), email.getContents().size(), email.getAttachments().size());
+        this.recipients = List.copyOf(email.getRecipients());
+        this.storedSize = storedSizeOf(email);
+        this.materialized = email.isMaterialized();
+    }
+
+    //matches EmailRepository.STORED_SIZE, so that the tracked size does not change after a restart
+    private static long storedSizeOf(Email email) {
+        var size = utf8Length(email.getRawData());
+        size += email.getOriginalContent() != null ? email.getOriginalContent().length : 0;
+        for (var content : email.getContents()) {
+            size += utf8Length(content.getData()) + utf8Length(content.getRendered());
+        }
+        for (var attachment : email.getAttachments()) {
+            size += attachment.getData() != null ? attachment.getData().length : 0;
+        }
+        for (var inlineImage : email.getInlineImages()) {
+            size += inlineImage.getData() != null ? inlineImage.getData().length : 0;
+        }
+        return size;
+    }
+
+    static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                //each half of a surrogate pair accounts for two of the four bytes of the code point
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    public EmailSummary getSummary() {
+        return summary;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    public long getStoredSize() {
+        return storedSize;
+    }
+
+    public boolean isMaterialized() {
+        return materialized;
+    }
+}
@@ -0,0 +1,13 @@
+package de.gessnerfl.fakesmtp.service;
+
+public class EmailRenderedEvent {
+    private final Long id;
+
+    public EmailRenderedEvent(Long id) {
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -2,40 +2,240 @@ package de.gessnerfl.fakesmtp.service;
 
 import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.stream.Collectors.toList;
 
 @Service
-@Transactional(propagation = Propagation.REQUIRES_NEW)
 public class EmailRetentionTimer {
+    static final int BATCH_SIZE = 100;
+    static final String STORED_EMAILS_METRIC = "fakesmtp.persistence.stored.emails";
+    static final String STORED_BYTES_METRIC = "fakesmtp.persistence.stored.bytes";
 
     private final FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
     private final EmailRepository emailRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
     private final Logger logger;
+    //ids are assigned in insertion order, so the first entry of the window is always the oldest email
+    private final ConcurrentNavigableMap<Long, StoredEmail> window = new ConcurrentSkipListMap<>();
+    //the size of a skip list is not a constant time operation, therefore the number of entries is tracked separately
+    private final AtomicInteger storedEmails = new AtomicInteger();
+    private final AtomicLong storedSize = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
 
     @Autowired
-    public EmailRetentionTimer(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailRepository emailRepository, Logger logger) {
+    public EmailRetentionTimer(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailRepository emailRepository, ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry, Logger logger) {
+        this(fakeSmtpConfigurationProperties, emailRepository, eventPublisher, transactionManager, meterRegistry, Clock.systemUTC(), logger);
+    }
+
+    EmailRetentionTimer(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, EmailRepository emailRepository, ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry, Clock clock, Logger logger) {
         this.fakeSmtpConfigurationProperties = fakeSmtpConfigurationProperties;
         this.emailRepository = emailRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.clock = clock;
         this.logger = logger;
+        Gauge.builder(STORED_EMAILS_METRIC, storedEmails, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder(STORED_BYTES_METRIC, storedSize, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (getLimits().isConfigured()) {
+            for (var row : emailRepository.findStoredSizeOfAllEmails()) {
+                var id = ((Number) row[0]).longValue();
+                track(id, new StoredEmail(((Date) row[1]).getTime(), ((Number) row[2]).longValue()));
+            }
+            deleteOutdatedMails();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailReceived(EmailReceivedEvent event) {
+        if (getLimits().isConfigured()) {
+            var summary = event.getSummary();
+            var receivedOn = summary.getReceivedOn() != null ? summary.getReceivedOn().getTime() : clock.millis();
+            track(summary.getId(), new StoredEmail(receivedOn, event.getStoredSize()));
+            deleteOutdatedMails();
+        }
+    }
+
+    //parts extracted by the materializer and pre-rendered contents are stored after the email was received
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailMaterialized(EmailMaterializedEvent event) {
+        updateStoredSize(event.getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailRendered(EmailRenderedEvent event) {
+        updateStoredSize(event.getId());
+    }
+
+    private void updateStoredSize(Long id) {
+        if (getLimits().isConfigured() && window.containsKey(id)) {
+            emailRepository.findStoredSizeById(id).ifPresent(size -> window.computeIfPresent(id, (key, email) -> {
+                storedSize.addAndGet(size.longValue() - email.size);
+                return new StoredEmail(email.receivedOn, size.longValue());
+            }));
+            deleteOutdatedMails();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailDeleted(EmailDeletedEvent event) {
+        if (event.isAll()) {
+            List.copyOf(window.keySet()).forEach(this::untrack);
+        } else {
+            event.getIds().forEach(this::untrack);
+        }
     }
 
-    @Scheduled(fixedDelay = 300000, initialDelay = 500)
-    public void deleteOutdatedMails(){
+    int getNumberOfStoredEmails() {
+        return storedEmails.get();
+    }
+
+    long getStoredSize() {
+        return storedSize.get();
+    }
+
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void deleteOutdatedMails() {
+        var limits = getLimits();
+        if (!limits.isExceeded(false) || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            var belowNumberLimit = limits.isNumberExceeded(false);
+            var count = 0;
+            List<Map.Entry<Long, StoredEmail>> evicted;
+            while (!(evicted = pollOldest(limits, belowNumberLimit)).isEmpty()) {
+                var ids = evicted.stream().map(Map.Entry::getKey).collect(toList());
+                try {
+                    transactionTemplate.executeWithoutResult(status -> emailRepository.deleteAllByIdInBatch(ids));
+                } catch (RuntimeException e) {
+                    evicted.forEach(entry -> track(entry.getKey(), entry.getValue()));
+                    logger.error("Failed to delete {} emails which exceeded the retention limits", ids.size(), e);
+                    break;
+                }
+                eventPublisher.publishEvent(EmailDeletedEvent.of(ids));
+                count += ids.size();
+            }
+            logger.debug("Deleted {} emails which exceeded the retention limits; {} emails with {} bytes remaining", count, storedEmails.get(), storedSize.get());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private List<Map.Entry<Long, StoredEmail>> pollOldest(Limits limits, boolean belowNumberLimit) {
+        var entries = new ArrayList<Map.Entry<Long, StoredEmail>>(BATCH_SIZE);
+        while (entries.size() < BATCH_SIZE && limits.isExceeded(belowNumberLimit)) {
+            var oldest = window.pollFirstEntry();
+            if (oldest == null) {
+                break;
+            }
+            storedEmails.decrementAndGet();
+            storedSize.addAndGet(-oldest.getValue().size);
+            entries.add(oldest);
+        }
+        return entries;
+    }
+
+    private void track(Long id, StoredEmail email) {
+        if (window.put(id, email) == null) {
+            storedEmails.incrementAndGet();
+            storedSize.addAndGet(email.size);
+        }
+    }
+
+    private void untrack(Long id) {
+        var email = window.remove(id);
+        if (email != null) {
+            storedEmails.decrementAndGet();
+            storedSize.addAndGet(-email.size);
+        }
+    }
+
+    private Limits getLimits() {
         var persistence = fakeSmtpConfigurationProperties.getPersistence();
-        if(isDataRetentionConfigured(persistence)){
-            var maxNumber = persistence.getMaxNumberEmails();
-            var count = emailRepository.deleteEmailsExceedingDateRetentionLimit(maxNumber);
-            logger.info("Deleted {} emails which exceeded the maximum number {} of emails to be stored", count, maxNumber);
+        if (persistence == null) {
+            return new Limits(0, 0, null);
         }
+        var maxNumber = persistence.getMaxNumberEmails() != null ? persistence.getMaxNumberEmails() : 0;
+        var maxSize = persistence.getMaxStoredSize() != null ? persistence.getMaxStoredSize().toBytes() : 0;
+        return new Limits(maxNumber, maxSize, persistence.getMaxAge());
     }
 
-    private boolean isDataRetentionConfigured(FakeSmtpConfigurationProperties.Persistence persistence) {
-        return persistence != null && persistence.getMaxNumberEmails() != null && persistence.getMaxNumberEmails() > 0;
+    private class Limits {
+        private final int maxNumber;
+        private final long maxSize;
+        private final long minReceivedOn;
+
+        private Limits(int maxNumber, long maxSize, Duration maxAge) {
+            this.maxNumber = maxNumber;
+            this.maxSize = maxSize;
+            this.minReceivedOn = maxAge != null && !maxAge.isZero() && !maxAge.isNegative() ? clock.millis() - maxAge.toMillis() : Long.MIN_VALUE;
+        }
+
+        private boolean isConfigured() {
+            return maxNumber > 0 || maxSize > 0 || minReceivedOn != Long.MIN_VALUE;
+        }
+
+        private boolean isExceeded(boolean belowNumberLimit) {
+            return isNumberExceeded(belowNumberLimit) || (maxSize > 0 && storedSize.get() > maxSize) || isOldestExpired();
+        }
+
+        private boolean isNumberExceeded(boolean belowLimit) {
+            if (maxNumber <= 0) {
+                return false;
+            }
+            //evict below the limit by up to one batch, so that a full store does not delete on every insert
+            var limit = belowLimit ? maxNumber - Math.min(BATCH_SIZE - 1, maxNumber / 10) : maxNumber;
+            return storedEmails.get() > limit;
+        }
+
+        private boolean isOldestExpired() {
+            if (minReceivedOn == Long.MIN_VALUE) {
+                return false;
+            }
+            var oldest = window.firstEntry();
+            return oldest != null && oldest.getValue().receivedOn < minReceivedOn;
+        }
+    }
+
+    private static class StoredEmail {
+        private final long receivedOn;
+        private final long size;
+
+        private StoredEmail(long receivedOn, long size) {
+            this.receivedOn = receivedOn;
+            this.size = size;
+        }
     }
 
 }
@@ -0,0 +1,142 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.model.ContentType;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailSearchText;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.repository.EmailSearchTextRepository;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+@Service
+public class EmailSearchService {
+
+    private final EmailRepository emailRepository;
+    private final EmailSearchTextRepository emailSearchTextRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final Logger logger;
+
+    @Autowired
+    public EmailSearchService(EmailRepository emailRepository, EmailSearchTextRepository emailSearchTextRepository, PlatformTransactionManager transactionManager, ThreadFactoryProvider threadFactoryProvider, Logger logger) {
+        this(emailRepository, emailSearchTextRepository, transactionManager, Executors.newSingleThreadExecutor(threadFactoryProvider.create("search-index-")), logger);
+    }
+
+    EmailSearchService(EmailRepository emailRepository, EmailSearchTextRepository emailSearchTextRepository, PlatformTransactionManager transactionManager, ExecutorService executor, Logger logger) {
+        this.emailRepository = emailRepository;
+        this.emailSearchTextRepository = emailSearchTextRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    public Page<EmailSummary> search(String query, Pageable pageable) {
+        if (query == null || query.isBlank()) {
+            return Page.empty(pageable);
+        }
+        var ids = emailSearchTextRepository.findIdsOfEmailsMatching(query, pageable).map(Number::longValue);
+        var summaries = emailRepository.findAllSummariesById(ids.getContent()).stream().collect(toMap(EmailSummary::getId, Function.identity()));
+        var content = ids.stream().map(summaries::get).filter(Objects::nonNull).collect(toList());
+        return new PageImpl<>(content, pageable, ids.getTotalElements());
+    }
+
+    //the index is stored in the database; on startup only emails which were missed or materialized meanwhile are indexed
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexPendingEmails() {
+        execute(() -> {
+            var ids = emailSearchTextRepository.findIdsOfEmailsToIndex();
+            ids.forEach(this::indexEmail);
+            if (!ids.isEmpty()) {
+                logger.info("Indexed {} emails for full text search", ids.size());
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailReceived(EmailReceivedEvent event) {
+        var id = event.getSummary().getId();
+        execute(() -> indexEmail(id));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailMaterialized(EmailMaterializedEvent event) {
+        execute(() -> indexEmail(event.getId()));
+    }
+
+    private void indexEmail(Long id) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> emailRepository.findById(id).ifPresent(email -> {
+                var searchText = new EmailSearchText();
+                searchText.setEmailId(id);
+                searchText.setHeaders(toHeaderText(email));
+                //lazily parsed emails are not materialized for indexing; their body is indexed once it is materialized
+                searchText.setBody(email.isMaterialized() ? toBodyText(email) : null);
+                emailSearchTextRepository.save(searchText);
+            }));
+        } catch (RuntimeException e) {
+            logger.error("Failed to index email {} for full text search", id, e);
+        }
+    }
+
+    static String toHeaderText(Email email) {
+        var text = new StringBuilder();
+        append(text, email.getFromAddress());
+        email.getRecipients().forEach(recipient -> append(text, recipient));
+        append(text, email.getSubject());
+        return text.toString();
+    }
+
+    static String toBodyText(Email email) {
+        var text = new StringBuilder();
+        for (var content : email.getContents()) {
+            if (content.getContentType() == ContentType.HTML) {
+                append(text, Jsoup.parse(content.getData()).text());
+            } else if (content.getContentType() == ContentType.PLAIN) {
+                append(text, content.getData());
+            }
+        }
+        email.getAttachments().forEach(attachment -> append(text, attachment.getFilename()));
+        return text.toString();
+    }
+
+    private static void append(StringBuilder text, String value) {
+        if (value != null) {
+            text.append(value).append('\n');
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Search index is shut down: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,215 @@
+package de.gessnerfl.fakesmtp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.gessnerfl.fakesmtp.repository.EmailCriteria;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class EmailStreamBroadcaster {
+    static final String EVENT_NAME = "email";
+    static final String SUBSCRIBERS_METRIC = "fakesmtp.stream.subscribers";
+    static final int BUFFER_CAPACITY = 1000;
+    //a subscriber has to be able to take a full replay; subscribers which fall further behind are dropped
+    static final int SUBSCRIBER_QUEUE_CAPACITY = BUFFER_CAPACITY;
+    //each subscriber has at most one pending drain, so the queue bounds the number of subscribers waiting for a sender
+    static final int SENDER_THREADS = 16;
+    static final int SENDER_QUEUE_CAPACITY = 1000;
+
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final ExecutorService sender;
+    private final Logger logger;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    //only accessed by the single broadcast thread, which keeps replay and live events in order
+    private final Deque<StreamEvent> buffer = new ArrayDeque<>(BUFFER_CAPACITY);
+    private long sequence;
+
+    @Autowired
+    public EmailStreamBroadcaster(ObjectMapper objectMapper, ThreadFactoryProvider threadFactoryProvider, MeterRegistry meterRegistry, Logger logger) {
+        this(objectMapper, Executors.newSingleThreadExecutor(threadFactoryProvider.create("email-stream-")),
+                new ThreadPoolExecutor(SENDER_THREADS, SENDER_THREADS, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(SENDER_QUEUE_CAPACITY), threadFactoryProvider.create("email-stream-send-")),
+                meterRegistry, logger);
+    }
+
+    EmailStreamBroadcaster(ObjectMapper objectMapper, ExecutorService executor, ExecutorService sender, MeterRegistry meterRegistry, Logger logger) {
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.sender = sender;
+        this.logger = logger;
+        Gauge.builder(SUBSCRIBERS_METRIC, subscribers, Set::size).register(meterRegistry);
+    }
+
+    public void subscribe(SseEmitter emitter, EmailCriteria filter, Long lastEventId) {
+        var subscriber = new Subscriber(emitter, filter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        execute(() -> {
+            if (lastEventId != null) {
+                //an id beyond the sequence was issued before a restart, so all events since the restart are missed
+                var replayAfter = lastEventId <= sequence ? lastEventId : 0L;
+                buffer.stream().filter(event -> event.id > replayAfter).forEach(event -> enqueue(subscriber, event));
+            }
+            subscribers.add(subscriber);
+        });
+    }
+
+    int getNumberOfSubscribers() {
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailReceived(EmailReceivedEvent event) {
+        execute(() -> broadcast(event));
+    }
+
+    private void broadcast(EmailReceivedEvent receivedEvent) {
+        var summary = receivedEvent.getSummary();
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(summary);
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize stream event for email {}", summary.getId(), e);
+            return;
+        }
+        //event ids are assigned in broadcast order; email ids are not, as concurrently stored emails commit in any order
+        var event = new StreamEvent(++sequence, data, receivedEvent);
+        if (buffer.size() == BUFFER_CAPACITY) {
+            buffer.removeFirst();
+        }
+        buffer.addLast(event);
+        for (var subscriber : subscribers) {
+            enqueue(subscriber, event);
+        }
+    }
+
+    //the broadcast thread never writes to a client itself, so that a slow client cannot stall the others
+    private void enqueue(Subscriber subscriber, StreamEvent event) {
+        if (!event.matches(subscriber.filter)) {
+            return;
+        }
+        if (!subscriber.queue.offer(event)) {
+            logger.debug("Drop email stream subscriber which fell {} events behind", SUBSCRIBER_QUEUE_CAPACITY);
+            subscribers.remove(subscriber);
+            //completed by its sender, as the emitter is locked while a send is blocked
+            subscriber.dropped = true;
+        }
+        if (subscriber.sending.compareAndSet(false, true)) {
+            try {
+                sender.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                if (sender.isShutdown()) {
+                    logger.debug("Email stream is shut down: {}", e.getMessage());
+                    return;
+                }
+                //no send is in progress for the subscriber, so its emitter can be completed right away
+                logger.debug("Drop email stream subscriber as all senders are busy: {}", e.getMessage());
+                subscribers.remove(subscriber);
+                subscriber.queue.clear();
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        do {
+            StreamEvent event;
+            while ((event = subscriber.queue.poll()) != null) {
+                if (subscriber.dropped) {
+                    subscriber.queue.clear();
+                    subscriber.emitter.complete();
+                    return;
+                }
+                if (!send(subscriber, event)) {
+                    return;
+                }
+            }
+            subscriber.sending.set(false);
+        } while (!subscriber.queue.isEmpty() && subscriber.sending.compareAndSet(false, true));
+    }
+
+    private boolean send(Subscriber subscriber, StreamEvent event) {
+        try {
+            subscriber.emitter.send(SseEmitter.event().id(String.valueOf(event.id)).name(EVENT_NAME).data(event.data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Drop email stream subscriber: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.queue.clear();
+            subscriber.emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Email stream is shut down: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final EmailCriteria filter;
+        private final BlockingQueue<StreamEvent> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE_CAPACITY);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean dropped;
+
+        private Subscriber(SseEmitter emitter, EmailCriteria filter) {
+            this.emitter = emitter;
+            this.filter = filter;
+        }
+    }
+
+    private static class StreamEvent {
+        private final long id;
+        private final String data;
+        private final String fromAddress;
+        private final List<String> recipients;
+
+        private StreamEvent(long id, String data, EmailReceivedEvent receivedEvent) {
+            this.id = id;
+            this.data = data;
+            this.fromAddress = receivedEvent.getSummary().getFromAddress();
+            this.recipients = receivedEvent.getRecipients();
+        }
+
+        private boolean matches(EmailCriteria filter) {
+            return filter.matches(fromAddress, recipients, null, null);
+        }
+    }
+}
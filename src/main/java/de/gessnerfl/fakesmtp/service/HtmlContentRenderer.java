@@ -3,16 +3,18 @@ package de.gessnerfl.fakesmtp.service;
 import de.gessnerfl.fakesmtp.model.ContentType;
 import de.gessnerfl.fakesmtp.model.Email;
 import de.gessnerfl.fakesmtp.model.EmailContent;
-import de.gessnerfl.fakesmtp.model.InlineImage;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -23,13 +25,23 @@ public class HtmlContentRenderer {
     static final String BOOTSTRAP_VERSION = "bootstrap.version";
 
     private final BuildProperties buildProperties;
+    private final RenderedContentCache renderedContentCache;
 
     @Autowired
-    public HtmlContentRenderer(ApplicationContext applicationContext) {
+    public HtmlContentRenderer(ApplicationContext applicationContext, RenderedContentCache renderedContentCache) {
         this.buildProperties = applicationContext.getBean(BuildProperties.class);
+        this.renderedContentCache = renderedContentCache;
     }
 
     public String render(EmailContent content) {
+        if (content.getRendered() != null) {
+            return content.getRendered();
+        }
+        var email = content.getEmail();
+        return renderedContentCache.get(content.getId(), email != null ? email.getId() : null, () -> renderContent(content));
+    }
+
+    public String renderContent(EmailContent content) {
         if (content.getContentType() == ContentType.HTML) {
             return harmonizeHtmlContent(content);
         }
@@ -49,7 +61,7 @@ public class HtmlContentRenderer {
     private String replaceCidImageSourcesWithInlineImages(String html, Email email) {
         if (html.contains("cid:")) {
             var matcher = CID_PATTERN.matcher(html);
-            return matcher.replaceAll(mr -> replaceContentIdWithBase64DataWhenAvailable(mr, email));
+            return matcher.replaceAll(mr -> Matcher.quoteReplacement(replaceContentIdWithUrlWhenAvailable(mr, email)));
         }
         return html;
     }
@@ -71,16 +83,13 @@ public class HtmlContentRenderer {
         }
     }
 
-    private String replaceContentIdWithBase64DataWhenAvailable(MatchResult mr, Email email) {
-        return email.getInlineImageByContentId(mr.group(1))
-                .map(i -> mapInlineImage(mr, i))
+    private String replaceContentIdWithUrlWhenAvailable(MatchResult mr, Email email) {
+        var contentId = mr.group(1) != null ? mr.group(1) : mr.group(2);
+        return email.getInlineImageByContentId(contentId)
+                .map(i -> mr.group().replace("cid:" + contentId, "/api/email/" + email.getId() + "/inline/" + UriUtils.encodePathSegment(contentId, StandardCharsets.UTF_8)))
                 .orElseGet(mr::group);
     }
 
-    private static String mapInlineImage(MatchResult mr, InlineImage i) {
-        return mr.group().replace("cid:" + mr.group(1), "data:" + i.getContentType() + ";base64, " + i.getData());
-    }
-
     private String convertLineBreaksToParagraphs(EmailContent content) {
         return Stream.of(content.getData().split("\n")).map(v -> "<p>" + v + "</p>").collect(Collectors.joining());
     }
@@ -0,0 +1,110 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
+
+@Component
+public class RenderedContentCache {
+    static final String GETS_METRIC = "fakesmtp.render.cache.gets";
+    static final String EVICTIONS_METRIC = "fakesmtp.render.cache.evictions";
+    static final String SIZE_METRIC = "fakesmtp.render.cache.size";
+    static final String WEIGHT_METRIC = "fakesmtp.render.cache.weight";
+
+    private final long maxWeight;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    //access ordered, so that the first entry is always the least recently used one
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    @Autowired
+    public RenderedContentCache(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, MeterRegistry meterRegistry) {
+        var rendering = fakeSmtpConfigurationProperties.getRendering();
+        this.maxWeight = rendering != null && rendering.getCacheSize() != null ? rendering.getCacheSize().toBytes() : 0;
+        this.hits = Counter.builder(GETS_METRIC).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(GETS_METRIC).tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder(EVICTIONS_METRIC).register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, RenderedContentCache::size).register(meterRegistry);
+        Gauge.builder(WEIGHT_METRIC, this, RenderedContentCache::weight).baseUnit("bytes").register(meterRegistry);
+    }
+
+    public String get(Long contentId, Long emailId, Supplier<String> renderer) {
+        if (contentId == null || maxWeight <= 0) {
+            return renderer.get();
+        }
+        synchronized (this) {
+            var entry = entries.get(contentId);
+            if (entry != null) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+        misses.increment();
+        var value = renderer.get();
+        put(contentId, new Entry(emailId, value));
+        return value;
+    }
+
+    private synchronized void put(Long contentId, Entry entry) {
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        var previous = entries.put(contentId, entry);
+        weight += entry.weight - (previous != null ? previous.weight : 0);
+        var iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onEmailDeleted(EmailDeletedEvent event) {
+        if (event.isAll()) {
+            entries.clear();
+            weight = 0;
+            return;
+        }
+        var emailIds = new HashSet<>(event.getIds());
+        var iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (emailIds.contains(entry.emailId)) {
+                weight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    private static class Entry {
+        private final Long emailId;
+        private final String value;
+        //approximate heap size of the rendered content, two bytes per character
+        private final long weight;
+
+        private Entry(Long emailId, String value) {
+            this.emailId = emailId;
+            this.value = value;
+            this.weight = value != null ? 2L * value.length() : 0;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.gessnerfl.fakesmtp.util;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+@Service
+public class ThreadFactoryProvider {
+
+    private final boolean virtual;
+
+    @Autowired
+    public ThreadFactoryProvider(FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties, Logger logger) {
+        var requested = fakeSmtpConfigurationProperties.getThreading() == FakeSmtpConfigurationProperties.Threading.VIRTUAL;
+        this.virtual = requested && isVirtualThreadSupportAvailable(Thread.class);
+        if (requested && !virtual) {
+            logger.error("Virtual threads are not supported by the Java runtime {}; fall back to platform threads", Runtime.version());
+        } else if (virtual) {
+            logger.info("Use virtual threads for SMTP sessions and email processing");
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public ThreadFactory create(String namePrefix) {
+        if (virtual) {
+            return createVirtualThreadFactory(namePrefix);
+        }
+        return new CustomizableThreadFactory(namePrefix);
+    }
+
+    public ExecutorService createThreadPerTaskExecutor(String namePrefix) {
+        var threadFactory = create(namePrefix);
+        if (virtual) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Failed to create virtual thread per task executor", e);
+            }
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    private static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            var builderType = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread factory", e);
+        }
+    }
+
+    //virtual threads are a preview feature of Java 19 and 20; without --enable-preview Thread.ofVirtual() exists but fails
+    static boolean isVirtualThreadSupportAvailable(Class<?> threadType) {
+        try {
+            threadType.getMethod("ofVirtual").invoke(null);
+            return true;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+}
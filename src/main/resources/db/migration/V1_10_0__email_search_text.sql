@@ -0,0 +1,11 @@
+CREATE TABLE email_search_text (
+    email BIGINT NOT NULL,
+    headers CLOB NOT NULL,
+    body CLOB,
+    PRIMARY KEY (email)
+);
+ALTER TABLE email_search_text ADD FOREIGN KEY (email) REFERENCES email(id) ON DELETE CASCADE;
+
+CREATE ALIAS IF NOT EXISTS FT_INIT FOR "org.h2.fulltext.FullText.init";
+CALL FT_INIT();
+CALL FT_CREATE_INDEX('PUBLIC', 'EMAIL_SEARCH_TEXT', 'HEADERS,BODY');
@@ -0,0 +1,10 @@
+CREATE TABLE email_search_header (
+    email BIGINT NOT NULL,
+    headers CLOB NOT NULL,
+    PRIMARY KEY (email)
+);
+ALTER TABLE email_search_header ADD FOREIGN KEY (email) REFERENCES email(id) ON DELETE CASCADE;
+
+INSERT INTO email_search_header (email, headers) SELECT email, headers FROM email_search_text;
+
+CALL FT_CREATE_INDEX('PUBLIC', 'EMAIL_SEARCH_HEADER', 'HEADERS');
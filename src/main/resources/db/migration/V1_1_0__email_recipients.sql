@@ -0,0 +1,11 @@
+ALTER TABLE email ALTER COLUMN to_address SET DATA TYPE VARCHAR(65536);
+
+CREATE TABLE email_recipient (
+    email BIGINT NOT NULL,
+    position INT NOT NULL,
+    address VARCHAR(255) NOT NULL,
+    PRIMARY KEY (email, position)
+);
+ALTER TABLE email_recipient ADD FOREIGN KEY (email) REFERENCES email(id) ON DELETE CASCADE;
+
+INSERT INTO email_recipient (email, position, address) SELECT id, 0, to_address FROM email;
@@ -0,0 +1 @@
+ALTER TABLE email ADD COLUMN materialized BOOLEAN DEFAULT TRUE NOT NULL;
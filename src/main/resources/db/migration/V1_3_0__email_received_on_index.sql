@@ -0,0 +1 @@
+CREATE INDEX idx_email_received_on_id ON email (received_on, id);
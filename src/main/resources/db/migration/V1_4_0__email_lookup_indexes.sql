@@ -0,0 +1,8 @@
+DELETE FROM email_inline_image WHERE email NOT IN (SELECT id FROM email);
+CREATE INDEX idx_email_inline_image_email ON email_inline_image (email);
+ALTER TABLE email_inline_image ADD FOREIGN KEY (email) REFERENCES email(id) ON DELETE CASCADE;
+
+CREATE INDEX idx_email_content_email ON email_content (email);
+CREATE INDEX idx_email_attachment_email ON email_attachment (email);
+CREATE INDEX idx_email_from_address ON email (from_address);
+CREATE INDEX idx_email_recipient_address ON email_recipient (address, email);
@@ -0,0 +1,13 @@
+CREATE TABLE email_blob (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    hash VARCHAR(64) NOT NULL,
+    size BIGINT NOT NULL,
+    reference_count INT NOT NULL,
+    data BLOB NOT NULL,
+    PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX idx_email_blob_hash ON email_blob (hash);
+CREATE SEQUENCE email_blob_sequence START WITH 1 INCREMENT BY 1;
+
+ALTER TABLE email_attachment ADD COLUMN blob BIGINT;
+ALTER TABLE email_inline_image ADD COLUMN blob BIGINT;
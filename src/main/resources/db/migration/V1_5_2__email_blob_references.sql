@@ -0,0 +1,12 @@
+UPDATE email_blob b SET reference_count =
+    (SELECT COUNT(*) FROM email_attachment a WHERE a.blob = b.id) + (SELECT COUNT(*) FROM email_inline_image i WHERE i.blob = b.id);
+
+ALTER TABLE email_attachment ALTER COLUMN blob SET NOT NULL;
+ALTER TABLE email_attachment ADD FOREIGN KEY (blob) REFERENCES email_blob(id);
+CREATE INDEX idx_email_attachment_blob ON email_attachment (blob);
+ALTER TABLE email_attachment DROP COLUMN data;
+
+ALTER TABLE email_inline_image ALTER COLUMN blob SET NOT NULL;
+ALTER TABLE email_inline_image ADD FOREIGN KEY (blob) REFERENCES email_blob(id);
+CREATE INDEX idx_email_inline_image_blob ON email_inline_image (blob);
+ALTER TABLE email_inline_image DROP COLUMN data;
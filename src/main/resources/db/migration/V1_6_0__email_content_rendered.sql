@@ -0,0 +1 @@
+ALTER TABLE email_content ADD COLUMN rendered CLOB;
@@ -0,0 +1,11 @@
+CREATE TABLE forward_dead_letter (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    from_address VARCHAR(255),
+    recipients CLOB NOT NULL,
+    raw_data BLOB NOT NULL,
+    attempts INT NOT NULL,
+    last_error VARCHAR(2048),
+    failed_on TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+CREATE SEQUENCE forward_dead_letter_sequence START WITH 1 INCREMENT BY 1;
@@ -0,0 +1 @@
+ALTER TABLE forward_dead_letter ADD COLUMN destination VARCHAR(255);
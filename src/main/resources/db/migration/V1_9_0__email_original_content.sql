@@ -0,0 +1,6 @@
+CREATE TABLE email_original_content (
+    email BIGINT NOT NULL,
+    data BLOB NOT NULL,
+    PRIMARY KEY (email)
+);
+ALTER TABLE email_original_content ADD FOREIGN KEY (email) REFERENCES email(id) ON DELETE CASCADE;
@@ -0,0 +1,57 @@
+package db.migration;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class V1_5_1__email_blob_dataTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void init() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:blob_migration_test;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void shouldMoveAttachmentsAndInlineImagesIntoDeduplicatedBlobs() {
+        migrate("1.4.0");
+        var logo = "logo".getBytes(StandardCharsets.UTF_8);
+        for (long id = 1; id <= 2; id++) {
+            jdbcTemplate.update("INSERT INTO email (id, from_address, to_address, subject, received_on, raw_data) VALUES (?, 'from@example.com', 'to@example.com', 'subject', CURRENT_TIMESTAMP, 'raw')", id);
+            jdbcTemplate.update("INSERT INTO email_attachment (id, email, filename, data) VALUES (?, ?, 'logo.png', ?)", id, id, logo);
+        }
+        jdbcTemplate.update("INSERT INTO email_attachment (id, email, filename, data) VALUES (3, 2, 'terms.pdf', ?)", (Object) "terms".getBytes(StandardCharsets.UTF_8));
+        jdbcTemplate.update("INSERT INTO email_inline_image (id, email, content_id, content_type, data) VALUES (1, 1, 'logo', 'image/png', ?)", Base64.getEncoder().encodeToString(logo));
+
+        migrate(null);
+
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_blob", Integer.class));
+        var logoBlob = jdbcTemplate.queryForObject("SELECT blob FROM email_inline_image WHERE id = 1", Long.class);
+        assertEquals(logoBlob, jdbcTemplate.queryForObject("SELECT blob FROM email_attachment WHERE id = 1", Long.class));
+        assertEquals(logoBlob, jdbcTemplate.queryForObject("SELECT blob FROM email_attachment WHERE id = 2", Long.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT reference_count FROM email_blob WHERE id = ?", Integer.class, logoBlob));
+        assertEquals(logo.length, jdbcTemplate.queryForObject("SELECT size FROM email_blob WHERE id = ?", Long.class, logoBlob));
+        assertArrayEquals(logo, jdbcTemplate.queryForObject("SELECT data FROM email_blob WHERE id = ?", byte[].class, logoBlob));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT b.reference_count FROM email_attachment a JOIN email_blob b ON b.id = a.blob WHERE a.id = 3", Integer.class));
+    }
+
+    private void migrate(String target) {
+        var configuration = Flyway.configure().dataSource(dataSource);
+        if (target != null) {
+            configuration.target(target);
+        }
+        configuration.load().migrate();
+    }
+}
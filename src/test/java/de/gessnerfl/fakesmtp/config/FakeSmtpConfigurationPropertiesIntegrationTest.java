@@ -26,5 +26,19 @@ class FakeSmtpConfigurationPropertiesIntegrationTest {
         assertNull(sut.getAuthentication());
         assertNotNull(sut.getPersistence());
         assertEquals(FakeSmtpConfigurationProperties.Persistence.DEFAULT_MAX_NUMBER_EMAILS, sut.getPersistence().getMaxNumberEmails().intValue());
+        assertNull(sut.getPersistence().getMaxStoredSize());
+        assertNull(sut.getPersistence().getMaxAge());
+        assertEquals(FakeSmtpConfigurationProperties.Rendering.DEFAULT_CACHE_SIZE, sut.getRendering().getCacheSize());
+        assertFalse(sut.getRendering().isPreRender());
+        assertEquals(FakeSmtpConfigurationProperties.Rendering.DEFAULT_PRE_RENDER_QUEUE_SIZE, sut.getRendering().getPreRenderQueueSize());
+        var forwarding = sut.getForwarding();
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_QUEUE_SIZE, forwarding.getQueueSize());
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_BATCH_SIZE, forwarding.getBatchSize());
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_MAX_ATTEMPTS, forwarding.getMaxAttempts());
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_INITIAL_BACKOFF, forwarding.getInitialBackoff());
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_MAX_BACKOFF, forwarding.getMaxBackoff());
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_CIRCUIT_BREAKER_THRESHOLD, forwarding.getCircuitBreakerThreshold());
+        assertEquals(FakeSmtpConfigurationProperties.Forwarding.DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION, forwarding.getCircuitBreakerOpenDuration());
+        assertFalse(forwarding.isRawRelay());
     }
 }
\ No newline at end of file
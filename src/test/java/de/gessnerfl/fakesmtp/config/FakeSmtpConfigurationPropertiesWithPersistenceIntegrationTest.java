@@ -7,8 +7,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.util.unit.DataSize;
 
 import java.net.InetAddress;
+import java.time.Duration;
 
 @ActiveProfiles({"integrationtest","config_with_persistence_integrationtest"})
 @ExtendWith(SpringExtension.class)
@@ -25,5 +27,7 @@ class FakeSmtpConfigurationPropertiesWithPersistenceIntegrationTest {
         Assertions.assertNull(sut.getAuthentication());
         Assertions.assertNotNull(sut.getPersistence());
         Assertions.assertEquals(5, sut.getPersistence().getMaxNumberEmails().intValue());
+        Assertions.assertEquals(DataSize.ofMegabytes(10), sut.getPersistence().getMaxStoredSize());
+        Assertions.assertEquals(Duration.ofHours(2), sut.getPersistence().getMaxAge());
     }
 }
\ No newline at end of file
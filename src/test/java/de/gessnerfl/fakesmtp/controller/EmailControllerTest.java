@@ -1,8 +1,11 @@
 package de.gessnerfl.fakesmtp.controller;
 
 import de.gessnerfl.fakesmtp.model.Email;
-import de.gessnerfl.fakesmtp.repository.EmailAttachmentRepository;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.service.EmailDeletedEvent;
+import de.gessnerfl.fakesmtp.service.EmailMaterializer;
+import de.gessnerfl.fakesmtp.service.EmailSearchService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,10 +14,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.ui.Model;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.Mockito.*;
@@ -26,42 +31,64 @@ class EmailControllerTest {
     @Mock
     private EmailRepository emailRepository;
     @Mock
-    private EmailAttachmentRepository emailAttachmentRepository;
-    @Mock
     private BuildProperties buildProperties;
+    @Mock
+    private EmailMaterializer emailMaterializer;
+    @Mock
+    private EmailSearchService emailSearchService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
     @InjectMocks
     private EmailController sut;
 
     @Test
     void shouldReturnEmailsPaged() {
         final String appVersion = "appVersion";
-        final Page<Email> page = createFirstPageEmail();
-        when(emailRepository.findAll(any(Pageable.class))).thenReturn(page);
+        final Page<EmailSummary> page = createFirstPageEmail();
+        when(emailRepository.findAllSummaries(any(Pageable.class))).thenReturn(page);
         when(buildProperties.getVersion()).thenReturn(appVersion);
 
-        var result = sut.getAll(0, 5, model);
+        var result = sut.getAll(0, 5, null, model);
 
         Assertions.assertEquals(EmailController.EMAIL_LIST_VIEW, result);
 
-        verify(emailRepository).findAll(argThat(matchPageable(0, 5)));
+        verify(emailRepository).findAllSummaries(argThat(matchPageable(0, 5)));
         verify(model).addAttribute(EmailController.EMAIL_LIST_MODEL_NAME, page);
         verify(buildProperties).getVersion();
         verify(model).addAttribute(EmailController.APP_VERSION_MODEL_NAME, appVersion);
         verifyNoMoreInteractions(emailRepository, buildProperties, model);
     }
 
+    @Test
+    void shouldReturnSearchResultsWhenQueryIsGiven() {
+        final String appVersion = "appVersion";
+        final Page<EmailSummary> page = createFirstPageEmail();
+        when(emailSearchService.search(eq("invoice"), any(Pageable.class))).thenReturn(page);
+        when(buildProperties.getVersion()).thenReturn(appVersion);
+
+        var result = sut.getAll(0, 5, "invoice", model);
+
+        Assertions.assertEquals(EmailController.EMAIL_LIST_VIEW, result);
+
+        verify(emailSearchService).search(eq("invoice"), argThat(matchPageable(0, 5)));
+        verify(model).addAttribute(EmailController.EMAIL_LIST_MODEL_NAME, page);
+        verify(model).addAttribute(EmailController.SEARCH_QUERY_MODEL_NAME, "invoice");
+        verify(model).addAttribute(EmailController.APP_VERSION_MODEL_NAME, appVersion);
+        verifyNoInteractions(emailRepository);
+    }
+
     @Test
     void shouldReturnRedirectToFirstPageWhenRequestedPageIsOutOfRange() {
         var page = mock(Page.class);
         when(page.getTotalPages()).thenReturn(2);
         when(page.getNumber()).thenReturn(3);
-        when(emailRepository.findAll(any(Pageable.class))).thenReturn(page);
+        when(emailRepository.findAllSummaries(any(Pageable.class))).thenReturn(page);
 
-        var result = sut.getAll(3, 5, model);
+        var result = sut.getAll(3, 5, null, model);
 
         Assertions.assertEquals(EmailController.REDIRECT_EMAIL_LIST_VIEW, result);
 
-        verify(emailRepository).findAll(argThat(matchPageable(3, 5)));
+        verify(emailRepository).findAllSummaries(argThat(matchPageable(3, 5)));
         verifyNoMoreInteractions(emailRepository, buildProperties, model);
     }
 
@@ -70,14 +97,14 @@ class EmailControllerTest {
         final String appVersion = "appVersion";
         var page = mock(Page.class);
         when(page.getNumber()).thenReturn(0);
-        when(emailRepository.findAll(any(Pageable.class))).thenReturn(page);
+        when(emailRepository.findAllSummaries(any(Pageable.class))).thenReturn(page);
         when(buildProperties.getVersion()).thenReturn(appVersion);
 
-        var result = sut.getAll(0, 5, model);
+        var result = sut.getAll(0, 5, null, model);
 
         Assertions.assertEquals(EmailController.EMAIL_LIST_VIEW, result);
 
-        verify(emailRepository).findAll(argThat(matchPageable(0, 5)));
+        verify(emailRepository).findAllSummaries(argThat(matchPageable(0, 5)));
         verify(model).addAttribute(EmailController.EMAIL_LIST_MODEL_NAME, page);
         verify(buildProperties).getVersion();
         verify(model).addAttribute(EmailController.APP_VERSION_MODEL_NAME, appVersion);
@@ -86,7 +113,7 @@ class EmailControllerTest {
 
     @Test
     void shouldRedirectToFirstPageWhenPageNumberIsBelowNull() {
-        var result = sut.getAll(-1, 5, model);
+        var result = sut.getAll(-1, 5, null, model);
 
         Assertions.assertEquals(EmailController.REDIRECT_EMAIL_LIST_VIEW, result);
         verifyNoInteractions(emailRepository, buildProperties, model);
@@ -94,7 +121,7 @@ class EmailControllerTest {
 
     @Test
     void shouldRedirectToFirstPageWhenPageSizeIsNull() {
-        String result = sut.getAll(0, 0, model);
+        String result = sut.getAll(0, 0, null, model);
 
         Assertions.assertEquals(EmailController.REDIRECT_EMAIL_LIST_VIEW, result);
         verifyNoInteractions(emailRepository, buildProperties, model);
@@ -102,7 +129,7 @@ class EmailControllerTest {
 
     @Test
     void shouldRedirectToFirstPageWhenPageSizeIsBelowNull() {
-        var result = sut.getAll(0, -1, model);
+        var result = sut.getAll(0, -1, null, model);
 
         Assertions.assertEquals(EmailController.REDIRECT_EMAIL_LIST_VIEW, result);
         verifyNoInteractions(emailRepository, buildProperties, model);
@@ -120,6 +147,7 @@ class EmailControllerTest {
 
         Assertions.assertEquals(EmailController.SINGLE_EMAIL_VIEW, result);
 
+        verify(emailMaterializer).materialize(id);
         verify(emailRepository).findById(id);
         verify(model).addAttribute(EmailController.SINGLE_EMAIL_MODEL_NAME, mail);
         verify(buildProperties).getVersion();
@@ -141,7 +169,7 @@ class EmailControllerTest {
         verifyNoInteractions(buildProperties, model);
     }
 
-    private Page<Email> createFirstPageEmail() {
+    private Page<EmailSummary> createFirstPageEmail() {
         var page = mock(Page.class);
         when(page.getNumber()).thenReturn(0);
         return page;
@@ -160,6 +188,7 @@ class EmailControllerTest {
 
         verify(emailRepository).deleteById(emailId);
         verify(emailRepository).flush();
+        verify(eventPublisher).publishEvent(argThat((EmailDeletedEvent e) -> e.getIds().equals(List.of(emailId))));
         verifyNoMoreInteractions(emailRepository);
         verifyNoInteractions(buildProperties);
     }
@@ -168,9 +197,9 @@ class EmailControllerTest {
     void shouldDeleteAllEmails(){
         sut.deleteAllEmails();
 
-        verify(emailAttachmentRepository).deleteAllInBatch();
         verify(emailRepository).deleteAllInBatch();
         verify(emailRepository).flush();
+        verify(eventPublisher).publishEvent(argThat((EmailDeletedEvent e) -> e.isAll()));
         verifyNoMoreInteractions(emailRepository);
         verifyNoInteractions(buildProperties);
     }
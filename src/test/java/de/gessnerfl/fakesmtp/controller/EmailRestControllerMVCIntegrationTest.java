@@ -2,7 +2,9 @@ package de.gessnerfl.fakesmtp.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.InlineImage;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,6 +19,8 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -24,6 +28,7 @@ import java.util.stream.IntStream;
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -80,6 +85,89 @@ class EmailRestControllerMVCIntegrationTest {
         assertEquals(List.of(email1), List.of(emails));
     }
 
+    @Test
+    void shouldReturnSummariesOfEmailsWhenSummaryViewIsRequested() throws Exception {
+        var email1 = createRandomEmail(5);
+        var email2 = createRandomEmail(2);
+
+        this.mockMvc.perform(get("/api/email?page=0&size=2&view=summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(email2.getId()))
+                .andExpect(jsonPath("$[0].subject").value(email2.getSubject()))
+                .andExpect(jsonPath("$[0].fromAddress").value(email2.getFromAddress()))
+                .andExpect(jsonPath("$[0].toAddress").value(email2.getToAddress()))
+                .andExpect(jsonPath("$[0].contentCount").value(1))
+                .andExpect(jsonPath("$[0].attachmentCount").value(1))
+                .andExpect(jsonPath("$[0].rawData").doesNotExist())
+                .andExpect(jsonPath("$[0].attachments").doesNotExist())
+                .andExpect(jsonPath("$[1].id").value(email1.getId()));
+    }
+
+    @Test
+    void shouldIterateEmailsWithKeysetCursor() throws Exception {
+        var email1 = createRandomEmail(5);
+        var email2 = createRandomEmail(2);
+        var email3 = createRandomEmail(1);
+
+        var firstPage = this.mockMvc.perform(get("/api/email?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(EmailRestController.TOTAL_COUNT_HEADER))
+                .andExpect(jsonPath("$[*].id", contains(email3.getId().intValue(), email2.getId().intValue())))
+                .andReturn();
+        var nextCursor = firstPage.getResponse().getHeader(EmailRestController.NEXT_CURSOR_HEADER);
+        assertNotNull(nextCursor);
+
+        this.mockMvc.perform(get("/api/email").param("limit", "2").param("after", nextCursor).param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(EmailRestController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$[*].id", contains(email1.getId().intValue())));
+
+        this.mockMvc.perform(get("/api/email").param("limit", "5").param("after", email2.getId().toString()).param("count", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(EmailRestController.TOTAL_COUNT_HEADER, "3"))
+                .andExpect(jsonPath("$[*].id", contains(email1.getId().intValue())));
+    }
+
+    @Test
+    void shouldRejectInvalidKeysetCursor() throws Exception {
+        this.mockMvc.perform(get("/api/email").param("limit", "2").param("after", "foo"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnAlreadyReceivedEmailWhenAwaitingMatchingEmail() throws Exception {
+        var email = createRandomEmail(1);
+
+        MvcResult asyncResult = this.mockMvc.perform(get("/api/email/await").param("subjectContains", email.getSubject()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult mvcResult = this.mockMvc.perform(asyncDispatch(asyncResult)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        assertEquals(email.getId(), mapFromJson(mvcResult.getResponse().getContentAsString(), Email.class).getId());
+    }
+
+    @Test
+    void shouldRejectInvalidAwaitTimeout() throws Exception {
+        this.mockMvc.perform(get("/api/email/await").param("timeout", "foo"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnSearchResultsWithTotalCount() throws Exception {
+        this.mockMvc.perform(get("/api/email/search").param("q", "no-match-" + System.nanoTime()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(EmailRestController.TOTAL_COUNT_HEADER, "0"))
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    void shouldOpenEmailStream() throws Exception {
+        this.mockMvc.perform(get("/api/email/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+    }
+
     @Test
     void shouldReturnNoEmailsWhenGivenPageIsOutOfRange() throws Exception {
         var email1 = createRandomEmail(5);
@@ -117,10 +205,67 @@ class EmailRestControllerMVCIntegrationTest {
                 .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,"attachment;filename=" + attachment.getFilename()))
                 .andExpect(header().string(HttpHeaders.CONTENT_LENGTH,"" + attachment.getData().length))
                 .andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
                 .andExpect(content().bytes(attachment.getData()))
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void shouldReturnRequestedRangeOfAttachment() throws Exception {
+        var email = createRandomEmail(1);
+        var attachment = email.getAttachments().get(0);
+        var data = attachment.getData();
+        var url = "/api/email/" + email.getId() + "/attachment/" + attachment.getId();
+
+        this.mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=5-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 5-9/" + data.length))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "5"))
+                .andExpect(content().bytes(Arrays.copyOfRange(data, 5, 10)));
+        this.mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=" + data.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenAttachmentMatchesETag() throws Exception {
+        var email = createRandomEmail(1);
+        var url = "/api/email/" + email.getId() + "/attachment/" + email.getAttachments().get(0).getId();
+
+        var etag = this.mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        this.mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void shouldReturnCacheableInlineImageForEmail() throws Exception {
+        var data = RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8);
+        var inlineImage = new InlineImage();
+        inlineImage.setContentId("logo@example.com");
+        inlineImage.setContentType("image/png");
+        inlineImage.setData(data);
+        var email = EmailControllerUtil.prepareRandomEmail(1);
+        email.addInlineImage(inlineImage);
+        email = emailRepository.save(email);
+        var url = "/api/email/" + email.getId() + "/inline/logo@example.com";
+
+        var etag = this.mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.IMAGE_PNG_VALUE))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, EmailRestController.INLINE_IMAGE_CACHE_CONTROL))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(content().bytes(data))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        this.mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        this.mockMvc.perform(get("/api/email/" + email.getId() + "/inline/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void shouldReturnErrorWhenAttachmentIsRequestedButAttachmentIdIsNotValid() throws Exception {
         var email = createRandomEmail(1);
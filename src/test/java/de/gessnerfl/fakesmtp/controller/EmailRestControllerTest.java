@@ -1,9 +1,18 @@
 package de.gessnerfl.fakesmtp.controller;
 
 import de.gessnerfl.fakesmtp.model.Email;
-import de.gessnerfl.fakesmtp.model.EmailAttachment;
+import de.gessnerfl.fakesmtp.model.EmailAttachmentSummary;
+import de.gessnerfl.fakesmtp.model.InlineImage;
 import de.gessnerfl.fakesmtp.repository.EmailAttachmentRepository;
+import de.gessnerfl.fakesmtp.repository.EmailBlobRepository;
+import de.gessnerfl.fakesmtp.repository.EmailCriteria;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.repository.InlineImageRepository;
+import de.gessnerfl.fakesmtp.service.EmailArrivalNotifier;
+import de.gessnerfl.fakesmtp.service.EmailDeletedEvent;
+import de.gessnerfl.fakesmtp.service.EmailMaterializer;
+import de.gessnerfl.fakesmtp.service.EmailSearchService;
+import de.gessnerfl.fakesmtp.service.EmailStreamBroadcaster;
 import de.gessnerfl.fakesmtp.util.MediaTypeUtil;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,15 +20,20 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.ServletContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,10 +46,24 @@ class EmailRestControllerTest {
     @Mock
     private EmailAttachmentRepository emailAttachmentRepository;
     @Mock
+    private InlineImageRepository inlineImageRepository;
+    @Mock
+    private EmailBlobRepository emailBlobRepository;
+    @Mock
     private MediaTypeUtil mediaTypeUtil;
     @Mock
     private ServletContext servletContext;
 
+    @Mock
+    private EmailMaterializer emailMaterializer;
+    @Mock
+    private EmailArrivalNotifier emailArrivalNotifier;
+    @Mock
+    private EmailStreamBroadcaster emailStreamBroadcaster;
+    @Mock
+    private EmailSearchService emailSearchService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
     @InjectMocks
     private EmailRestController sut;
 
@@ -44,13 +72,38 @@ class EmailRestControllerTest {
         final Page<Email> page = createFirstPageEmail();
         when(emailRepository.findAll(any(Pageable.class))).thenReturn(page);
 
-        var result = sut.all(0, 5, Sort.Direction.DESC);
+        var result = sut.all(0, 5, Sort.Direction.DESC, EmailRestController.FULL_VIEW, null, null, null, null);
 
         assertEquals(page.getContent(), result);
         verify(emailRepository).findAll(argThat(matchPageable(0, 5)));
         verifyNoMoreInteractions(emailRepository);
     }
 
+    @Test
+    void shouldReturnListOfEmailSummariesWhenSummaryViewIsRequested() {
+        var page = mock(Page.class);
+        when(page.getNumber()).thenReturn(0);
+        when(emailRepository.findAllSummaries(any(Pageable.class))).thenReturn(page);
+
+        var result = sut.all(0, 5, Sort.Direction.DESC, "SUMMARY", null, null, null, null);
+
+        assertEquals(page.getContent(), result);
+        verify(emailRepository).findAllSummaries(argThat(matchPageable(0, 5)));
+        verifyNoMoreInteractions(emailRepository);
+    }
+
+    @Test
+    void shouldReturnListOfEmailsMatchingFilter() {
+        final Page<Email> page = createFirstPageEmail();
+        when(emailRepository.findAllMatching(any(EmailCriteria.class), any(Pageable.class))).thenReturn(page);
+
+        var result = sut.all(0, 5, Sort.Direction.DESC, EmailRestController.FULL_VIEW, "john@example.com", null, null, null);
+
+        assertEquals(page.getContent(), result);
+        verify(emailRepository).findAllMatching(argThat(criteria -> "john@example.com".equals(criteria.getTo()) && criteria.getFrom() == null), argThat(matchPageable(0, 5)));
+        verifyNoMoreInteractions(emailRepository);
+    }
+
     @Test
     void shouldReturnSingleEmailWhenIdIsValid() {
         var id = 12L;
@@ -60,6 +113,7 @@ class EmailRestControllerTest {
         var result = sut.getEmailById(id);
 
         assertEquals(mail, result);
+        verify(emailMaterializer).materialize(id);
         verify(emailRepository).findById(id);
     }
 
@@ -74,56 +128,93 @@ class EmailRestControllerTest {
     }
 
     @Test
-    void shouldReturnResponseEntityForAttachment() {
+    void shouldReturnStreamingResponseEntityForAttachment() throws IOException {
         var fileContent = "this is the file content".getBytes(StandardCharsets.UTF_8);
         var filename = "myfile.txt";
         var emailId = 123L;
         var attachmentId = 456L;
-        var email = mock(Email.class);
-        var attachment = mock(EmailAttachment.class);
         var mediaType = MediaType.TEXT_PLAIN;
+        var request = mock(WebRequest.class);
 
-        when(email.getId()).thenReturn(emailId);
-        when(attachment.getEmail()).thenReturn(email);
-        when(attachment.getFilename()).thenReturn(filename);
-        when(attachment.getData()).thenReturn(fileContent);
-        when(emailAttachmentRepository.findById(attachmentId)).thenReturn(Optional.of(attachment));
+        when(emailAttachmentRepository.findSummaryByIdAndEmailId(attachmentId, emailId)).thenReturn(Optional.of(new EmailAttachmentSummary(attachmentId, filename, 7L, "abc", fileContent.length)));
+        when(emailBlobRepository.openDataStream(7L)).thenReturn(new ByteArrayInputStream(fileContent));
         when(mediaTypeUtil.getMediaTypeForFileName(servletContext, filename)).thenReturn(mediaType);
 
-        var result = sut.getEmailAttachmentById(emailId, attachmentId);
+        var result = sut.getEmailAttachmentById(emailId, attachmentId, request);
 
         assertEquals(HttpStatus.OK, result.getStatusCode());
         assertEquals("attachment;filename=myfile.txt", result.getHeaders().get(HttpHeaders.CONTENT_DISPOSITION).get(0));
         assertEquals(mediaType.toString(), result.getHeaders().get(HttpHeaders.CONTENT_TYPE).get(0));
-        assertEquals(fileContent.length + "", result.getHeaders().get(HttpHeaders.CONTENT_LENGTH).get(0));
-        assertArrayEquals(fileContent, result.getBody().getByteArray());
+        assertEquals("\"abc\"", result.getHeaders().getETag());
+        assertEquals(fileContent.length, result.getBody().contentLength());
+        assertArrayEquals(fileContent, result.getBody().getInputStream().readAllBytes());
+        verify(emailMaterializer).materialize(emailId);
+        verify(request).checkNotModified("\"abc\"");
     }
 
     @Test
-    void shouldThrowExceptionWhenNoAttachmentExistsForTheGivenId() {
-        var emailId = 123L;
-        var attachmentId = 456L;
-        var email = mock(Email.class);
-        var attachment = mock(EmailAttachment.class);
+    void shouldNotOpenAttachmentWhenItIsNotModified() throws IOException {
+        var request = mock(WebRequest.class);
+        when(emailAttachmentRepository.findSummaryByIdAndEmailId(456L, 123L)).thenReturn(Optional.of(new EmailAttachmentSummary(456L, "myfile.txt", 7L, "abc", 10)));
+        when(request.checkNotModified("\"abc\"")).thenReturn(true);
 
-        when(email.getId()).thenReturn(789L);
-        when(attachment.getEmail()).thenReturn(email);
-        when(emailAttachmentRepository.findById(attachmentId)).thenReturn(Optional.of(attachment));
+        assertNull(sut.getEmailAttachmentById(123L, 456L, request));
+        verify(emailBlobRepository, never()).openDataStream(any());
+    }
 
-        assertThrows(AttachmentNotFoundException.class, () -> {
-            sut.getEmailAttachmentById(emailId, attachmentId);
-        });
+    @Test
+    void shouldReturnResponseEntityForInlineImage() {
+        var data = "image".getBytes(StandardCharsets.UTF_8);
+        var inlineImage = mock(InlineImage.class);
+        var request = mock(WebRequest.class);
+        when(inlineImageRepository.findFirstByEmailIdAndContentId(123L, "logo")).thenReturn(Optional.of(inlineImage));
+        when(inlineImage.getBlobId()).thenReturn(7L);
+        when(inlineImage.getContentType()).thenReturn("image/png; name=logo.png");
+        when(inlineImage.getData()).thenReturn(data);
+        when(emailBlobRepository.findHashById(7L)).thenReturn(Optional.of("abc"));
+
+        var result = sut.getEmailInlineImage(123L, "logo", request);
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("\"abc\"", result.getHeaders().getETag());
+        assertEquals(EmailRestController.INLINE_IMAGE_CACHE_CONTROL, result.getHeaders().getCacheControl());
+        assertEquals("image/png;name=logo.png", result.getHeaders().getContentType().toString());
+        assertArrayEquals(data, result.getBody().getByteArray());
+        verify(emailMaterializer).materialize(123L);
+        verify(request).checkNotModified("\"abc\"");
+    }
+
+    @Test
+    void shouldNotReadInlineImageWhenItIsNotModified() {
+        var inlineImage = mock(InlineImage.class);
+        var request = mock(WebRequest.class);
+        when(inlineImageRepository.findFirstByEmailIdAndContentId(123L, "logo")).thenReturn(Optional.of(inlineImage));
+        when(inlineImage.getBlobId()).thenReturn(7L);
+        when(emailBlobRepository.findHashById(7L)).thenReturn(Optional.of("abc"));
+        when(request.checkNotModified("\"abc\"")).thenReturn(true);
+
+        assertNull(sut.getEmailInlineImage(123L, "logo", request));
+        verify(inlineImage, never()).getData();
+    }
+
+    @Test
+    void shouldThrowExceptionWhenNoInlineImageExistsForTheGivenContentId() {
+        when(inlineImageRepository.findFirstByEmailIdAndContentId(123L, "logo")).thenReturn(Optional.empty());
+        var request = mock(WebRequest.class);
+
+        assertThrows(InlineImageNotFoundException.class, () -> sut.getEmailInlineImage(123L, "logo", request));
     }
 
     @Test
-    void shouldThrowExceptionWhenAttachmentExistsForTheGivenIdButTheEmailIdDoesNotMatch() {
+    void shouldThrowExceptionWhenNoAttachmentExistsForTheGivenIdAndEmailId() {
         var emailId = 123L;
         var attachmentId = 456L;
+        var request = mock(WebRequest.class);
 
-        when(emailAttachmentRepository.findById(attachmentId)).thenReturn(Optional.empty());
+        when(emailAttachmentRepository.findSummaryByIdAndEmailId(attachmentId, emailId)).thenReturn(Optional.empty());
 
         assertThrows(AttachmentNotFoundException.class, () -> {
-            sut.getEmailAttachmentById(emailId, attachmentId);
+            sut.getEmailAttachmentById(emailId, attachmentId, request);
         });
     }
 
@@ -135,15 +226,17 @@ class EmailRestControllerTest {
 
         verify(emailRepository).deleteById(emailId);
         verify(emailRepository).flush();
+        verify(eventPublisher).publishEvent(argThat((EmailDeletedEvent e) -> e.getIds().equals(List.of(emailId))));
     }
 
     @Test
     void shouldDeleteAllEmails(){
         sut.deleteAllEmails();
 
-        verify(emailAttachmentRepository).deleteAllInBatch();
+        verify(emailAttachmentRepository, never()).deleteAllInBatch();
         verify(emailRepository).deleteAllInBatch();
         verify(emailRepository).flush();
+        verify(eventPublisher).publishEvent(argThat((EmailDeletedEvent e) -> e.isAll()));
         verifyNoMoreInteractions(emailRepository);
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package de.gessnerfl.fakesmtp.controller;
+
+import de.gessnerfl.fakesmtp.model.ForwardDeadLetter;
+import de.gessnerfl.fakesmtp.repository.ForwardDeadLetterRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ForwardDeadLetterRestControllerTest {
+    @Mock
+    private ForwardDeadLetterRepository forwardDeadLetterRepository;
+
+    @InjectMocks
+    private ForwardDeadLetterRestController sut;
+
+    @Test
+    void shouldReturnNewestDeadLettersFirst() {
+        var deadLetter = new ForwardDeadLetter();
+        when(forwardDeadLetterRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(deadLetter)));
+
+        var result = sut.all(1, 5);
+
+        assertEquals(List.of(deadLetter), result);
+        verify(forwardDeadLetterRepository).findAll(argThat((Pageable p) -> p.getPageNumber() == 1 && p.getPageSize() == 5
+                && p.getSort().equals(Sort.by(Sort.Direction.DESC, "id"))));
+    }
+
+    @Test
+    void shouldReturnRawDataOfDeadLetter() throws Exception {
+        var data = "Subject: test\r\n\r\nbody".getBytes(StandardCharsets.UTF_8);
+        var deadLetter = new ForwardDeadLetter();
+        deadLetter.setRawData(data);
+        when(forwardDeadLetterRepository.findById(12L)).thenReturn(Optional.of(deadLetter));
+
+        var result = sut.getRawData(12L);
+
+        assertEquals(ForwardDeadLetterRestController.MESSAGE_RFC822, result.getHeaders().getContentType());
+        assertEquals("attachment;filename=deadletter-12.eml", result.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        assertArrayEquals(data, result.getBody().getByteArray());
+    }
+
+    @Test
+    void shouldThrowExceptionWhenDeadLetterDoesNotExist() {
+        when(forwardDeadLetterRepository.findById(12L)).thenReturn(Optional.empty());
+        when(forwardDeadLetterRepository.existsById(12L)).thenReturn(false);
+
+        assertThrows(ForwardDeadLetterNotFoundException.class, () -> sut.getRawData(12L));
+        assertThrows(ForwardDeadLetterNotFoundException.class, () -> sut.deleteById(12L));
+        verify(forwardDeadLetterRepository, never()).deleteById(any());
+    }
+
+    @Test
+    void shouldDeleteDeadLetters() {
+        when(forwardDeadLetterRepository.existsById(12L)).thenReturn(true);
+
+        sut.deleteById(12L);
+        sut.deleteAll();
+
+        verify(forwardDeadLetterRepository).deleteById(12L);
+        verify(forwardDeadLetterRepository).deleteAllInBatch();
+    }
+}
@@ -0,0 +1,49 @@
+package de.gessnerfl.fakesmtp.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailCursorTest {
+
+    @Test
+    void shouldParseCursorWithIsoTimestamp() {
+        var result = EmailCursor.parse("2020-09-13T12:26:40Z,42");
+
+        assertEquals(Date.from(Instant.parse("2020-09-13T12:26:40Z")), result.getReceivedOn());
+        assertEquals(42L, result.getId());
+    }
+
+    @Test
+    void shouldParseCursorWithEpochMillis() {
+        var result = EmailCursor.parse("1600000000000,42");
+
+        assertEquals(new Date(1600000000000L), result.getReceivedOn());
+        assertEquals(42L, result.getId());
+    }
+
+    @Test
+    void shouldFormatCursorSoThatItCanBeParsedAgain() {
+        var cursor = new EmailCursor(new Date(1600000000123L), 7L);
+
+        assertEquals("2020-09-13T12:26:40.123Z,7", cursor.toString());
+        assertEquals(cursor, EmailCursor.parse(cursor.toString()));
+    }
+
+    @Test
+    void shouldDetectCursorsWithTimestamp() {
+        assertTrue(EmailCursor.isCursor("1600000000000,42"));
+        assertFalse(EmailCursor.isCursor("42"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"42", "foo,42", "1600000000000,foo"})
+    void shouldRejectInvalidCursors(String value) {
+        assertThrows(RuntimeException.class, () -> EmailCursor.parse(value));
+    }
+}
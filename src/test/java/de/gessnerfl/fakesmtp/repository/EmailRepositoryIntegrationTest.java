@@ -2,24 +2,46 @@ package de.gessnerfl.fakesmtp.repository;
 
 import de.gessnerfl.fakesmtp.model.ContentType;
 import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailAttachment;
 import de.gessnerfl.fakesmtp.model.EmailContent;
+import de.gessnerfl.fakesmtp.model.EmailSearchText;
+import de.gessnerfl.fakesmtp.model.InlineImage;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+import de.gessnerfl.fakesmtp.service.EmailReceivedEvent;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,6 +54,18 @@ class EmailRepositoryIntegrationTest {
     private static final Sort SORT_DESC_BY_RECEIVED_ON = Sort.by(Sort.Direction.DESC, "receivedOn");
     @Autowired
     private EmailRepository sut;
+    @Autowired
+    private EmailBlobRepository emailBlobRepository;
+    @Autowired
+    private EmailAttachmentRepository emailAttachmentRepository;
+    @Autowired
+    private EmailOriginalContentRepository emailOriginalContentRepository;
+    @Autowired
+    private EmailSearchTextRepository emailSearchTextRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @BeforeEach
     void init(){
@@ -39,47 +73,385 @@ class EmailRepositoryIntegrationTest {
     }
 
     @Test
-    void shouldDeleteEmailsWhichExceedTheRetentionLimitOfMaximumNumberOfEmails(){
+    void shouldDeleteEmailsById(){
         var mail1 = createRandomEmail(5);
         var mail2 = createRandomEmail(4);
         var mail3 = createRandomEmail(3);
-        var mail4 = createRandomEmail(2);
-        var mail5 = createRandomEmail(1);
 
         var beforeDeletion = sut.findAll(SORT_DESC_BY_RECEIVED_ON);
-        assertThat(beforeDeletion, hasSize(5));
-        assertThat(beforeDeletion, contains(mail5, mail4, mail3, mail2, mail1));
+        assertThat(beforeDeletion, hasSize(3));
+        assertThat(beforeDeletion, contains(mail3, mail2, mail1));
 
-        var count = sut.deleteEmailsExceedingDateRetentionLimit(3);
-        assertEquals(2, count);
+        sut.deleteAllByIdInBatch(List.of(mail1.getId(), mail2.getId()));
 
         var afterDeletion = sut.findAll(SORT_DESC_BY_RECEIVED_ON);
-        assertThat(afterDeletion, hasSize(3));
-        assertThat(afterDeletion, contains(mail5, mail4, mail3));
+        assertThat(afterDeletion, hasSize(1));
+        assertThat(afterDeletion, contains(mail3));
     }
 
     @Test
-    void shouldNotDeleteAnyEmailWhenTheNumberOfEmailsDoesNotExceedTheRetentionLimitOfMaximumNumberOfEmails(){
-        var mail1 = createRandomEmail(5);
-        var mail2 = createRandomEmail(4);
+    void shouldReturnAllIdsInInsertionOrder(){
+        var mail1 = createRandomEmail(1);
+        var mail2 = createRandomEmail(5);
         var mail3 = createRandomEmail(3);
 
-        var beforeDeletion = sut.findAll(SORT_DESC_BY_RECEIVED_ON);
-        assertThat(beforeDeletion, hasSize(3));
-        assertThat(beforeDeletion, contains(mail3, mail2, mail1));
+        assertEquals(List.of(mail1.getId(), mail2.getId(), mail3.getId()), sut.findAllIds());
+    }
 
-        var count = sut.deleteEmailsExceedingDateRetentionLimit(3);
-        assertEquals(0, count);
+    @Test
+    void shouldIterateEmailsWithKeysetCursorInDescendingOrder(){
+        var receivedOn = new Date(1_600_000_000_000L);
+        var mail1 = createRandomEmail(new Date(receivedOn.getTime() - 1000));
+        var mail2 = createRandomEmail(receivedOn);
+        var mail3 = createRandomEmail(receivedOn);
+        var mail4 = createRandomEmail(new Date(receivedOn.getTime() + 1000));
 
-        var afterDeletion = sut.findAll(SORT_DESC_BY_RECEIVED_ON);
-        assertThat(afterDeletion, hasSize(3));
-        assertThat(beforeDeletion, contains(mail3, mail2, mail1));
+        var firstPage = sut.findAllAfter(new EmailCriteria(), null, Sort.Direction.DESC, 2);
+        assertThat(firstPage, contains(mail4, mail3));
+
+        var secondPage = sut.findAllAfter(new EmailCriteria(), new EmailCursor(mail3.getReceivedOn(), mail3.getId()), Sort.Direction.DESC, 2);
+        assertThat(secondPage, contains(mail2, mail1));
+
+        var thirdPage = sut.findAllAfter(new EmailCriteria(), new EmailCursor(mail1.getReceivedOn(), mail1.getId()), Sort.Direction.DESC, 2);
+        assertThat(thirdPage, empty());
+    }
+
+    @Test
+    void shouldIterateEmailsWithKeysetCursorInAscendingOrder(){
+        var receivedOn = new Date(1_600_000_000_000L);
+        var mail1 = createRandomEmail(receivedOn);
+        var mail2 = createRandomEmail(receivedOn);
+        var mail3 = createRandomEmail(new Date(receivedOn.getTime() + 1000));
+
+        var result = sut.findAllAfter(new EmailCriteria(), new EmailCursor(mail1.getReceivedOn(), mail1.getId()), Sort.Direction.ASC, 5);
+
+        assertThat(result, contains(mail2, mail3));
+    }
+
+    @Test
+    void shouldReturnSummariesWithNumberOfContentsAndAttachments(){
+        var mail1 = createRandomEmail(2);
+        var mail2 = createRandomEmail(1);
+
+        var result = sut.findAllSummariesAfter(new EmailCriteria(), null, Sort.Direction.DESC, 5);
+
+        assertThat(result, hasSize(2));
+        var summary = result.get(0);
+        assertEquals(mail2.getId(), summary.getId());
+        assertEquals(mail2.getSubject(), summary.getSubject());
+        assertEquals(mail2.getFromAddress(), summary.getFromAddress());
+        assertEquals(mail2.getToAddress(), summary.getToAddress());
+        assertEquals(mail2.getReceivedOn().getTime(), summary.getReceivedOn().getTime());
+        assertEquals(1, summary.getContentCount());
+        assertEquals(0, summary.getAttachmentCount());
+        assertEquals(mail1.getId(), result.get(1).getId());
+    }
+
+    @Test
+    void shouldReturnReceivedOnOfEmail(){
+        var mail = createRandomEmail(1);
+
+        assertEquals(mail.getReceivedOn().getTime(), sut.findReceivedOnById(mail.getId()).orElseThrow().getTime());
+        assertTrue(sut.findReceivedOnById(mail.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void shouldReturnIdOfLatestEmailMatchingCriteria(){
+        var mail1 = createRandomEmail(3);
+        var mail2 = createRandomEmail(2);
+        mail2.setFromAddress("other@example.com");
+        mail2.setRecipients(new ArrayList<>(List.of("other-receiver@example.com")));
+        mail2 = sut.save(mail2);
+        var mail3 = createRandomEmail(1);
+        mail3.setSubject("Subject with 100% wildcard_chars");
+        mail3 = sut.save(mail3);
+
+        assertEquals(mail3.getId(), sut.findIdOfLatestEmailMatching(new EmailCriteria()).orElseThrow());
+        assertEquals(mail2.getId(), sut.findIdOfLatestEmailMatching(new EmailCriteria().from("other@example.com")).orElseThrow());
+        assertEquals(mail2.getId(), sut.findIdOfLatestEmailMatching(new EmailCriteria().to("other-receiver@example.com")).orElseThrow());
+        assertEquals(mail3.getId(), sut.findIdOfLatestEmailMatching(new EmailCriteria().subjectContains("100% wildcard_")).orElseThrow());
+        assertEquals(mail1.getId(), sut.findIdOfLatestEmailMatching(new EmailCriteria().subjectContains(mail1.getSubject())).orElseThrow());
+        assertTrue(sut.findIdOfLatestEmailMatching(new EmailCriteria().subjectContains("100%_wildcard")).isEmpty());
+        assertTrue(sut.findIdOfLatestEmailMatching(new EmailCriteria().from("other@example.com").since(mail3.getReceivedOn())).isEmpty());
+    }
+
+    @Test
+    void shouldReturnEmailsMatchingCriteria(){
+        var mail1 = createRandomEmail(3);
+        var mail2 = createRandomEmail(2);
+        mail2.setFromAddress("other@example.com");
+        mail2.setRecipients(new ArrayList<>(List.of("john@example.com", "jane@example.com")));
+        mail2 = sut.save(mail2);
+        var mail3 = createRandomEmail(1);
+        mail3.setRecipients(new ArrayList<>(List.of("jane@example.com")));
+        mail3 = sut.save(mail3);
+
+        var toJane = new EmailCriteria().to("jane@example.com");
+        assertEquals(List.of(mail3, mail2), sut.findAllMatching(toJane, PageRequest.of(0, 5, SORT_DESC_BY_RECEIVED_ON)).getContent());
+        assertEquals(2, sut.countMatching(toJane));
+        assertEquals(List.of(mail2), sut.findAllMatching(new EmailCriteria().from("other@example.com"), PageRequest.of(0, 5, SORT_DESC_BY_RECEIVED_ON)).getContent());
+
+        var window = new EmailCriteria().since(mail1.getReceivedOn()).until(mail3.getReceivedOn());
+        var page = sut.findAllSummariesMatching(window, PageRequest.of(0, 1, SORT_DESC_BY_RECEIVED_ON));
+        assertEquals(2, page.getTotalElements());
+        assertEquals(mail2.getId(), page.getContent().get(0).getId());
+
+        assertEquals(List.of(mail2), sut.findAllAfter(toJane, new EmailCursor(mail3.getReceivedOn(), mail3.getId()), Sort.Direction.DESC, 5));
+        assertEquals(List.of(mail2.getId()), sut.findAllSummariesAfter(toJane.until(mail3.getReceivedOn()), null, Sort.Direction.DESC, 5)
+                .stream().map(EmailSummary::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void shouldStoreIdenticalAttachmentsAndInlineImagesOnce(){
+        var logo = RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8);
+        var mail1 = createRandomEmail(2);
+        mail1.addAttachment(attachment("logo.png", logo));
+        mail1.addInlineImage(inlineImage(logo));
+        mail1 = sut.save(mail1);
+        var mail2 = createRandomEmail(1);
+        mail2.addAttachment(attachment("logo2.png", logo));
+        mail2.addAttachment(attachment("terms.pdf", RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8)));
+        mail2 = sut.save(mail2);
+        sut.flush();
+
+        var blobs = emailBlobRepository.findAll();
+        assertThat(blobs, hasSize(2));
+        var logoBlob = emailBlobRepository.findById(mail1.getAttachments().get(0).getBlobId()).orElseThrow();
+        assertEquals(3, logoBlob.getReferenceCount());
+        assertEquals(logo.length, logoBlob.getSize());
+        assertEquals(logoBlob.getId(), mail1.getInlineImages().get(0).getBlobId());
+        assertEquals(logoBlob.getId(), mail2.getAttachments().get(0).getBlobId());
+
+        sut.deleteById(mail1.getId());
+        assertEquals(1, referenceCountOf(logoBlob.getId()));
+
+        sut.deleteAllByIdInBatch(List.of(mail2.getId()));
+        assertThat(emailBlobRepository.findAll(), empty());
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    void shouldReferenceBlobInsertedByConcurrentTransactionOnceItIsCommitted() throws Exception {
+        var data = RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8);
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var executor = Executors.newFixedThreadPool(2);
+        var firstStored = new CountDownLatch(1);
+        var commitFirst = new CountDownLatch(1);
+        try {
+            var first = executor.submit(() -> transactionTemplate.execute(status -> {
+                var mail = createRandomEmail(2);
+                mail.addAttachment(attachment("terms.pdf", data));
+                sut.save(mail);
+                firstStored.countDown();
+                awaitUninterruptibly(commitFirst);
+                return mail.getAttachments().get(0).getBlobId();
+            }));
+            assertTrue(firstStored.await(10, TimeUnit.SECONDS));
+            var second = executor.submit(() -> transactionTemplate.execute(status -> {
+                var mail = createRandomEmail(1);
+                mail.addAttachment(attachment("terms.pdf", data));
+                sut.save(mail);
+                return mail.getAttachments().get(0).getBlobId();
+            }));
+
+            //the insert of the second email waits for the uncommitted blob of the first one
+            assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+            commitFirst.countDown();
+
+            var blobId = first.get(10, TimeUnit.SECONDS);
+            assertEquals(blobId, second.get(10, TimeUnit.SECONDS));
+            assertEquals(2, referenceCountOf(blobId));
+        } finally {
+            commitFirst.countDown();
+            executor.shutdown();
+            sut.deleteAll();
+        }
+    }
+
+    @Test
+    void shouldDeleteAllBlobsWhenAllEmailsAreDeleted(){
+        var mail = createRandomEmail(1);
+        mail.addAttachment(attachment("terms.pdf", RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8)));
+        sut.save(mail);
+
+        sut.deleteAllInBatch();
+
+        assertThat(sut.findAll(), empty());
+        assertThat(emailBlobRepository.findAll(), empty());
+    }
+
+    @Test
+    void shouldKeepBlobsAcquiredByConcurrentlyStoredEmailWhenAllEmailsAreDeleted(){
+        var data = RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8);
+        var mail = createRandomEmail(1);
+        mail.addAttachment(attachment("terms.pdf", data));
+        mail = sut.save(mail);
+        var blobId = mail.getAttachments().get(0).getBlobId();
+        //reference of an email which is not stored yet
+        emailBlobRepository.addReferences(blobId, 1);
+
+        sut.deleteAllInBatch();
+
+        assertThat(sut.findAll(), empty());
+        assertEquals(1, referenceCountOf(blobId));
+    }
+
+    @Test
+    void shouldCalculateStoredSizeLikeReceivedEvent(){
+        var mail = new Email();
+        mail.setSubject("Test Subject");
+        mail.setRawData("Gr\u00fc\u00dfe \u20ac");
+        mail.setReceivedOn(new Date());
+        mail.setFromAddress("sender@example.com");
+        mail.setToAddress("receiver@example.com");
+        mail.setMaterialized(false);
+        mail.setOriginalContent("Gr\u00fc\u00dfe".getBytes(StandardCharsets.ISO_8859_1));
+        var content = new EmailContent();
+        content.setContentType(ContentType.HTML);
+        content.setData("<p>\u00fc</p>");
+        content.setRendered("<p>\u00fc</p><br/>");
+        mail.addContent(content);
+        mail.addAttachment(attachment("terms.pdf", RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8)));
+        mail = sut.save(mail);
+        sut.flush();
+
+        var expected = new EmailReceivedEvent(mail).getStoredSize();
+        assertEquals(expected, sut.findStoredSizeById(mail.getId()).orElseThrow().longValue());
+        assertEquals(expected, ((Number) sut.findStoredSizeOfAllEmails().get(0)[2]).longValue());
+        assertTrue(sut.findStoredSizeById(mail.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void shouldStoreOriginalContentOfNotMaterializedEmailUntilEmailIsDeleted(){
+        var originalContent = "Gr\u00fc\u00dfe".getBytes(StandardCharsets.ISO_8859_1);
+        var mail = new Email();
+        mail.setSubject("Test Subject");
+        mail.setRawData(new String(originalContent, StandardCharsets.UTF_8));
+        mail.setReceivedOn(new Date());
+        mail.setFromAddress("sender@example.com");
+        mail.setToAddress("receiver@example.com");
+        mail.setMaterialized(false);
+        mail.setOriginalContent(originalContent);
+        mail = sut.save(mail);
+        sut.flush();
+
+        assertArrayEquals(originalContent, emailOriginalContentRepository.findById(mail.getId()).orElseThrow().getData());
+
+        sut.deleteAllByIdInBatch(List.of(mail.getId()));
+        entityManager.clear();
+
+        assertFalse(emailOriginalContentRepository.existsById(mail.getId()));
+    }
+
+    @Test
+    void shouldFindEmailsMatchingAllWordsOfFullTextQuery(){
+        var mail1 = createRandomEmail(3);
+        var mail2 = createRandomEmail(2);
+        var mail3 = createRandomEmail(1);
+        emailSearchTextRepository.save(searchText(mail1, "Invoice 4711", "Please pay"));
+        emailSearchTextRepository.save(searchText(mail2, "Invoice 4712", null));
+        emailSearchTextRepository.save(searchText(mail3, "Welcome", "Your invoice will follow"));
+        emailSearchTextRepository.flush();
+
+        var result = emailSearchTextRepository.findIdsOfEmailsMatching("INVOICE", PageRequest.of(0, 2));
+        assertEquals(3, result.getTotalElements());
+        assertEquals(List.of(mail2.getId(), mail1.getId()), idsOf(result));
+        assertEquals(List.of(mail1.getId()), idsOf(emailSearchTextRepository.findIdsOfEmailsMatching("invoice pay", PageRequest.of(0, 2))));
+        assertEquals(List.of(mail2.getId()), emailSearchTextRepository.findIdsOfEmailsToIndex());
+
+        sut.deleteAllByIdInBatch(List.of(mail3.getId()));
+
+        assertEquals(List.of(mail2.getId(), mail1.getId()), idsOf(emailSearchTextRepository.findIdsOfEmailsMatching("invoice", PageRequest.of(0, 5))));
+    }
+
+    @Test
+    void shouldRankEmailsMatchingInHeadersAheadOfBodyMatchesAndNewestFirst(){
+        var mail1 = createRandomEmail(4);
+        var mail2 = createRandomEmail(1);
+        var mail3 = createRandomEmail(3);
+        var mail4 = createRandomEmail(2);
+        emailSearchTextRepository.save(searchText(mail1, "Invoice 4711", null));
+        emailSearchTextRepository.save(searchText(mail2, "Welcome", "Your invoice will follow"));
+        emailSearchTextRepository.save(searchText(mail3, "Reminder", "Invoice overdue"));
+        emailSearchTextRepository.save(searchText(mail4, "Invoice 4712", "Please pay"));
+        emailSearchTextRepository.flush();
+
+        var result = emailSearchTextRepository.findIdsOfEmailsMatching("invoice", PageRequest.of(0, 5));
+
+        assertEquals(List.of(mail4.getId(), mail1.getId(), mail2.getId(), mail3.getId()), idsOf(result));
+        assertEquals(List.of(mail3.getId()), idsOf(emailSearchTextRepository.findIdsOfEmailsMatching("reminder invoice", PageRequest.of(0, 5))));
+    }
+
+    @Test
+    void shouldFindAttachmentSummaryOfEmailAndStreamItsBlob() throws IOException {
+        var data = RandomStringUtils.randomAlphanumeric(32).getBytes(StandardCharsets.UTF_8);
+        var mail = createRandomEmail(1);
+        mail.addAttachment(attachment("terms.pdf", data));
+        mail = sut.save(mail);
+        sut.flush();
+        var attachment = mail.getAttachments().get(0);
+
+        var summary = emailAttachmentRepository.findSummaryByIdAndEmailId(attachment.getId(), mail.getId()).orElseThrow();
+        assertEquals("terms.pdf", summary.getFilename());
+        assertEquals(attachment.getBlobId(), summary.getBlobId());
+        assertEquals(data.length, summary.getSize());
+        assertEquals(64, summary.getHash().length());
+        assertTrue(emailAttachmentRepository.findSummaryByIdAndEmailId(attachment.getId(), mail.getId() + 1).isEmpty());
+
+        try (var stream = emailBlobRepository.openDataStream(summary.getBlobId())) {
+            assertArrayEquals(data, stream.readAllBytes());
+        }
+        assertThrows(FileNotFoundException.class, () -> emailBlobRepository.openDataStream(-1L));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int referenceCountOf(Long blobId) {
+        //reference counts are maintained by bulk updates which bypass the persistence context
+        entityManager.clear();
+        return emailBlobRepository.findAll().stream().filter(b -> b.getId().equals(blobId)).findFirst().orElseThrow().getReferenceCount();
+    }
+
+    private static EmailAttachment attachment(String filename, byte[] data) {
+        var attachment = new EmailAttachment();
+        attachment.setFilename(filename);
+        attachment.setData(data);
+        return attachment;
+    }
+
+    private static InlineImage inlineImage(byte[] data) {
+        var inlineImage = new InlineImage();
+        inlineImage.setContentId("logo");
+        inlineImage.setContentType("image/png");
+        inlineImage.setData(data);
+        return inlineImage;
+    }
+
+    private static List<Long> idsOf(Page<Number> ids) {
+        return ids.map(Number::longValue).getContent();
+    }
+
+    private static EmailSearchText searchText(Email email, String headers, String body) {
+        var searchText = new EmailSearchText();
+        searchText.setEmailId(email.getId());
+        searchText.setHeaders(headers);
+        searchText.setBody(body);
+        return searchText;
     }
 
     private Email createRandomEmail(int minusMinutes) {
-        var randomToken = RandomStringUtils.randomAlphanumeric(6);
         var localDateTime = LocalDateTime.now().minusMinutes(minusMinutes);
-        var receivedOn = Date.from(localDateTime.atZone(ZoneOffset.systemDefault()).toInstant());
+        return createRandomEmail(Date.from(localDateTime.atZone(ZoneOffset.systemDefault()).toInstant()));
+    }
+
+    private Email createRandomEmail(Date receivedOn) {
+        var randomToken = RandomStringUtils.randomAlphanumeric(6);
 
         var content = new EmailContent();
         content.setContentType(ContentType.PLAIN);
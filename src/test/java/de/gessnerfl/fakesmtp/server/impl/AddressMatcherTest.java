@@ -0,0 +1,101 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AddressMatcherTest {
+
+    @Test
+    void shouldMatchExactAddress() {
+        var sut = AddressMatcher.compile(List.of("john@doe\\.com"));
+
+        assertEquals(Optional.of("john@doe\\.com"), sut.match("john@doe.com"));
+        assertEquals(Optional.empty(), sut.match("john@doeXcom"));
+        assertEquals(Optional.empty(), sut.match("jane@doe.com"));
+    }
+
+    @Test
+    void shouldMatchExactDomain() {
+        var sut = AddressMatcher.compile(List.of(".*@doe\\.com"));
+
+        assertEquals(Optional.of(".*@doe\\.com"), sut.match("john@doe.com"));
+        assertEquals(Optional.of(".*@doe\\.com"), sut.match("a@b@doe.com"));
+        assertEquals(Optional.empty(), sut.match("john@sub.doe.com"));
+        assertEquals(Optional.empty(), sut.match("jo\nhn@doe.com"));
+    }
+
+    @Test
+    void shouldTreatPlusAsQuantifierLikeStringMatches() {
+        var sut = AddressMatcher.compile(List.of("john+tag@x\\.com"));
+
+        assertEquals(Optional.of("john+tag@x\\.com"), sut.match("johnntag@x.com"));
+        assertEquals(Optional.of("john+tag@x\\.com"), sut.match("johntag@x.com"));
+        assertEquals(Optional.empty(), sut.match("john+tag@x.com"));
+        assertEquals("johnntag@x.com".matches("john+tag@x\\.com"), sut.match("johnntag@x.com").isPresent());
+        assertEquals("john+tag@x.com".matches("john+tag@x\\.com"), sut.match("john+tag@x.com").isPresent());
+    }
+
+    @Test
+    void shouldMatchEscapedPlusLiterally() {
+        var sut = AddressMatcher.compile(List.of("john\\+tag@x\\.com"));
+
+        assertEquals(Optional.of("john\\+tag@x\\.com"), sut.match("john+tag@x.com"));
+        assertEquals(Optional.empty(), sut.match("johnntag@x.com"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "john@doe.com, john@doe.com",
+            "john@doeXcom, john@doe.com",
+            "jane@sub.doe.com, .*@(sub\\.)?doe\\.com",
+            "max@other.com, (m)(a)x@.*",
+            "abab@x.com, (ab)\\1@x\\.com"
+    })
+    void shouldMatchRegexRulesAndReportMatchingRule(String address, String expectedRule) {
+        var sut = AddressMatcher.compile(List.of("john@doe.com", ".*@(sub\\.)?doe\\.com", "(m)(a)x@.*", "(ab)\\1@x\\.com"));
+
+        assertEquals(Optional.of(expectedRule), sut.match(address));
+    }
+
+    @Test
+    void shouldMatchRulesWithDuplicateGroupNames() {
+        var sut = AddressMatcher.compile(List.of("(?<u>a).*@x\\.com", "(?<u>b).*@x\\.com", "c.*@x\\.com", "(?<=d)d.*"));
+
+        assertEquals(Optional.of("(?<u>a).*@x\\.com"), sut.match("anna@x.com"));
+        assertEquals(Optional.of("(?<u>b).*@x\\.com"), sut.match("bob@x.com"));
+        assertEquals(Optional.of("c.*@x\\.com"), sut.match("carl@x.com"));
+        assertEquals(Optional.empty(), sut.match("dave@x.com"));
+        assertTrue(sut.getInvalidRules().isEmpty());
+    }
+
+    @Test
+    void shouldNotMatchPartialAddress() {
+        var sut = AddressMatcher.compile(List.of("john", "doe\\.com"));
+
+        assertEquals(Optional.empty(), sut.match("john@doe.com"));
+    }
+
+    @Test
+    void shouldSkipInvalidRules() {
+        var sut = AddressMatcher.compile(List.of("****", ".*@doe\\.com"));
+
+        assertEquals(List.of(".*@doe\\.com"), sut.getRules());
+        assertEquals(List.of("****"), sut.getInvalidRules());
+        assertTrue(sut.match("john@doe.com").isPresent());
+    }
+
+    @Test
+    void shouldNotMatchAnythingWhenEmpty() {
+        var sut = AddressMatcher.compile(List.of());
+
+        assertTrue(sut.isEmpty());
+        assertEquals(Optional.empty(), sut.match("john@doe.com"));
+        assertEquals(Optional.empty(), sut.match(null));
+    }
+}
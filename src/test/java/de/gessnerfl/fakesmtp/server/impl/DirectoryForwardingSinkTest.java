@@ -0,0 +1,59 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryForwardingSinkTest {
+
+    @Test
+    void shouldWriteReceivedDataOfEachEmailAsFile(@TempDir Path tempDir) throws Exception {
+        var directory = tempDir.resolve("outbox");
+        var sut = new DirectoryForwardingSink(directory);
+        var content1 = "Subject: first\r\n\r\nbody".getBytes(StandardCharsets.UTF_8);
+        var content2 = "Subject: second\r\n\r\nbody".getBytes(StandardCharsets.UTF_8);
+
+        var failures = sut.send(List.of(messageOf(content1), messageOf(content2)));
+
+        assertTrue(failures.isEmpty());
+        try (var files = Files.list(directory)) {
+            var emlFiles = files.collect(toList());
+            assertEquals(2, emlFiles.size());
+            assertTrue(emlFiles.stream().allMatch(file -> file.getFileName().toString().endsWith(DirectoryForwardingSink.FILE_SUFFIX)));
+            var contents = emlFiles.stream().map(DirectoryForwardingSinkTest::read).sorted().collect(toList());
+            assertEquals(List.of(new String(content1, StandardCharsets.UTF_8), new String(content2, StandardCharsets.UTF_8)), contents);
+        }
+    }
+
+    @Test
+    void shouldReturnMessageAsFailedWhenDirectoryCannotBeCreated(@TempDir Path tempDir) throws Exception {
+        var file = Files.createFile(tempDir.resolve("file"));
+        var sut = new DirectoryForwardingSink(file.resolve("outbox"));
+        var message = messageOf(new byte[0]);
+
+        var failures = sut.send(List.of(message));
+
+        assertTrue(failures.get(message) instanceof IOException);
+    }
+
+    private static OutboundMessage messageOf(byte[] content) {
+        return new OutboundMessage(new RawData("sender@example.com", List.of("receiver@example.com"), content), Clock.systemUTC());
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
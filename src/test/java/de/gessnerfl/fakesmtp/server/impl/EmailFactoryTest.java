@@ -15,13 +15,14 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Date;
 
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class EmailFactoryTest {
@@ -31,6 +32,8 @@ class EmailFactoryTest {
 
     @Mock
     private TimestampProvider timestampProvider;
+    @Mock
+    private IngestMetrics ingestMetrics;
 
     @InjectMocks
     private EmailFactory sut;
@@ -112,7 +115,7 @@ class EmailFactoryTest {
         assertEquals(now, result.getReceivedOn());
         assertThat(result.getAttachments(), empty());
         assertThat(result.getInlineImages(), hasSize(1));
-        assertEquals(imageBase64, result.getInlineImages().get(0).getData());
+        assertArrayEquals(Base64.getDecoder().decode(imageBase64), result.getInlineImages().get(0).getData());
         assertEquals("image/png", result.getInlineImages().get(0).getContentType());
     }
 
@@ -237,5 +240,86 @@ class EmailFactoryTest {
         assertEquals(now, result.getReceivedOn());
         assertThat(result.getAttachments(), hasSize(2));
         assertThat(result.getAttachments().stream().map(EmailAttachment::getFilename).collect(toList()), containsInAnyOrder("customizing.css", "app-icon.png"));
+        verify(ingestMetrics).messageConverted(eq(ContentType.MULTIPART_MIXED), eq(2), anyLong());
+        verify(ingestMetrics, never()).fallbackParsed();
+    }
+
+    @Test
+    void shouldCreateFallbackMailWithRawDataAsPlainContentWhenMailCannotBeParsed() throws Exception {
+        var now = new Date();
+        var data = "Subject: Broken\r\nContent-Type: multipart/mixed\r\n\r\nbody without boundary\r\n".getBytes(StandardCharsets.UTF_8);
+        var rawData = new RawData(SENDER, RECEIVER, data);
+
+        when(timestampProvider.now()).thenReturn(now);
+
+        var result = sut.convert(rawData);
+
+        assertEquals(EmailFactory.UNDEFINED, result.getSubject());
+        assertThat(result.getContents(), hasSize(1));
+        assertEquals(new String(data, StandardCharsets.UTF_8), result.getPlainContent().get().getData());
+        verify(ingestMetrics).fallbackParsed();
+        verify(ingestMetrics).messageConverted(eq(ContentType.MULTIPART_MIXED), eq(0), anyLong());
+    }
+
+    @Test
+    void shouldCreateMailWithHeadersOnlyWhenConvertingHeaders() throws Exception {
+        var now = new Date();
+        var data = TestResourceUtil.getTestFileContentBytes("multipart-mail-html-and-plain-with-attachments.eml");
+        var dataAsString = new String(data, StandardCharsets.UTF_8);
+        var rawData = new RawData(SENDER, RECEIVER, data);
+
+        when(timestampProvider.now()).thenReturn(now);
+
+        var result = sut.convertHeaders(rawData);
+
+        assertEquals(SENDER, result.getFromAddress());
+        assertEquals(RECEIVER, result.getToAddress());
+        assertEquals("Test-Alternative-Mail 4", result.getSubject());
+        assertEquals(dataAsString, result.getRawData());
+        assertEquals(now, result.getReceivedOn());
+        assertFalse(result.isMaterialized());
+        assertThat(result.getContents(), empty());
+        assertThat(result.getAttachments(), empty());
+    }
+
+    @Test
+    void shouldUseUndefinedSubjectWhenConvertingHeadersOfMailWithoutSubject() throws Exception {
+        var data = TestResourceUtil.getTestFileContentBytes("mail-without-subject.eml");
+
+        var result = sut.convertHeaders(new RawData(SENDER, RECEIVER, data));
+
+        assertEquals(EmailFactory.UNDEFINED, result.getSubject());
+    }
+
+    @Test
+    void shouldMaterializeBodyPartsOfHeaderOnlyMail() throws Exception {
+        var now = new Date();
+        var data = TestResourceUtil.getTestFileContentBytes("multipart-mail-html-and-plain-with-attachments.eml");
+        when(timestampProvider.now()).thenReturn(now);
+        var email = sut.convertHeaders(new RawData(SENDER, RECEIVER, data));
+
+        sut.materialize(email);
+
+        assertTrue(email.isMaterialized());
+        assertEquals(now, email.getReceivedOn());
+        assertThat(email.getContents(), hasSize(2));
+        assertEquals("This is the test mail number4", email.getPlainContent().get().getData());
+        assertThat(email.getAttachments(), hasSize(2));
+        assertTrue(email.getAttachments().stream().allMatch(a -> a.getEmail() == email));
+    }
+
+    @Test
+    void shouldMaterializeHeaderOnlyMailFromOriginalBytes() throws Exception {
+        var data = ("Subject: Greetings\r\nContent-Type: text/plain; charset=ISO-8859-1\r\nContent-Transfer-Encoding: 8bit\r\n\r\nGr\u00fc\u00dfe")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        when(timestampProvider.now()).thenReturn(new Date());
+        var email = sut.convertHeaders(new RawData(SENDER, RECEIVER, data));
+
+        assertArrayEquals(data, email.getOriginalContent());
+
+        sut.materialize(email);
+
+        assertEquals("Gr\u00fc\u00dfe", email.getPlainContent().get().getData());
+        assertNull(email.getOriginalContent());
     }
-}
\ No newline at end of file
+}
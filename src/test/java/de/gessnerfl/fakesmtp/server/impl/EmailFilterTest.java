@@ -1,12 +1,14 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
 import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
 
@@ -21,6 +23,12 @@ class EmailFilterTest {
   @Mock
   private FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
 
+  @Spy
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Mock
+  private IngestMetrics ingestMetrics;
+
   @Mock
   private Logger logger;
 
@@ -46,6 +54,7 @@ class EmailFilterTest {
   void matchingFilter(){
     when(fakeSmtpConfigurationProperties.getFilteredEmailRegexList()).thenReturn(".*@doe.com");
     assertTrue(sut.ignore(TEST_EMAIL_ADDRESS_1,TEST_EMAIL_ADDRESS_2));
+    verify(ingestMetrics).participantsFiltered(eq(true), anyLong());
   }
 
   @ParameterizedTest
@@ -60,4 +69,35 @@ class EmailFilterTest {
     when(fakeSmtpConfigurationProperties.getFilteredEmailRegexList()).thenReturn("****");
     assertFalse(sut.ignore(TEST_EMAIL_ADDRESS_1,TEST_EMAIL_ADDRESS_2));
   }
+
+  @Test
+  void invalidRegexDoesNotDisableOtherFilterEntries(){
+    when(fakeSmtpConfigurationProperties.getFilteredEmailRegexList()).thenReturn("****,jane@doe\\.com");
+    assertTrue(sut.ignore(TEST_EMAIL_ADDRESS_1,TEST_EMAIL_ADDRESS_2));
+    verify(logger).error(anyString(), eq("****"), eq("****,jane@doe\\.com"));
+  }
+
+  @Test
+  void countHitsPerFilterEntry(){
+    when(fakeSmtpConfigurationProperties.getFilteredEmailRegexList()).thenReturn("john@doe\\.com,.*@other\\.com");
+
+    assertTrue(sut.ignore(TEST_EMAIL_ADDRESS_1, TEST_EMAIL_ADDRESS_2));
+    assertTrue(sut.ignore(TEST_EMAIL_ADDRESS_2, TEST_EMAIL_ADDRESS_1));
+    assertFalse(sut.ignore(TEST_EMAIL_ADDRESS_2, TEST_EMAIL_ADDRESS_2));
+
+    assertEquals(2.0, meterRegistry.get(EmailFilter.HITS_METRIC).tag(EmailFilter.RULE_TAG, "john@doe\\.com").counter().count());
+    assertEquals(0.0, meterRegistry.get(EmailFilter.HITS_METRIC).tag(EmailFilter.RULE_TAG, ".*@other\\.com").counter().count());
+  }
+
+  @Test
+  void reloadFilterWhenConfigurationChanges(){
+    when(fakeSmtpConfigurationProperties.getFilteredEmailRegexList()).thenReturn(".*@google\\.com");
+    assertFalse(sut.ignore(TEST_EMAIL_ADDRESS_1, TEST_EMAIL_ADDRESS_2));
+
+    when(fakeSmtpConfigurationProperties.getFilteredEmailRegexList()).thenReturn(".*@doe\\.com");
+    assertTrue(sut.ignore(TEST_EMAIL_ADDRESS_1, TEST_EMAIL_ADDRESS_2));
+
+    assertTrue(meterRegistry.find(EmailFilter.HITS_METRIC).tag(EmailFilter.RULE_TAG, ".*@google\\.com").counters().isEmpty());
+    assertEquals(1.0, meterRegistry.get(EmailFilter.HITS_METRIC).tag(EmailFilter.RULE_TAG, ".*@doe\\.com").counter().count());
+  }
 }
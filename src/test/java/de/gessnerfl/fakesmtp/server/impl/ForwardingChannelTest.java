@@ -0,0 +1,303 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.ForwardDeadLetter;
+import de.gessnerfl.fakesmtp.repository.ForwardDeadLetterRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ForwardingChannelTest {
+    private static final String NAME = "relay";
+
+    @Mock
+    private ForwardDeadLetterRepository forwardDeadLetterRepository;
+    @Mock
+    private ExecutorService executor;
+    @Mock
+    private Logger logger;
+
+    private FakeSmtpConfigurationProperties.Forwarding forwarding;
+    private RecordingSink sink;
+    private SimpleMeterRegistry meterRegistry;
+    private MutableClock clock;
+    private ForwardingChannel sut;
+
+    @BeforeEach
+    void init() {
+        forwarding = new FakeSmtpConfigurationProperties.Forwarding();
+        forwarding.setBatchSize(2);
+        forwarding.setMaxAttempts(2);
+        forwarding.setInitialBackoff(Duration.ofSeconds(1));
+        forwarding.setCircuitBreakerThreshold(2);
+        forwarding.setCircuitBreakerOpenDuration(Duration.ofSeconds(30));
+        sink = new RecordingSink();
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+        sut = createChannel(1, 10);
+    }
+
+    private ForwardingChannel createChannel(int concurrency, int queueSize) {
+        return new ForwardingChannel(NAME, sink, concurrency, queueSize, () -> forwarding, forwardDeadLetterRepository, executor, meterRegistry, clock, logger);
+    }
+
+    @Test
+    void shouldQueueEmailsAndForwardThemInBatches() throws Exception {
+        var rawData = List.of(mock(RawData.class), mock(RawData.class), mock(RawData.class));
+
+        rawData.forEach(sut::enqueue);
+        assertEquals(3, sut.getQueueSize());
+        assertTrue(sink.batches.isEmpty());
+
+        sut.forwardDueMessages();
+
+        assertEquals(List.of(List.of(rawData.get(0), rawData.get(1)), List.of(rawData.get(2))), sink.getRawDataOfBatches());
+        for (var data : rawData) {
+            verify(data).close();
+        }
+        assertEquals(0, sut.getQueueSize());
+        assertEquals(3, meterRegistry.get(ForwardingChannel.SENT_METRIC).tag(ForwardingChannel.DESTINATION_TAG, NAME).counter().count());
+    }
+
+    @Test
+    void shouldRetryWithBackoffAndStoreDeadLetterWhenAllAttemptsFailed() throws Exception {
+        var rawData = mock(RawData.class);
+        when(rawData.getFrom()).thenReturn("from");
+        when(rawData.getTo()).thenReturn("to");
+        when(rawData.getContentAsStream()).thenReturn(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)));
+        sink.failure = new IOException("Relay unavailable");
+
+        sut.enqueue(rawData);
+        sut.forwardDueMessages();
+
+        assertEquals(1, sut.getQueueSize());
+        assertEquals(1, meterRegistry.get(ForwardingChannel.RETRIES_METRIC).counter().count());
+        verifyNoInteractions(forwardDeadLetterRepository);
+
+        sut.forwardDueMessages();
+        assertEquals(1, sink.batches.size());
+
+        clock.advance(Duration.ofSeconds(1));
+        sut.forwardDueMessages();
+
+        assertEquals(2, sink.batches.size());
+        assertEquals(0, sut.getQueueSize());
+        var deadLetterCaptor = ArgumentCaptor.forClass(ForwardDeadLetter.class);
+        verify(forwardDeadLetterRepository).save(deadLetterCaptor.capture());
+        var deadLetter = deadLetterCaptor.getValue();
+        assertEquals(NAME, deadLetter.getDestination());
+        assertEquals("from", deadLetter.getFromAddress());
+        assertEquals("to", deadLetter.getRecipients());
+        assertArrayEquals("data".getBytes(StandardCharsets.UTF_8), deadLetter.getRawData());
+        assertEquals(2, deadLetter.getAttempts());
+        assertEquals("Relay unavailable", deadLetter.getLastError());
+        verify(rawData).close();
+        assertEquals(1, meterRegistry.get(ForwardingChannel.DEAD_LETTERS_METRIC).counter().count());
+    }
+
+    @Test
+    void shouldOnlyRetryFailedMessagesOfBatch() throws Exception {
+        var rawData1 = mock(RawData.class);
+        var rawData2 = mock(RawData.class);
+        sink.failingRawData = rawData2;
+        sink.failure = new IOException("Mailbox unavailable");
+
+        sut.enqueue(rawData1);
+        sut.enqueue(rawData2);
+        sut.forwardDueMessages();
+
+        verify(rawData1).close();
+        verify(rawData2, never()).close();
+        assertEquals(1, sut.getQueueSize());
+        assertFalse(sut.isCircuitOpen());
+    }
+
+    @Test
+    void shouldOpenCircuitAfterConsecutiveFailuresAndNotAttemptMessagesWhileOpen() {
+        forwarding.setMaxAttempts(5);
+        sink.failure = new IOException("Relay unavailable");
+
+        sut.enqueue(mock(RawData.class));
+        sut.forwardDueMessages();
+        clock.advance(Duration.ofSeconds(1));
+        sut.forwardDueMessages();
+        assertTrue(sut.isCircuitOpen());
+
+        clock.advance(Duration.ofSeconds(2));
+        sut.forwardDueMessages();
+        assertEquals(2, sink.batches.size());
+        assertEquals(1, meterRegistry.get(ForwardingChannel.CIRCUIT_OPEN_METRIC).tag(ForwardingChannel.DESTINATION_TAG, NAME).gauge().value());
+
+        clock.advance(Duration.ofSeconds(30));
+        sut.forwardDueMessages();
+        assertEquals(3, sink.batches.size());
+    }
+
+    @Test
+    void shouldStoreDeadLetterWhenQueueIsFull() throws Exception {
+        sut = createChannel(1, 1);
+        var rawData1 = mock(RawData.class);
+        var rawData2 = mock(RawData.class);
+        when(rawData2.getContentAsStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        sut.enqueue(rawData1);
+        sut.enqueue(rawData2);
+
+        assertEquals(1, sut.getQueueSize());
+        verify(forwardDeadLetterRepository).save(argThat(deadLetter -> "Forwarding queue is full".equals(deadLetter.getLastError()) && deadLetter.getAttempts() == 0));
+        verify(rawData2).close();
+    }
+
+    @Test
+    void shouldEvictOldestDeadLettersBeyondMaximum() throws Exception {
+        forwarding.setMaxDeadLetters(5);
+        sut = createChannel(1, 0);
+        var rawData = mock(RawData.class);
+        when(rawData.getContentAsStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(forwardDeadLetterRepository.findIdsNewestFirst(argThat(p -> p.getOffset() == 5 && p.getPageSize() == 1))).thenReturn(List.of(42L));
+
+        sut.enqueue(rawData);
+
+        var inOrder = inOrder(forwardDeadLetterRepository);
+        inOrder.verify(forwardDeadLetterRepository).save(any());
+        inOrder.verify(forwardDeadLetterRepository).deleteAllUpTo(42L);
+    }
+
+    @Test
+    void shouldDropEmailInsteadOfStoringDeadLetterWhenDeadLettersAreDisabled() throws Exception {
+        forwarding.setMaxDeadLetters(0);
+        sut = createChannel(1, 0);
+        var rawData = mock(RawData.class);
+
+        sut.enqueue(rawData);
+
+        verifyNoInteractions(forwardDeadLetterRepository);
+        verify(rawData).close();
+        assertEquals(1, meterRegistry.get(ForwardingChannel.DEAD_LETTERS_METRIC).counter().count());
+    }
+
+    @Test
+    void shouldIncreaseBackoffExponentiallyUpToMaximum() {
+        forwarding.setMaxBackoff(Duration.ofSeconds(5));
+
+        assertEquals(1000, sut.getBackoff(1));
+        assertEquals(2000, sut.getBackoff(2));
+        assertEquals(4000, sut.getBackoff(3));
+        assertEquals(5000, sut.getBackoff(4));
+        assertEquals(5000, sut.getBackoff(100));
+    }
+
+    @Test
+    void shouldStartConfiguredNumberOfWorkersAndStoreDeadLettersOfPendingMessagesOnShutdown() throws Exception {
+        sut = createChannel(3, 10);
+        var rawData = mock(RawData.class);
+        when(rawData.getContentAsStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(executor.awaitTermination(anyLong(), any())).thenReturn(true);
+
+        sut.start();
+        sut.enqueue(rawData);
+        sut.shutdown();
+
+        verify(executor, times(3)).execute(any(Runnable.class));
+        verify(executor).shutdownNow();
+        verify(forwardDeadLetterRepository).save(argThat(deadLetter -> "Forwarding aborted by shutdown".equals(deadLetter.getLastError())));
+        assertEquals(0, sut.getQueueSize());
+    }
+
+    @Test
+    void shouldReleaseSinkWhenWorkerIsIdle() throws Exception {
+        forwarding.setConnectionIdleTimeout(Duration.ofMillis(10));
+        var workers = Executors.newSingleThreadExecutor();
+        sut = new ForwardingChannel(NAME, sink, 1, 10, () -> forwarding, forwardDeadLetterRepository, workers, meterRegistry, clock, logger);
+
+        sut.start();
+        try {
+            assertTrue(sink.released.await(5, TimeUnit.SECONDS));
+        } finally {
+            sut.shutdown();
+        }
+    }
+
+    private static class RecordingSink implements ForwardingSink {
+        private final List<List<OutboundMessage>> batches = new ArrayList<>();
+        private final CountDownLatch released = new CountDownLatch(1);
+        private RawData failingRawData;
+        private Exception failure;
+
+        @Override
+        public Map<OutboundMessage, Exception> send(List<OutboundMessage> messages) {
+            batches.add(List.copyOf(messages));
+            var failures = new LinkedHashMap<OutboundMessage, Exception>();
+            for (var message : messages) {
+                if (failure != null && (failingRawData == null || failingRawData == message.getRawData())) {
+                    failures.put(message, failure);
+                }
+            }
+            return failures;
+        }
+
+        @Override
+        public void release() {
+            released.countDown();
+        }
+
+        private List<List<RawData>> getRawDataOfBatches() {
+            var result = new ArrayList<List<RawData>>();
+            for (var batch : batches) {
+                var rawData = new ArrayList<RawData>();
+                batch.forEach(message -> rawData.add(message.getRawData()));
+                result.add(rawData);
+            }
+            return result;
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2022-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
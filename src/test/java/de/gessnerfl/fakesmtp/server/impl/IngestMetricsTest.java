@@ -0,0 +1,63 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.model.ContentType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private IngestMetrics sut;
+
+    @BeforeEach
+    void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new IngestMetrics(meterRegistry);
+    }
+
+    @Test
+    void shouldRecordDeliveryDurationAndRecipientsAndSizeOfMessages() {
+        sut.messageDelivered(3, TimeUnit.MILLISECONDS.toNanos(20));
+        sut.messageAccepted(100);
+
+        var timer = meterRegistry.get(IngestMetrics.DELIVER_DURATION_METRIC).timer();
+        assertEquals(1, timer.count());
+        assertEquals(20.0, timer.totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(3.0, meterRegistry.get(IngestMetrics.MESSAGE_RECIPIENTS_METRIC).summary().totalAmount());
+        assertEquals(100.0, meterRegistry.get(IngestMetrics.MESSAGE_SIZE_METRIC).summary().totalAmount());
+    }
+
+    @Test
+    void shouldRecordConversionDurationByContentTypeAndAttachmentsAndFallbackParses() {
+        sut.messageConverted(ContentType.HTML, 2, TimeUnit.MILLISECONDS.toNanos(5));
+        sut.messageConverted(ContentType.MULTIPART_MIXED, 1, TimeUnit.MILLISECONDS.toNanos(7));
+        sut.fallbackParsed();
+
+        assertEquals(1, meterRegistry.get(IngestMetrics.CONVERT_DURATION_METRIC).tag(IngestMetrics.CONTENT_TYPE_TAG, "HTML").timer().count());
+        assertEquals(1, meterRegistry.get(IngestMetrics.CONVERT_DURATION_METRIC).tag(IngestMetrics.CONTENT_TYPE_TAG, "MULTIPART_MIXED").timer().count());
+        assertEquals(0, meterRegistry.get(IngestMetrics.CONVERT_DURATION_METRIC).tag(IngestMetrics.CONTENT_TYPE_TAG, "PLAIN").timer().count());
+        var attachments = meterRegistry.get(IngestMetrics.MESSAGE_ATTACHMENTS_METRIC).summary();
+        assertEquals(2, attachments.count());
+        assertEquals(3.0, attachments.totalAmount());
+        assertEquals(1.0, meterRegistry.get(IngestMetrics.FALLBACK_PARSES_METRIC).counter().count());
+    }
+
+    @Test
+    void shouldRecordSaveForwardAndFilterDurations() {
+        sut.messageSaved(TimeUnit.MILLISECONDS.toNanos(3));
+        sut.messageForwarded(TimeUnit.MILLISECONDS.toNanos(4));
+        sut.participantsFiltered(true, 100);
+        sut.participantsFiltered(false, 100);
+        sut.participantsFiltered(false, 100);
+
+        assertEquals(1, meterRegistry.get(IngestMetrics.SAVE_DURATION_METRIC).timer().count());
+        assertEquals(1, meterRegistry.get(IngestMetrics.FORWARD_DURATION_METRIC).timer().count());
+        assertEquals(1, meterRegistry.get(IngestMetrics.FILTER_DURATION_METRIC).tag(IngestMetrics.RESULT_TAG, IngestMetrics.IGNORED_RESULT).timer().count());
+        assertEquals(2, meterRegistry.get(IngestMetrics.FILTER_DURATION_METRIC).tag(IngestMetrics.RESULT_TAG, IngestMetrics.ACCEPTED_RESULT).timer().count());
+    }
+}
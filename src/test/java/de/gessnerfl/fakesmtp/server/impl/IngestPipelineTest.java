@@ -0,0 +1,201 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.service.EmailReceivedEvent;
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.springframework.context.ApplicationEventPublisher;
+import org.subethamail.smtp.RejectException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IngestPipelineTest {
+
+    private FakeSmtpConfigurationProperties configurationProperties;
+    private EmailFactory emailFactory;
+    private EmailRepository emailRepository;
+    private MessageForwarder messageForwarder;
+    private ApplicationEventPublisher eventPublisher;
+    private SimpleMeterRegistry meterRegistry;
+    private IngestPipeline sut;
+
+    @BeforeEach
+    void init() {
+        configurationProperties = new FakeSmtpConfigurationProperties();
+        emailFactory = mock(EmailFactory.class);
+        emailRepository = mock(EmailRepository.class);
+        messageForwarder = mock(MessageForwarder.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void cleanup() throws InterruptedException {
+        if (sut != null) {
+            sut.shutdown();
+        }
+    }
+
+    @Test
+    void shouldConvertStoreAndForwardEmailSynchronouslyByDefault() throws Exception {
+        var rawData = createRawData();
+        var email = mock(Email.class);
+        when(emailFactory.convert(rawData)).thenReturn(email);
+        sut = createPipeline();
+
+        sut.submit(rawData);
+
+        assertFalse(sut.isAsynchronous());
+        verify(emailFactory).convert(rawData);
+        verify(eventPublisher).publishEvent(any(EmailReceivedEvent.class));
+        verify(emailRepository).save(email);
+        verify(messageForwarder).forward(rawData);
+        assertEquals(1, meterRegistry.get(IngestMetrics.SAVE_DURATION_METRIC).timer().count());
+        assertEquals(1, meterRegistry.get(IngestMetrics.FORWARD_DURATION_METRIC).timer().count());
+    }
+
+    @Test
+    void shouldBeBusyWhileEmailIsProcessedSynchronously() throws Exception {
+        var rawData = createRawData();
+        var busy = new boolean[1];
+        sut = createPipeline();
+        when(emailFactory.convert(rawData)).thenAnswer(invocation -> {
+            busy[0] = sut.isBusy();
+            return mock(Email.class);
+        });
+
+        sut.submit(rawData);
+
+        assertTrue(busy[0]);
+        assertFalse(sut.isBusy());
+    }
+
+    @Test
+    void shouldOnlyConvertHeadersWhenLazyParsingIsEnabled() throws Exception {
+        configurationProperties.getIngest().setLazyParsing(true);
+        var rawData = createRawData();
+        var email = mock(Email.class);
+        when(emailFactory.convertHeaders(rawData)).thenReturn(email);
+        sut = createPipeline();
+
+        sut.submit(rawData);
+
+        verify(emailFactory, never()).convert(any());
+        verify(emailRepository).save(email);
+        verify(messageForwarder).forward(rawData);
+    }
+
+    @Test
+    void shouldPropagateExceptionWhenEmailCannotBeConvertedSynchronously() throws Exception {
+        var rawData = createRawData();
+        when(emailFactory.convert(rawData)).thenThrow(new IOException("foo"));
+        sut = createPipeline();
+
+        assertThrows(IOException.class, () -> sut.submit(rawData));
+
+        verify(emailRepository, never()).save(any(Email.class));
+        verify(messageForwarder, never()).forward(any(RawData.class));
+    }
+
+    @Test
+    void shouldConvertStoreAndForwardEmailOnWorkerStagesWhenAsynchronousIngestIsEnabled() throws Exception {
+        configurationProperties.getIngest().setAsynchronous(true);
+        var rawData = createRawData();
+        var email = mock(Email.class);
+        var forwarded = new CountDownLatch(1);
+        when(emailFactory.convert(rawData)).thenReturn(email);
+        doAnswer(invocation -> {
+            forwarded.countDown();
+            return null;
+        }).when(messageForwarder).forward(rawData);
+        sut = createPipeline();
+
+        sut.submit(rawData);
+
+        assertTrue(sut.isAsynchronous());
+        assertTrue(forwarded.await(5, TimeUnit.SECONDS));
+        verify(emailRepository).save(email);
+    }
+
+    @Test
+    void shouldNotStoreOrForwardEmailWhenAsynchronousConversionFails() throws Exception {
+        configurationProperties.getIngest().setAsynchronous(true);
+        var rawData = createRawData();
+        when(emailFactory.convert(rawData)).thenThrow(new IOException("foo"));
+        sut = createPipeline();
+
+        sut.submit(rawData);
+        sut.shutdown();
+
+        verify(emailFactory).convert(rawData);
+        verifyNoInteractions(emailRepository, messageForwarder);
+    }
+
+    @Test
+    void shouldRejectEmailWithTransientErrorWhenParseStageIsSaturatedAndPolicyIsReject() throws Exception {
+        var parse = configurationProperties.getIngest().getParse();
+        parse.setConcurrency(1);
+        parse.setQueueSize(1);
+        parse.setBackpressurePolicy(FakeSmtpConfigurationProperties.BackpressurePolicy.REJECT);
+        configurationProperties.getIngest().setAsynchronous(true);
+        var release = new CountDownLatch(1);
+        when(emailFactory.convert(any(RawData.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return mock(Email.class);
+        });
+        sut = createPipeline();
+
+        try {
+            sut.submit(createRawData());
+            sut.submit(createRawData());
+            var exception = assertThrows(RejectException.class, () -> sut.submit(createRawData()));
+            assertEquals(451, exception.getCode());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldBeBusyWhileEmailsAreQueuedInAsynchronousStages() throws Exception {
+        configurationProperties.getIngest().getParse().setConcurrency(1);
+        configurationProperties.getIngest().setAsynchronous(true);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(emailFactory.convert(any(RawData.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new IOException("foo");
+        });
+        sut = createPipeline();
+
+        try {
+            assertFalse(sut.isBusy());
+            sut.submit(createRawData());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            sut.submit(createRawData());
+            assertTrue(sut.isBusy());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private IngestPipeline createPipeline() {
+        return new IngestPipeline(configurationProperties, emailFactory, emailRepository, messageForwarder, eventPublisher, new IngestMetrics(meterRegistry), new ThreadFactoryProvider(configurationProperties, mock(Logger.class)), meterRegistry, mock(Logger.class));
+    }
+
+    private RawData createRawData() {
+        return new RawData("from", "to", "content".getBytes(StandardCharsets.UTF_8));
+    }
+}
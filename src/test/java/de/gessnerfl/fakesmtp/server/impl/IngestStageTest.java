@@ -0,0 +1,115 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestStageTest {
+    private static final String STAGE_NAME = "test";
+
+    private SimpleMeterRegistry meterRegistry;
+    private CountDownLatch release;
+    private IngestStage sut;
+
+    @BeforeEach
+    void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void cleanup() throws InterruptedException {
+        release.countDown();
+        if (sut != null) {
+            sut.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void shouldExposeQueueDepthAsGauge() {
+        sut = new IngestStage(STAGE_NAME, createConfiguration(FakeSmtpConfigurationProperties.BackpressurePolicy.BLOCK, 5), new CustomizableThreadFactory("ingest-test-"), meterRegistry);
+
+        sut.submit(task(this::awaitRelease));
+        sut.submit(task(this::awaitRelease));
+        sut.submit(task(this::awaitRelease));
+
+        assertEquals(2, sut.getQueueSize());
+        assertEquals(2.0, meterRegistry.get(IngestStage.QUEUE_SIZE_METRIC).tag(IngestStage.STAGE_TAG, STAGE_NAME).gauge().value());
+        assertEquals(3.0, meterRegistry.get(IngestStage.QUEUE_REMAINING_CAPACITY_METRIC).tag(IngestStage.STAGE_TAG, STAGE_NAME).gauge().value());
+    }
+
+    @Test
+    void shouldRejectTaskWhenQueueIsFullAndPolicyIsReject() {
+        sut = new IngestStage(STAGE_NAME, createConfiguration(FakeSmtpConfigurationProperties.BackpressurePolicy.REJECT, 1), new CustomizableThreadFactory("ingest-test-"), meterRegistry);
+
+        sut.submit(task(this::awaitRelease));
+        sut.submit(task(this::awaitRelease));
+
+        assertThrows(RejectedExecutionException.class, () -> sut.submit(task(this::awaitRelease)));
+        assertEquals(1.0, meterRegistry.get(IngestStage.REJECTED_METRIC).tag(IngestStage.STAGE_TAG, STAGE_NAME).counter().count());
+    }
+
+    @Test
+    void shouldDropOldestQueuedTaskWhenQueueIsFullAndPolicyIsDropOldest() throws InterruptedException {
+        var executed = new AtomicInteger();
+        sut = new IngestStage(STAGE_NAME, createConfiguration(FakeSmtpConfigurationProperties.BackpressurePolicy.DROP_OLDEST, 1), new CustomizableThreadFactory("ingest-test-"), meterRegistry);
+
+        sut.submit(task(this::awaitRelease));
+        sut.submit(task(() -> executed.addAndGet(1)));
+        sut.submit(task(() -> executed.addAndGet(10)));
+        release.countDown();
+        sut.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(10, executed.get());
+        assertEquals(1.0, meterRegistry.get(IngestStage.DROPPED_METRIC).tag(IngestStage.STAGE_TAG, STAGE_NAME).counter().count());
+    }
+
+    @Test
+    void shouldBlockSubmitterUntilCapacityIsAvailableWhenPolicyIsBlock() throws InterruptedException {
+        var executed = new AtomicInteger();
+        sut = new IngestStage(STAGE_NAME, createConfiguration(FakeSmtpConfigurationProperties.BackpressurePolicy.BLOCK, 1), new CustomizableThreadFactory("ingest-test-"), meterRegistry);
+
+        sut.submit(task(this::awaitRelease));
+        sut.submit(task(executed::incrementAndGet));
+        var submitter = new Thread(() -> sut.submit(task(executed::incrementAndGet)));
+        submitter.start();
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+
+        release.countDown();
+        submitter.join(5000);
+        sut.shutdown(5, TimeUnit.SECONDS);
+
+        assertFalse(submitter.isAlive());
+        assertEquals(2, executed.get());
+    }
+
+    private FakeSmtpConfigurationProperties.Stage createConfiguration(FakeSmtpConfigurationProperties.BackpressurePolicy policy, int queueSize) {
+        var configuration = new FakeSmtpConfigurationProperties.Stage(1);
+        configuration.setQueueSize(queueSize);
+        configuration.setBackpressurePolicy(policy);
+        return configuration;
+    }
+
+    private IngestTask task(Runnable action) {
+        return new IngestTask(new RawData("from", "to", new byte[0]), action);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
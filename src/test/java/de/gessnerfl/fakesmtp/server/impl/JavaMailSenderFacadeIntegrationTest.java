@@ -0,0 +1,120 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.subethamail.smtp.server.SMTPServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ActiveProfiles("integrationtest")
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+class JavaMailSenderFacadeIntegrationTest {
+
+    @Autowired
+    private MessageListener messageListener;
+    @Autowired
+    private EmailRepository emailRepository;
+
+    private SMTPServer smtpServer;
+    private AtomicInteger connections;
+
+    @BeforeEach
+    void init() throws IOException {
+        emailRepository.deleteAll();
+        //the smtp server of the application is mocked in integration tests
+        smtpServer = new SMTPServer(messageListener);
+        smtpServer.setBindAddress(InetAddress.getLoopbackAddress());
+        smtpServer.setPort(findFreePort());
+        smtpServer.setDisableReceivedHeaders(true);
+        connections = new AtomicInteger();
+        smtpServer.setSessionIdFactory(() -> String.valueOf(connections.incrementAndGet()));
+        smtpServer.start();
+    }
+
+    @AfterEach
+    void cleanup() {
+        smtpServer.stop();
+    }
+
+    @Test
+    void shouldRelayRawMessageUnmodifiedUsingTheOriginalEnvelope() {
+        var content = "From: header-sender@example.com\r\n" +
+                "To: header-receiver@example.com\r\n" +
+                "Subject: Relay\r\n" +
+                "X-Custom:   kept   as is\r\n" +
+                "\r\n" +
+                ".leading dot\r\n" +
+                "body\r\n";
+        var rawData = new RawData("envelope-sender@example.com", List.of("envelope-receiver@example.com"), content.getBytes(StandardCharsets.UTF_8));
+        var sut = createFacade();
+
+        sut.relay(List.of(new RawMessage(sut.getSession(), rawData)));
+        sut.releaseConnection();
+
+        var emails = emailRepository.findAll();
+        assertThat(emails, hasSize(1));
+        var email = emails.get(0);
+        assertEquals("envelope-sender@example.com", email.getFromAddress());
+        assertEquals("envelope-receiver@example.com", email.getToAddress());
+        assertEquals(content, email.getRawData());
+    }
+
+    @Test
+    void shouldKeepConnectionOpenAcrossRelaysUntilItIsReleased() {
+        var sut = createFacade();
+
+        sut.relay(List.of(createRawMessage(sut, "1")));
+        sut.relay(List.of(createRawMessage(sut, "2")));
+
+        assertEquals(1, connections.get());
+
+        sut.releaseConnection();
+        sut.relay(List.of(createRawMessage(sut, "3")));
+        sut.releaseConnection();
+
+        assertEquals(2, connections.get());
+        assertThat(emailRepository.findAll(), hasSize(3));
+    }
+
+    private JavaMailSenderFacade createFacade() {
+        var javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+        javaMailSender.setPort(smtpServer.getPort());
+        var sut = new JavaMailSenderFacade();
+        sut.setJavaMailSender(javaMailSender);
+        sut.setLogger(mock(Logger.class));
+        return sut;
+    }
+
+    private static RawMessage createRawMessage(JavaMailSenderFacade sut, String subject) {
+        var content = "Subject: " + subject + "\r\n\r\nbody\r\n";
+        var rawData = new RawData("sender@example.com", List.of("receiver@example.com"), content.getBytes(StandardCharsets.UTF_8));
+        return new RawMessage(sut.getSession(), rawData);
+    }
+
+    private static int findFreePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
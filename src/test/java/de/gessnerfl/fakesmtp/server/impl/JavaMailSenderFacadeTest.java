@@ -2,75 +2,99 @@ package de.gessnerfl.fakesmtp.server.impl;
 
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 
+import javax.mail.Message;
+import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
+import java.util.List;
+import java.util.Properties;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class JavaMailSenderFacadeTest {
 
     @Test
-    void shouldSendMimeMessageWhenMailSystemIsAvailable() {
+    void shouldSendMimeMessagesWhenMailSystemIsAvailable() {
         var javaMailSender = mock(JavaMailSender.class);
         var logger = mock(Logger.class);
-        var mimeMessage = mock(MimeMessage.class);
+        var mimeMessage1 = mock(MimeMessage.class);
+        var mimeMessage2 = mock(MimeMessage.class);
 
         var sut = new JavaMailSenderFacade();
         sut.setJavaMailSender(javaMailSender);
         sut.setLogger(logger);
 
-        sut.send(mimeMessage);
+        assertTrue(sut.isConfigured());
+        sut.send(List.of(mimeMessage1, mimeMessage2));
 
-        verify(javaMailSender).send(mimeMessage);
+        verify(javaMailSender).send(mimeMessage1, mimeMessage2);
         verifyNoMoreInteractions(javaMailSender);
         verifyNoInteractions(logger);
     }
 
     @Test
-    void shouldLogErrorAndSkipSendingOfMimeMessageWhenMailSystemIsNotAvailable() {
+    void shouldLogErrorAndSkipSendingOfMimeMessagesWhenMailSystemIsNotAvailable() {
         var logger = mock(Logger.class);
         var mimeMessage = mock(MimeMessage.class);
 
         var sut = new JavaMailSenderFacade();
         sut.setLogger(logger);
 
-        sut.send(mimeMessage);
+        assertFalse(sut.isConfigured());
+        sut.send(List.of(mimeMessage));
 
         verify(logger).error(JavaMailSenderFacade.ERROR_MESSAGE);
         verifyNoMoreInteractions(logger);
     }
 
     @Test
-    void shouldSendSimpleMessageWhenMailSystemIsAvailable() {
+    void shouldConvertSimpleMessageToMimeMessageOfMailSystem() throws Exception {
         var javaMailSender = mock(JavaMailSender.class);
-        var logger = mock(Logger.class);
-        var message = mock(SimpleMailMessage.class);
+        var mimeMessage = new MimeMessage(Session.getInstance(new Properties()));
+        when(javaMailSender.createMimeMessage()).thenReturn(mimeMessage);
+        var message = new SimpleMailMessage();
+        message.setFrom("sender@example.com");
+        message.setTo("receiver@example.com");
+        message.setText("text");
 
         var sut = new JavaMailSenderFacade();
         sut.setJavaMailSender(javaMailSender);
-        sut.setLogger(logger);
 
-        sut.send(message);
+        var result = sut.toMimeMessage(message);
 
-        verify(javaMailSender).send(message);
-        verifyNoMoreInteractions(javaMailSender);
-        verifyNoInteractions(logger);
+        assertSame(mimeMessage, result);
+        assertEquals("sender@example.com", result.getFrom()[0].toString());
+        assertEquals("receiver@example.com", result.getRecipients(Message.RecipientType.TO)[0].toString());
+        assertEquals("text", result.getContent());
     }
 
     @Test
-    void shouldLogErrorAndSkipSendingOfSimpleMessageWhenMailSystemIsNotAvailable() {
-        var logger = mock(Logger.class);
-        var message = mock(SimpleMailMessage.class);
+    void shouldRejectRawRelayWhenMailSystemIsNotConfiguredByHost() {
+        var sut = new JavaMailSenderFacade();
+        sut.setJavaMailSender(mock(JavaMailSender.class));
 
+        assertThrows(MailPreparationException.class, () -> sut.relay(List.of(mock(MimeMessage.class))));
+    }
+
+    @Test
+    void shouldReportAllMessagesAsFailedWhenRelayCannotConnect() {
+        var javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(1);
+        var mimeMessage = mock(MimeMessage.class);
         var sut = new JavaMailSenderFacade();
-        sut.setLogger(logger);
+        sut.setJavaMailSender(javaMailSender);
 
-        sut.send(message);
+        var exception = assertThrows(MailSendException.class, () -> sut.relay(List.of(mimeMessage)));
 
-        verify(logger).error(JavaMailSenderFacade.ERROR_MESSAGE);
-        verifyNoMoreInteractions(logger);
+        assertEquals(1, exception.getFailedMessages().size());
+        assertTrue(exception.getFailedMessages().containsKey(mimeMessage));
     }
 
-}
\ No newline at end of file
+}
@@ -1,88 +1,206 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
 import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
-import org.junit.jupiter.api.Assertions;
+import de.gessnerfl.fakesmtp.repository.ForwardDeadLetterRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
-import org.springframework.mail.SimpleMailMessage;
 
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class MessageForwarderTest {
 
-    @Mock
-    private FakeSmtpConfigurationProperties configurationProperties;
     @Mock
     private JavaMailSenderFacade javaMailSenderFacade;
     @Mock
+    private ForwardDeadLetterRepository forwardDeadLetterRepository;
+    @Mock
+    private ExecutorService executor;
+    @Mock
     private Logger logger;
 
-    @InjectMocks
-    private MessageForwarder sut;
+    private FakeSmtpConfigurationProperties configurationProperties;
+    private List<String> createdExecutors;
+
+    @BeforeEach
+    void init() {
+        configurationProperties = new FakeSmtpConfigurationProperties();
+        configurationProperties.setForwardEmails(true);
+        createdExecutors = new ArrayList<>();
+    }
+
+    private MessageForwarder createForwarder() {
+        return new MessageForwarder(configurationProperties, javaMailSenderFacade, forwardDeadLetterRepository, (name, concurrency) -> {
+            createdExecutors.add(name + ":" + concurrency);
+            return executor;
+        }, new SimpleMeterRegistry(), Clock.systemUTC(), logger);
+    }
 
     @Test
     void shouldSkipForwardingWhenForwardingIsNotEnabled() throws Exception {
+        configurationProperties.setForwardEmails(false);
+        var sut = createForwarder();
         var rawData = mock(RawData.class);
-        when(configurationProperties.isForwardEmails()).thenReturn(false);
 
         sut.forward(rawData);
 
-        verify(rawData, never()).toMimeMessage();
+        verify(rawData, never()).copy(anyList());
         verifyNoInteractions(javaMailSenderFacade);
     }
 
     @Test
-    void shouldForwardMimeMessageWhenForwardingIsEnabledAndEmailCanBeConvertedToMimeMessage() throws Exception {
-        var mimeMessage = mock(MimeMessage.class);
+    void shouldSkipForwardingWhenNoRouteIsConfiguredAndMailSystemIsNotConfigured() throws Exception {
+        var sut = createForwarder();
         var rawData = mock(RawData.class);
-        when(rawData.toMimeMessage()).thenReturn(mimeMessage);
-        when(configurationProperties.isForwardEmails()).thenReturn(true);
+        when(rawData.getRecipients()).thenReturn(List.of("to@example.com"));
 
         sut.forward(rawData);
 
-        verify(rawData).toMimeMessage();
-        verify(javaMailSenderFacade).send(mimeMessage);
-        verifyNoMoreInteractions(rawData, javaMailSenderFacade);
+        verify(rawData, never()).copy(anyList());
+        verify(logger).error(JavaMailSenderFacade.ERROR_MESSAGE);
     }
 
     @Test
-    void shouldForwardEmailAsSimpleMessageWhenForwardingIsEnabledAndEmailCannotBeConvertedToMimeMessage() throws Exception {
-        var expectedException = new MessagingException("test");
-        var from = "from";
-        var to = "to";
-        var content = "content";
-        var rawData = mock(RawData.class);
-        when(rawData.getFrom()).thenReturn(from);
-        when(rawData.getTo()).thenReturn(to);
-        when(rawData.getContentAsString()).thenReturn(content);
-        when(rawData.toMimeMessage()).thenThrow(expectedException);
-        when(configurationProperties.isForwardEmails()).thenReturn(true);
+    void shouldQueueCopyOfEmailForDefaultDestinationWhenNoRouteIsConfigured() throws Exception {
+        when(javaMailSenderFacade.isConfigured()).thenReturn(true);
+        var sut = createForwarder();
+        var copy = mock(RawData.class);
+        var original = mock(RawData.class);
+        when(original.getRecipients()).thenReturn(List.of("to@example.com"));
+        when(original.copy(List.of("to@example.com"))).thenReturn(copy);
+
+        sut.forward(original);
+
+        assertEquals(1, sut.getChannel(MessageForwarder.DEFAULT_DESTINATION).getQueueSize());
+    }
+
+    @Test
+    void shouldRouteRecipientsByDomainAndFallBackToDefaultDestination() throws Exception {
+        when(javaMailSenderFacade.isConfigured()).thenReturn(true);
+        var route = route("customers", FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        route.setRecipients(List.of(".*@customer\\.com"));
+        configurationProperties.getForwarding().getRoutes().add(route);
+        var sut = createForwarder();
+        var mixed = spy(rawData("sender@example.com", List.of("someone@example.com", "buyer@customer.com", "seller@customer.com"), ""));
+
+        sut.forward(mixed);
+        sut.forward(rawData("sender@example.com", List.of("someone@example.com"), ""));
+
+        assertEquals(1, sut.getChannel("customers").getQueueSize());
+        assertEquals(2, sut.getChannel(MessageForwarder.DEFAULT_DESTINATION).getQueueSize());
+        verify(mixed).copy(List.of("buyer@customer.com", "seller@customer.com"));
+        verify(mixed).copy(List.of("someone@example.com"));
+    }
+
+    @Test
+    void shouldRouteEmailsBySenderAndHeaderWhereAllCriteriaOfRouteHaveToMatch() {
+        var route = route("tenant", FakeSmtpConfigurationProperties.DestinationType.WEBHOOK);
+        route.setSenders(List.of("noreply@example\\.com"));
+        route.setHeader("X-Tenant");
+        route.setHeaderPattern("acme|globex");
+        configurationProperties.getForwarding().getRoutes().add(route);
+        var sut = createForwarder();
+
+        sut.forward(rawData("noreply@example.com", List.of("to@example.com"), "X-Tenant: acme\r\nSubject: test\r\n\r\nbody"));
+        sut.forward(rawData("noreply@example.com", List.of("to@example.com"), "X-Tenant: initech\r\n\r\nbody"));
+        sut.forward(rawData("noreply@example.com", List.of("to@example.com"), "Subject: test\r\n\r\nbody"));
+        sut.forward(rawData("other@example.com", List.of("to@example.com"), "X-Tenant: globex\r\n\r\nbody"));
+
+        assertEquals(1, sut.getChannel("tenant").getQueueSize());
+        assertEquals(0, sut.getChannel(MessageForwarder.DEFAULT_DESTINATION).getQueueSize());
+        verify(logger, never()).error(anyString());
+    }
+
+    @Test
+    void shouldForwardEachRecipientToFirstMatchingRouteOnly() throws Exception {
+        var first = route("first", FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        first.setRecipients(List.of(".*@example\\.com"));
+        var second = route("second", FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        configurationProperties.getForwarding().getRoutes().addAll(List.of(first, second));
+        var sut = createForwarder();
+
+        var rawData = spy(rawData("sender@test.com", List.of("to@example.com", "to@test.com"), ""));
 
         sut.forward(rawData);
+        sut.forward(rawData("sender@test.com", List.of("to@test.com"), ""));
 
-        verify(rawData).toMimeMessage();
-        verify(javaMailSenderFacade, never()).send(any(MimeMessage.class));
-        verify(logger).warn(anyString(), eq(expectedException));
-        verify(rawData).getFrom();
-        verify(rawData).getTo();
-        verify(rawData).getContentAsString();
-        var mailMessageArgumentCaptor = ArgumentCaptor.forClass(SimpleMailMessage.class);
-        verify(javaMailSenderFacade).send(mailMessageArgumentCaptor.capture());
-        verifyNoMoreInteractions(rawData, javaMailSenderFacade);
-
-        var message = mailMessageArgumentCaptor.getValue();
-        Assertions.assertEquals(from, message.getFrom());
-        Assertions.assertEquals(to, message.getTo()[0]);
-        Assertions.assertEquals(content, message.getText());
+        assertEquals(1, sut.getChannel("first").getQueueSize());
+        assertEquals(2, sut.getChannel("second").getQueueSize());
+        verify(rawData).copy(List.of("to@example.com"));
+        verify(rawData).copy(List.of("to@test.com"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldIgnoreInvalidRoutes() {
+        var invalidRegex = route("invalidRegex", FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        invalidRegex.setRecipients(List.of("[a-z"));
+        var invalidHeaderPattern = route("invalidHeaderPattern", FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        invalidHeaderPattern.setHeader("X-Tenant");
+        invalidHeaderPattern.setHeaderPattern("(acme");
+        var missingDirectory = route("missingDirectory", FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        missingDirectory.setDirectory(null);
+        var missingUrl = route("missingUrl", FakeSmtpConfigurationProperties.DestinationType.WEBHOOK);
+        missingUrl.setUrl(null);
+        var missingMailSystem = route("missingMailSystem", FakeSmtpConfigurationProperties.DestinationType.SMTP);
+        var duplicate = route(MessageForwarder.DEFAULT_DESTINATION, FakeSmtpConfigurationProperties.DestinationType.DIRECTORY);
+        configurationProperties.getForwarding().getRoutes().addAll(List.of(invalidRegex, invalidHeaderPattern, missingDirectory, missingUrl, missingMailSystem, duplicate));
+        var sut = createForwarder();
+
+        sut.forward(rawData("sender@example.com", List.of("to@example.com"), ""));
+
+        assertEquals(List.of(MessageForwarder.DEFAULT_DESTINATION + ":1"), createdExecutors);
+        assertNull(sut.getChannel("invalidRegex"));
+        verify(logger).error("Ignore invalid regex '{}' of forwarding route '{}'", "[a-z", "invalidRegex");
+        verify(logger).error("Ignore forwarding route '{}' without any valid sender or recipient regex", "invalidRegex");
+        verify(logger).error("Ignore forwarding route '{}' with invalid header pattern '{}'", "invalidHeaderPattern", "(acme");
+        verify(logger).error("Ignore forwarding route '{}' without directory", "missingDirectory");
+        verify(logger).error("Ignore forwarding route '{}' without url", "missingUrl");
+        verify(logger).error("Ignore forwarding route '{}' without host; {}", "missingMailSystem", JavaMailSenderFacade.ERROR_MESSAGE);
+        verify(logger).error("Ignore forwarding route with missing or duplicate name '{}'", MessageForwarder.DEFAULT_DESTINATION);
+        verify(logger).error(JavaMailSenderFacade.ERROR_MESSAGE);
+    }
+
+    @Test
+    void shouldCreateBoundedWorkerPoolPerDestinationAndStartAndStopAllOfThem() throws Exception {
+        var route = route("slow", FakeSmtpConfigurationProperties.DestinationType.SMTP);
+        route.setHost("relay.example.com");
+        route.setConcurrency(4);
+        configurationProperties.getForwarding().getRoutes().add(route);
+        when(executor.awaitTermination(anyLong(), any())).thenReturn(true);
+        var sut = createForwarder();
+
+        sut.start();
+        sut.shutdown();
+
+        assertEquals(List.of(MessageForwarder.DEFAULT_DESTINATION + ":1", "slow:4"), createdExecutors);
+        verify(executor, times(5)).execute(any(Runnable.class));
+        verify(executor, times(2)).shutdownNow();
+    }
+
+    private static FakeSmtpConfigurationProperties.Route route(String name, FakeSmtpConfigurationProperties.DestinationType type) {
+        var route = new FakeSmtpConfigurationProperties.Route();
+        route.setName(name);
+        route.setType(type);
+        route.setDirectory(new File("outbox"));
+        route.setUrl(URI.create("http://localhost/hook"));
+        return route;
+    }
+
+    private static RawData rawData(String from, List<String> recipients, String content) {
+        return new RawData(from, recipients, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -7,12 +7,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.transaction.Transactional;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.hasSize;
@@ -43,7 +45,7 @@ class MessageListenerIntegrationTest {
         var data = TestResourceUtil.getTestFile(testFilename);
         var rawData = TestResourceUtil.getTestFileContent(testFilename);
 
-        sut.deliver(SENDER, RECEIVER, data);
+        sut.deliver(SENDER, List.of(RECEIVER), data);
 
         var mails = emailRepository.findAll();
         assertThat(mails, hasSize(1));
@@ -67,7 +69,7 @@ class MessageListenerIntegrationTest {
         var data = TestResourceUtil.getTestFile(testFilename);
         var rawData = TestResourceUtil.getTestFileContent(testFilename);
 
-        sut.deliver(SENDER, RECEIVER, data);
+        sut.deliver(SENDER, List.of(RECEIVER), data);
 
         var mails = emailRepository.findAll();
         assertThat(mails, hasSize(1));
@@ -90,7 +92,7 @@ class MessageListenerIntegrationTest {
         var rawData = "this is just some dummy content";
         var data = new ByteArrayInputStream(rawData.getBytes(StandardCharsets.UTF_8));
 
-        sut.deliver(SENDER, RECEIVER, data);
+        sut.deliver(SENDER, List.of(RECEIVER), data);
 
         var mails = emailRepository.findAll();
         assertThat(mails, hasSize(1));
@@ -107,4 +109,21 @@ class MessageListenerIntegrationTest {
         assertEquals(rawData, mail.getPlainContent().get().getData());
         assertNotNull(mail.getReceivedOn());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldCreateSingleEmailForAllRecipientsOfAMessage() throws Exception {
+        var testFilename = "mail-with-subject.eml";
+        var data = TestResourceUtil.getTestFile(testFilename);
+        var otherReceiver = "other-receiver";
+
+        sut.deliver(SENDER, List.of(RECEIVER, otherReceiver), data);
+
+        var mails = emailRepository.findAll();
+        assertThat(mails, hasSize(1));
+
+        var mail = mails.get(0);
+        assertEquals(RECEIVER + ", " + otherReceiver, mail.getToAddress());
+        assertEquals(List.of(RECEIVER, otherReceiver), mail.getRecipients());
+        assertEquals(List.of(mail), emailRepository.findAllByRecipient(otherReceiver, PageRequest.of(0, 10)).getContent());
+    }
+}
@@ -1,18 +1,20 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
-import de.gessnerfl.fakesmtp.model.Email;
-import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
+import org.subethamail.smtp.MessageContext;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -20,14 +22,16 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class MessageListenerTest {
 
-    @Mock
-    private EmailFactory emailFactory;
+    @Spy
+    private FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties = new FakeSmtpConfigurationProperties();
     @Mock
     private EmailFilter emailFilter;
     @Mock
-    private EmailRepository emailRepository;
+    private IngestPipeline ingestPipeline;
+    @Mock
+    private SmtpServerMetrics smtpServerMetrics;
     @Mock
-    private MessageForwarder messageForwarder;
+    private IngestMetrics ingestMetrics;
     @Mock
     private Logger logger;
 
@@ -35,48 +39,82 @@ class MessageListenerTest {
     private MessageListener sut;
 
     @Test
-    void shouldAcceptAllMails(){
-        assertTrue(sut.accept("foo", "bar"));
-    }
-
-    @Test
-    void shouldCreateEmailEntityAndStoreItInDatabaseWhenEmailIsDelivered() throws IOException {
+    void shouldSubmitRawDataToIngestPipelineWhenEmailIsDelivered() throws IOException {
         var from = "from";
         var to = "to";
         var contentString = "content";
         var content = contentString.getBytes(StandardCharsets.UTF_8);
         var contentStream = new ByteArrayInputStream(content);
-        var mail = mock(Email.class);
-
-        when(emailFactory.convert(any(RawData.class))).thenReturn(mail);
 
-        sut.deliver(from, to, contentStream);
+        sut.deliver(from, List.of(to), contentStream);
 
         ArgumentCaptor<RawData> argumentCaptor = ArgumentCaptor.forClass(RawData.class);
-        verify(emailFactory).convert(argumentCaptor.capture());
+        verify(ingestPipeline).submit(argumentCaptor.capture());
         RawData rawData = argumentCaptor.getValue();
         assertEquals(from, rawData.getFrom());
         assertEquals(to, rawData.getTo());
         assertEquals(contentString, rawData.getContentAsString());
-        verify(emailRepository).save(mail);
-        verify(messageForwarder).forward(rawData);
+        verify(smtpServerMetrics).bytesReceived(content.length);
+        verify(ingestMetrics).messageAccepted(content.length);
+        verify(ingestMetrics).messageDelivered(eq(1), anyLong());
+    }
+
+    @Test
+    void shouldSubmitRawDataOnlyOnceForAllRecipientsOfAMessage() throws IOException {
+        var from = "from";
+        var contentStream = new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8));
+        var handler = sut.create(mock(MessageContext.class));
+
+        handler.from(from);
+        handler.recipient("to1");
+        handler.recipient("to2");
+        handler.data(contentStream);
+        handler.done();
+
+        ArgumentCaptor<RawData> argumentCaptor = ArgumentCaptor.forClass(RawData.class);
+        verify(ingestPipeline, times(1)).submit(argumentCaptor.capture());
+        RawData rawData = argumentCaptor.getValue();
+        assertEquals(from, rawData.getFrom());
+        assertEquals(List.of("to1", "to2"), rawData.getRecipients());
+        assertEquals("to1, to2", rawData.getTo());
+    }
+
+    @Test
+    void shouldOnlySubmitRecipientsWhichAreNotFiltered() throws IOException {
+        var from = "from";
+        var contentStream = new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8));
+        when(emailFilter.ignore(from, "to1")).thenReturn(true);
+
+        sut.deliver(from, List.of("to1", "to2"), contentStream);
+
+        ArgumentCaptor<RawData> argumentCaptor = ArgumentCaptor.forClass(RawData.class);
+        verify(ingestPipeline).submit(argumentCaptor.capture());
+        assertEquals(List.of("to2"), argumentCaptor.getValue().getRecipients());
     }
 
     @Test
-    void shouldThrowExceptionWhenEmailEntityCannotBeCreatedWhenEmailIsDelivered() throws IOException {
+    void shouldNotSubmitRawDataToIngestPipelineWhenEmailIsFilteredForAllRecipients() throws IOException {
         var from = "from";
         var to = "to";
-        var content = "content".getBytes(StandardCharsets.UTF_8);
-        var contentStream = new ByteArrayInputStream(content);
+        var contentStream = new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8));
+        when(emailFilter.ignore(from, to)).thenReturn(true);
 
-        when(emailFactory.convert(any(RawData.class))).thenThrow(new IOException("foo"));
+        sut.deliver(from, List.of(to), contentStream);
+
+        verifyNoInteractions(ingestPipeline);
+        verify(ingestMetrics, never()).messageAccepted(anyLong());
+        verify(ingestMetrics).messageDelivered(eq(1), anyLong());
+    }
 
-        assertThrows(IOException.class, () -> {
+    @Test
+    void shouldThrowExceptionWhenIngestPipelineFailsToProcessEmail() throws IOException {
+        var from = "from";
+        var to = "to";
+        var contentStream = new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8));
 
-            sut.deliver(from, to, contentStream);
+        doThrow(new IOException("foo")).when(ingestPipeline).submit(any(RawData.class));
 
-            verify(emailRepository, never()).save(any(Email.class));
-            verify(messageForwarder, never()).forward(any(RawData.class));
-        });
+        assertThrows(IOException.class, () -> sut.deliver(from, List.of(to), contentStream));
+        verify(ingestMetrics).messageDelivered(eq(1), anyLong());
     }
-}
\ No newline at end of file
+}
@@ -3,8 +3,14 @@ package de.gessnerfl.fakesmtp.server.impl;
 import de.gessnerfl.fakesmtp.TestResourceUtil;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 class RawDataTest {
 
@@ -16,4 +22,63 @@ class RawDataTest {
         Assertions.assertEquals("This is the mail title", message.getSubject());
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldKeepContentInMemoryWhenSizeIsBelowThreshold(@TempDir Path directory) throws Exception {
+        var content = TestResourceUtil.getTestFileContentBytes("mail-with-subject.eml");
+
+        try (var sut = RawData.spool("from", List.of("to"), new ByteArrayInputStream(content), content.length + 1, directory.toFile())) {
+            Assertions.assertFalse(sut.isSpooledToFile());
+            Assertions.assertEquals(content.length, sut.getSize());
+            Assertions.assertEquals(TestResourceUtil.getTestFileContent("mail-with-subject.eml"), sut.getContentAsString());
+            Assertions.assertEquals("This is the mail title", sut.toMimeMessage().getSubject());
+            Assertions.assertEquals(0, Files.list(directory).count());
+        }
+    }
+
+    @Test
+    void shouldSpoolContentToFileWhenSizeExceedsThresholdAndDeleteFileOnClose(@TempDir Path directory) throws Exception {
+        var content = TestResourceUtil.getTestFileContentBytes("multipart-mail-html-and-plain-with-attachments.eml");
+
+        var sut = RawData.spool("from", List.of("to"), new ByteArrayInputStream(content), 16, directory.toFile());
+
+        Assertions.assertTrue(sut.isSpooledToFile());
+        Assertions.assertEquals(content.length, sut.getSize());
+        Assertions.assertEquals(1, Files.list(directory).count());
+        Assertions.assertEquals(TestResourceUtil.getTestFileContent("multipart-mail-html-and-plain-with-attachments.eml"), sut.getContentAsString());
+        Assertions.assertArrayEquals(content, sut.getContentAsStream().readAllBytes());
+        Assertions.assertNotNull(sut.toMimeMessage().getContent());
+
+        sut.close();
+
+        Assertions.assertEquals(0, Files.list(directory).count());
+    }
+
+    @Test
+    void shouldCopySpoolFileSoThatCopyOutlivesOriginal(@TempDir Path directory) throws Exception {
+        var content = TestResourceUtil.getTestFileContentBytes("multipart-mail-html-and-plain-with-attachments.eml");
+        var sut = RawData.spool("from", List.of("to"), new ByteArrayInputStream(content), 16, directory.toFile());
+
+        var copy = sut.copy();
+        Assertions.assertEquals(2, Files.list(directory).count());
+        sut.close();
+
+        Assertions.assertEquals("from", copy.getFrom());
+        Assertions.assertEquals(List.of("to"), copy.getRecipients());
+        Assertions.assertArrayEquals(content, copy.getContentAsStream().readAllBytes());
+        copy.close();
+        Assertions.assertEquals(0, Files.list(directory).count());
+    }
+
+    @Test
+    void shouldCopyWithSubsetOfRecipients() throws Exception {
+        var content = "data".getBytes(StandardCharsets.UTF_8);
+        var sut = new RawData("from", List.of("to1", "to2"), content);
+
+        var copy = sut.copy(List.of("to2"));
+
+        Assertions.assertEquals("from", copy.getFrom());
+        Assertions.assertEquals(List.of("to2"), copy.getRecipients());
+        Assertions.assertArrayEquals(content, copy.getContentAsStream().readAllBytes());
+    }
+
+}
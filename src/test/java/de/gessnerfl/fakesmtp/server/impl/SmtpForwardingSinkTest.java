@@ -0,0 +1,125 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmtpForwardingSinkTest {
+
+    @Mock
+    private JavaMailSenderFacade javaMailSenderFacade;
+    @Mock
+    private Logger logger;
+
+    @Test
+    void shouldSendAllMessagesOfBatchTogether() throws Exception {
+        var sut = new SmtpForwardingSink(javaMailSenderFacade, () -> false, logger);
+        var mimeMessage1 = mock(MimeMessage.class);
+        var mimeMessage2 = mock(MimeMessage.class);
+        var message1 = messageOf(mimeMessage1);
+        var message2 = messageOf(mimeMessage2);
+
+        var failures = sut.send(List.of(message1, message2));
+
+        assertTrue(failures.isEmpty());
+        verify(javaMailSenderFacade).send(List.of(mimeMessage1, mimeMessage2));
+    }
+
+    @Test
+    void shouldForwardEmailAsSimpleMessageWhenEmailCannotBeConvertedToMimeMessage() throws Exception {
+        var sut = new SmtpForwardingSink(javaMailSenderFacade, () -> false, logger);
+        var expectedException = new MessagingException("test");
+        var mimeMessage = mock(MimeMessage.class);
+        var rawData = mock(RawData.class);
+        when(rawData.toMimeMessage()).thenThrow(expectedException);
+        when(rawData.getFrom()).thenReturn("from");
+        when(rawData.getRecipients()).thenReturn(List.of("to"));
+        when(rawData.getContentAsString()).thenReturn("content");
+        when(javaMailSenderFacade.toMimeMessage(any(SimpleMailMessage.class))).thenReturn(mimeMessage);
+
+        var failures = sut.send(List.of(new OutboundMessage(rawData, Clock.systemUTC())));
+
+        assertTrue(failures.isEmpty());
+        verify(logger).warn(anyString(), eq(expectedException));
+        var messageCaptor = ArgumentCaptor.forClass(SimpleMailMessage.class);
+        verify(javaMailSenderFacade).toMimeMessage(messageCaptor.capture());
+        verify(javaMailSenderFacade).send(List.of(mimeMessage));
+        var message = messageCaptor.getValue();
+        assertEquals("from", message.getFrom());
+        assertEquals("to", message.getTo()[0]);
+        assertEquals("content", message.getText());
+    }
+
+    @Test
+    void shouldRelayRawDataWithoutParsingWhenRawRelayIsEnabled() throws Exception {
+        var sut = new SmtpForwardingSink(javaMailSenderFacade, () -> true, logger);
+        var rawData = mock(RawData.class);
+        when(rawData.getFrom()).thenReturn("sender@example.com");
+        when(rawData.getRecipients()).thenReturn(List.of("receiver@example.com"));
+        when(javaMailSenderFacade.getSession()).thenReturn(Session.getInstance(new Properties()));
+
+        var failures = sut.send(List.of(new OutboundMessage(rawData, Clock.systemUTC())));
+
+        assertTrue(failures.isEmpty());
+        var messagesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(javaMailSenderFacade).relay(messagesCaptor.capture());
+        verify(javaMailSenderFacade, never()).send(anyList());
+        verify(rawData, never()).toMimeMessage();
+        var message = (RawMessage) messagesCaptor.getValue().get(0);
+        assertEquals("sender@example.com", message.getEnvelopeFrom());
+        assertEquals("receiver@example.com", message.getEnvelopeRecipients()[0].getAddress());
+    }
+
+    @Test
+    void shouldReturnOnlyFailedMessagesOfBatch() throws Exception {
+        var sut = new SmtpForwardingSink(javaMailSenderFacade, () -> false, logger);
+        var mimeMessage1 = mock(MimeMessage.class);
+        var mimeMessage2 = mock(MimeMessage.class);
+        var message1 = messageOf(mimeMessage1);
+        var message2 = messageOf(mimeMessage2);
+        var exception = new MessagingException("Mailbox unavailable");
+        doThrow(new MailSendException(Map.of(mimeMessage2, exception))).when(javaMailSenderFacade).send(List.of(mimeMessage1, mimeMessage2));
+
+        var failures = sut.send(List.of(message1, message2));
+
+        assertEquals(Map.of(message2, exception), failures);
+    }
+
+    @Test
+    void shouldReturnAllMessagesAsFailedWhenMailSystemIsUnavailable() throws Exception {
+        var sut = new SmtpForwardingSink(javaMailSenderFacade, () -> false, logger);
+        var mimeMessage1 = mock(MimeMessage.class);
+        var mimeMessage2 = mock(MimeMessage.class);
+        var message1 = messageOf(mimeMessage1);
+        var message2 = messageOf(mimeMessage2);
+        var exception = new MailSendException("Relay unavailable");
+        doThrow(exception).when(javaMailSenderFacade).send(List.of(mimeMessage1, mimeMessage2));
+
+        var failures = sut.send(List.of(message1, message2));
+
+        assertEquals(Map.of(message1, exception, message2, exception), failures);
+    }
+
+    private static OutboundMessage messageOf(MimeMessage mimeMessage) throws MessagingException {
+        var rawData = mock(RawData.class);
+        when(rawData.toMimeMessage()).thenReturn(mimeMessage);
+        return new OutboundMessage(rawData, Clock.systemUTC());
+    }
+}
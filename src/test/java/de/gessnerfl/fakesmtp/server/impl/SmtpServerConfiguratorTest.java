@@ -8,11 +8,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
+import org.springframework.util.unit.DataSize;
 import org.subethamail.smtp.AuthenticationHandlerFactory;
 import org.subethamail.smtp.auth.EasyAuthenticationHandlerFactory;
 import org.subethamail.smtp.server.SMTPServer;
 
 import java.net.InetAddress;
+import java.time.Duration;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.instanceOf;
@@ -38,6 +40,10 @@ class SmtpServerConfiguratorTest {
         var bindingAddress = mock(InetAddress.class);
         when(fakeSmtpConfigurationProperties.getPort()).thenReturn(port);
         when(fakeSmtpConfigurationProperties.getBindAddress()).thenReturn(bindingAddress);
+        when(fakeSmtpConfigurationProperties.getMaxConnections()).thenReturn(null);
+        when(fakeSmtpConfigurationProperties.getConnectionTimeout()).thenReturn(null);
+        when(fakeSmtpConfigurationProperties.getBacklog()).thenReturn(null);
+        when(fakeSmtpConfigurationProperties.getMaxRecipients()).thenReturn(null);
 
         var smtpServer = mock(SMTPServer.class);
 
@@ -46,6 +52,39 @@ class SmtpServerConfiguratorTest {
         verify(smtpServer).setPort(port);
         verify(smtpServer).setBindAddress(bindingAddress);
         verify(smtpServer, never()).setAuthenticationHandlerFactory(any(AuthenticationHandlerFactory.class));
+        verify(smtpServer, never()).setMaxConnections(anyInt());
+        verify(smtpServer, never()).setBacklog(anyInt());
+        verify(smtpServer, never()).setConnectionTimeout(anyInt());
+        verify(smtpServer, never()).setMaxMessageSize(anyInt());
+        verify(smtpServer, never()).setMaxRecipients(anyInt());
+    }
+
+    @Test
+    void shouldConfigureConnectionLimitsWhenConfigured(){
+        when(fakeSmtpConfigurationProperties.getMaxConnections()).thenReturn(5000);
+        when(fakeSmtpConfigurationProperties.getBacklog()).thenReturn(200);
+
+        var smtpServer = mock(SMTPServer.class);
+
+        sut.configure(smtpServer);
+
+        verify(smtpServer).setMaxConnections(5000);
+        verify(smtpServer).setBacklog(200);
+    }
+
+    @Test
+    void shouldConfigureTimeoutAndMessageLimitsWhenConfigured(){
+        when(fakeSmtpConfigurationProperties.getConnectionTimeout()).thenReturn(Duration.ofSeconds(30));
+        when(fakeSmtpConfigurationProperties.getMaxMessageSize()).thenReturn(DataSize.ofMegabytes(10));
+        when(fakeSmtpConfigurationProperties.getMaxRecipients()).thenReturn(50);
+
+        var smtpServer = mock(SMTPServer.class);
+
+        sut.configure(smtpServer);
+
+        verify(smtpServer).setConnectionTimeout(30000);
+        verify(smtpServer).setMaxMessageSize(10 * 1024 * 1024);
+        verify(smtpServer).setMaxRecipients(50);
     }
 
     @Test
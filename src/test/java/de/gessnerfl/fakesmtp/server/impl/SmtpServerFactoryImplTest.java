@@ -1,5 +1,6 @@
 package de.gessnerfl.fakesmtp.server.impl;
 
+import de.gessnerfl.fakesmtp.util.ThreadFactoryProvider;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -8,8 +9,11 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.concurrent.Executors;
+
 import static org.hamcrest.Matchers.instanceOf;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class SmtpServerFactoryImplTest {
@@ -19,19 +23,27 @@ class SmtpServerFactoryImplTest {
     private SmtpServerConfigurator configurator;
     @Mock
     private MessageListener messageListener;
+    @Mock
+    private ThreadFactoryProvider threadFactoryProvider;
+    @Mock
+    private SmtpServerMetrics smtpServerMetrics;
 
     @InjectMocks
     private SmtpServerFactoryImpl sut;
 
     @Test
     void shouldCreateAndConfigureNewInsance(){
+        when(threadFactoryProvider.createThreadPerTaskExecutor(SmtpServerFactoryImpl.SESSION_THREAD_NAME_PREFIX)).thenReturn(Executors.newCachedThreadPool());
+
         var smtpServer = sut.create();
 
         MatcherAssert.assertThat(smtpServer, instanceOf(SmtpServerImpl.class));
         var impl = (SmtpServerImpl)smtpServer;
         Assertions.assertNotNull(impl.smtpServer);
+        MatcherAssert.assertThat(impl.smtpServer.getExecutorService(), instanceOf(SmtpSessionExecutor.class));
 
         verify(configurator).configure(impl.smtpServer);
+        verify(threadFactoryProvider).createThreadPerTaskExecutor(SmtpServerFactoryImpl.SESSION_THREAD_NAME_PREFIX);
     }
 
 }
\ No newline at end of file
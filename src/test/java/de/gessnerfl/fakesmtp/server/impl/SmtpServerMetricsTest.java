@@ -0,0 +1,52 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmtpServerMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SmtpServerMetrics sut;
+
+    @BeforeEach
+    void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new SmtpServerMetrics(meterRegistry);
+    }
+
+    @Test
+    void shouldTrackActiveSessionsAndSessionDuration() {
+        assertEquals(1, sut.sessionStarted());
+        assertEquals(2, sut.sessionStarted());
+        assertEquals(2.0, meterRegistry.get(SmtpServerMetrics.ACTIVE_SESSIONS_METRIC).gauge().value());
+
+        sut.sessionEnded(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(1.0, meterRegistry.get(SmtpServerMetrics.ACTIVE_SESSIONS_METRIC).gauge().value());
+        var timer = meterRegistry.get(SmtpServerMetrics.SESSION_DURATION_METRIC).timer();
+        assertEquals(1, timer.count());
+        assertEquals(100.0, timer.totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldCountRejectedConnections() {
+        sut.connectionRejected();
+
+        assertEquals(1.0, meterRegistry.get(SmtpServerMetrics.REJECTED_CONNECTIONS_METRIC).counter().count());
+    }
+
+    @Test
+    void shouldRecordReceivedBytes() {
+        sut.bytesReceived(100);
+        sut.bytesReceived(50);
+
+        var summary = meterRegistry.get(SmtpServerMetrics.RECEIVED_BYTES_METRIC).summary();
+        assertEquals(2, summary.count());
+        assertEquals(150.0, summary.totalAmount());
+    }
+}
@@ -0,0 +1,73 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.subethamail.smtp.server.SMTPServer;
+import org.subethamail.smtp.server.Session;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class SmtpSessionExecutorTest {
+
+    private SmtpServerMetrics smtpServerMetrics;
+    private SmtpSessionExecutor sut;
+
+    @BeforeEach
+    void init() {
+        smtpServerMetrics = mock(SmtpServerMetrics.class);
+        sut = new SmtpSessionExecutor(Executors.newSingleThreadExecutor(), smtpServerMetrics);
+    }
+
+    @Test
+    void shouldRecordSessionStartAndEnd() throws Exception {
+        when(smtpServerMetrics.sessionStarted()).thenReturn(1);
+        var command = mock(Runnable.class);
+
+        sut.execute(command);
+        shutdownAndAwait();
+
+        verify(command).run();
+        verify(smtpServerMetrics).sessionStarted();
+        verify(smtpServerMetrics).sessionEnded(anyLong());
+        verify(smtpServerMetrics, never()).connectionRejected();
+    }
+
+    @Test
+    void shouldRecordSessionEndWhenSessionFails() throws Exception {
+        when(smtpServerMetrics.sessionStarted()).thenReturn(1);
+        var command = mock(Runnable.class);
+        doThrow(new IllegalStateException("failed")).when(command).run();
+
+        sut.execute(command);
+        shutdownAndAwait();
+
+        verify(smtpServerMetrics).sessionEnded(anyLong());
+    }
+
+    @Test
+    void shouldCountRejectedConnectionWhenMaxConnectionsAreExceeded() throws Exception {
+        when(smtpServerMetrics.sessionStarted()).thenReturn(3);
+        var server = mock(SMTPServer.class);
+        when(server.getMaxConnections()).thenReturn(2);
+        var session = mock(Session.class);
+        when(session.getServer()).thenReturn(server);
+
+        sut.execute(session);
+        shutdownAndAwait();
+
+        verify(session).run();
+        verify(smtpServerMetrics).connectionRejected();
+        verify(smtpServerMetrics).sessionEnded(anyLong());
+    }
+
+    private void shutdownAndAwait() throws InterruptedException {
+        sut.shutdown();
+        assertTrue(sut.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(sut.isTerminated());
+    }
+}
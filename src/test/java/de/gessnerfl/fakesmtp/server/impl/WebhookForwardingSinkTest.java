@@ -0,0 +1,75 @@
+package de.gessnerfl.fakesmtp.server.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookForwardingSinkTest {
+
+    private HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile int status = 204;
+
+    @BeforeEach
+    void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/hook", exchange -> {
+            var headers = exchange.getRequestHeaders();
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            requests.add(exchange.getRequestMethod() + " " + headers.getFirst("Content-Type") + " " + headers.getFirst(WebhookForwardingSink.ENVELOPE_FROM_HEADER) + " " + headers.getFirst(WebhookForwardingSink.ENVELOPE_TO_HEADER) + " " + body);
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldPostReceivedDataWithEnvelopeOfEachEmail() {
+        var sut = new WebhookForwardingSink(getUrl(), HttpClient.newHttpClient());
+
+        var failures = sut.send(List.of(messageOf("first"), messageOf("second")));
+
+        assertTrue(failures.isEmpty());
+        assertEquals(List.of(
+                "POST message/rfc822 sender@example.com receiver1@example.com, receiver2@example.com first",
+                "POST message/rfc822 sender@example.com receiver1@example.com, receiver2@example.com second"), requests);
+    }
+
+    @Test
+    void shouldReturnMessageAsFailedWhenWebhookRespondsWithError() {
+        status = 503;
+        var sut = new WebhookForwardingSink(getUrl(), HttpClient.newHttpClient());
+        var message = messageOf("content");
+
+        var failures = sut.send(List.of(message));
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(message).getMessage().contains("503"));
+    }
+
+    private URI getUrl() {
+        return URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/hook");
+    }
+
+    private static OutboundMessage messageOf(String content) {
+        return new OutboundMessage(new RawData("sender@example.com", List.of("receiver1@example.com", "receiver2@example.com"), content.getBytes(StandardCharsets.UTF_8)), Clock.systemUTC());
+    }
+}
@@ -0,0 +1,150 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.ContentType;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailContent;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.server.impl.IngestPipeline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContentPreRendererTest {
+
+    @Mock
+    private EmailRepository emailRepository;
+    @Mock
+    private IngestPipeline ingestPipeline;
+    @Mock
+    private HtmlContentRenderer htmlContentRenderer;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private Logger logger;
+
+    private FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties;
+    private ContentPreRenderer sut;
+
+    @BeforeEach
+    void init() {
+        fakeSmtpConfigurationProperties = new FakeSmtpConfigurationProperties();
+        sut = new ContentPreRenderer(fakeSmtpConfigurationProperties, emailRepository, ingestPipeline, htmlContentRenderer, transactionManager, eventPublisher, new DirectExecutorService(), logger);
+    }
+
+    @Test
+    void shouldNotPreRenderWhenDisabled() {
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail()));
+
+        verifyNoInteractions(emailRepository, ingestPipeline, htmlContentRenderer);
+    }
+
+    @Test
+    void shouldStoreRenderedContentsOfReceivedEmail() {
+        fakeSmtpConfigurationProperties.getRendering().setPreRender(true);
+        var email = createEmail();
+        var content = email.getContents().get(0);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+        when(htmlContentRenderer.renderContent(content)).thenReturn("<p>Test</p>");
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        assertEquals("<p>Test</p>", content.getRendered());
+        verify(eventPublisher).publishEvent(argThat((EmailRenderedEvent e) -> e.getId() == 1L));
+    }
+
+    @Test
+    void shouldRenderLazilyParsedEmailOnceItIsMaterialized() {
+        fakeSmtpConfigurationProperties.getRendering().setPreRender(true);
+        var email = createEmail();
+        email.setMaterialized(false);
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        verifyNoInteractions(emailRepository, htmlContentRenderer);
+
+        email.setMaterialized(true);
+        var content = email.getContents().get(0);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+        when(htmlContentRenderer.renderContent(content)).thenReturn("<p>Test</p>");
+
+        sut.onEmailMaterialized(new EmailMaterializedEvent(1L));
+
+        assertEquals("<p>Test</p>", content.getRendered());
+    }
+
+    @Test
+    void shouldDeferRenderingWhileIngestIsBusy() {
+        fakeSmtpConfigurationProperties.getRendering().setPreRender(true);
+        var email = createEmail();
+        when(ingestPipeline.isBusy()).thenReturn(true, true, false);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+        var start = System.nanoTime();
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(2 * ContentPreRenderer.INGEST_BUSY_DELAY_MILLIS));
+        var inOrder = inOrder(ingestPipeline, htmlContentRenderer);
+        inOrder.verify(ingestPipeline, times(3)).isBusy();
+        inOrder.verify(htmlContentRenderer).renderContent(any());
+    }
+
+    @Test
+    void shouldNotRenderContentsAgainWhichAreAlreadyRendered() {
+        fakeSmtpConfigurationProperties.getRendering().setPreRender(true);
+        var email = createEmail();
+        email.getContents().get(0).setRendered("<p>Test</p>");
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        verifyNoInteractions(htmlContentRenderer);
+    }
+
+    @Test
+    void shouldLogErrorWhenPreRenderingFails() {
+        fakeSmtpConfigurationProperties.getRendering().setPreRender(true);
+        var email = createEmail();
+        var exception = new IllegalStateException("failed");
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+        when(htmlContentRenderer.renderContent(any())).thenThrow(exception);
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        assertNull(email.getContents().get(0).getRendered());
+        verify(logger).error("Failed to pre-render contents of email {}", 1L, exception);
+    }
+
+    private static Email createEmail() {
+        var content = new EmailContent();
+        content.setContentType(ContentType.PLAIN);
+        content.setData("Test");
+
+        var email = new Email();
+        email.setId(1L);
+        email.setSubject("Subject");
+        email.setFromAddress("sender@example.com");
+        email.setToAddress("receiver@example.com");
+        email.setRecipients(List.of("receiver@example.com"));
+        email.setReceivedOn(new Date());
+        email.addContent(content);
+        return email;
+    }
+}
@@ -0,0 +1,139 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.repository.EmailCriteria;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailArrivalNotifierTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Mock
+    private EmailRepository emailRepository;
+    @Mock
+    private EmailMaterializer emailMaterializer;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private Logger logger;
+
+    private EmailArrivalNotifier sut;
+
+    @BeforeEach
+    void init() {
+        sut = new EmailArrivalNotifier(emailRepository, emailMaterializer, transactionManager, new DirectExecutorService(), logger);
+    }
+
+    @Test
+    void shouldCompleteImmediatelyWhenMatchingEmailIsAlreadyStored() {
+        var criteria = new EmailCriteria().to("receiver@example.com");
+        var email = createEmail(12L, "Subject");
+        when(emailRepository.findIdOfLatestEmailMatching(criteria)).thenReturn(Optional.of(12L));
+        when(emailRepository.findById(12L)).thenReturn(Optional.of(email));
+
+        var result = sut.await(criteria, TIMEOUT);
+
+        assertTrue(result.hasResult());
+        assertEquals(ResponseEntity.ok(email), result.getResult());
+        assertEquals(0, sut.getNumberOfWaiters());
+        verify(emailMaterializer).materialize(12L);
+    }
+
+    @Test
+    void shouldCompleteWaiterWhenMatchingEmailIsReceived() {
+        var criteria = new EmailCriteria().subjectContains("Welcome");
+        var email = createEmail(13L, "Welcome John");
+        when(emailRepository.findIdOfLatestEmailMatching(criteria)).thenReturn(Optional.empty());
+        when(emailRepository.findById(13L)).thenReturn(Optional.of(email));
+
+        var result = sut.await(criteria, TIMEOUT);
+
+        assertFalse(result.hasResult());
+        assertEquals(1, sut.getNumberOfWaiters());
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(14L, "Goodbye John")));
+
+        assertFalse(result.hasResult());
+        assertEquals(1, sut.getNumberOfWaiters());
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        assertTrue(result.hasResult());
+        assertEquals(ResponseEntity.ok(email), result.getResult());
+        assertEquals(0, sut.getNumberOfWaiters());
+        verify(emailRepository, never()).findById(14L);
+    }
+
+    @Test
+    void shouldRespondWithNoContentWhenMatchedEmailIsNoLongerAvailable() {
+        var criteria = new EmailCriteria();
+        when(emailRepository.findIdOfLatestEmailMatching(criteria)).thenReturn(Optional.of(15L));
+        when(emailRepository.findById(15L)).thenReturn(Optional.empty());
+
+        var result = sut.await(criteria, TIMEOUT);
+
+        assertTrue(result.hasResult());
+        assertEquals(HttpStatus.NO_CONTENT, ((ResponseEntity<?>) result.getResult()).getStatusCode());
+    }
+
+    @Test
+    void shouldLoadMatchedEmailOnExecutorInsteadOfPublishingThread() {
+        var executor = mock(ExecutorService.class);
+        sut = new EmailArrivalNotifier(emailRepository, emailMaterializer, transactionManager, executor, logger);
+        var criteria = new EmailCriteria();
+        when(emailRepository.findIdOfLatestEmailMatching(criteria)).thenReturn(Optional.empty());
+        var result = sut.await(criteria, TIMEOUT);
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(16L, "Subject")));
+
+        assertEquals(0, sut.getNumberOfWaiters());
+        assertFalse(result.hasResult());
+        verify(executor).execute(any(Runnable.class));
+        verifyNoInteractions(emailMaterializer);
+        verify(emailRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void shouldRespondWithNoContentWhenLoadingOfEmailIsRejected() {
+        var executor = mock(ExecutorService.class);
+        doThrow(new RejectedExecutionException("shutdown")).when(executor).execute(any(Runnable.class));
+        sut = new EmailArrivalNotifier(emailRepository, emailMaterializer, transactionManager, executor, logger);
+        var criteria = new EmailCriteria();
+        when(emailRepository.findIdOfLatestEmailMatching(criteria)).thenReturn(Optional.of(17L));
+
+        var result = sut.await(criteria, TIMEOUT);
+
+        assertTrue(result.hasResult());
+        assertEquals(HttpStatus.NO_CONTENT, ((ResponseEntity<?>) result.getResult()).getStatusCode());
+    }
+
+    private static Email createEmail(Long id, String subject) {
+        var email = new Email();
+        email.setId(id);
+        email.setSubject(subject);
+        email.setFromAddress("sender@example.com");
+        email.setToAddress("receiver@example.com");
+        email.setRecipients(List.of("receiver@example.com"));
+        email.setReceivedOn(new Date());
+        return email;
+    }
+}
@@ -0,0 +1,194 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailOriginalContent;
+import de.gessnerfl.fakesmtp.repository.EmailOriginalContentRepository;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.server.impl.EmailFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailMaterializerTest {
+
+    @Spy
+    private FakeSmtpConfigurationProperties fakeSmtpConfigurationProperties = new FakeSmtpConfigurationProperties();
+    @Mock
+    private EmailRepository emailRepository;
+    @Mock
+    private EmailOriginalContentRepository emailOriginalContentRepository;
+    @Mock
+    private EmailFactory emailFactory;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private Logger logger;
+
+    @InjectMocks
+    private EmailMaterializer sut;
+
+    @Test
+    void shouldMaterializeEmailWhenNotYetMaterialized() throws IOException {
+        var id = 12L;
+        var email = mock(Email.class);
+        when(emailRepository.existsByIdAndMaterializedFalse(id)).thenReturn(true);
+        when(emailRepository.markAsMaterialized(id)).thenReturn(1);
+        when(emailRepository.findById(id)).thenReturn(Optional.of(email));
+
+        sut.materialize(id);
+
+        verify(emailFactory).materialize(email);
+        verify(emailRepository).save(email);
+        verify(eventPublisher).publishEvent(argThat((EmailMaterializedEvent e) -> e.getId() == id));
+    }
+
+    @Test
+    void shouldMaterializeEmailFromOriginalContentAndDeleteItAfterwards() throws IOException {
+        var id = 12L;
+        var email = mock(Email.class);
+        var data = new byte[]{1, 2, 3};
+        var originalContent = new EmailOriginalContent();
+        originalContent.setEmailId(id);
+        originalContent.setData(data);
+        when(emailRepository.existsByIdAndMaterializedFalse(id)).thenReturn(true);
+        when(emailRepository.markAsMaterialized(id)).thenReturn(1);
+        when(emailRepository.findById(id)).thenReturn(Optional.of(email));
+        when(emailOriginalContentRepository.findById(id)).thenReturn(Optional.of(originalContent));
+
+        sut.materialize(id);
+
+        var inOrder = inOrder(email, emailFactory, emailRepository, emailOriginalContentRepository);
+        inOrder.verify(email).setOriginalContent(data);
+        inOrder.verify(emailFactory).materialize(email);
+        inOrder.verify(emailRepository).save(email);
+        inOrder.verify(emailOriginalContentRepository).delete(originalContent);
+    }
+
+    @Test
+    void shouldRethrowFailureSoThatMaterializedFlagIsRolledBackAndOriginalContentIsKept() throws IOException {
+        var id = 12L;
+        var email = mock(Email.class);
+        var originalContent = new EmailOriginalContent();
+        originalContent.setEmailId(id);
+        originalContent.setData(new byte[]{1, 2, 3});
+        var exception = new IOException("broken");
+        when(emailRepository.existsByIdAndMaterializedFalse(id)).thenReturn(true);
+        when(emailRepository.markAsMaterialized(id)).thenReturn(1);
+        when(emailRepository.findById(id)).thenReturn(Optional.of(email));
+        when(emailOriginalContentRepository.findById(id)).thenReturn(Optional.of(originalContent));
+        doThrow(exception).when(emailFactory).materialize(email);
+
+        var thrown = assertThrows(UncheckedIOException.class, () -> sut.materialize(id));
+
+        assertSame(exception, thrown.getCause());
+        verify(emailRepository, never()).save(any());
+        verify(emailOriginalContentRepository, never()).delete(any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void shouldRollBackBackgroundMaterializationWhenEmailCannotBeRead() throws IOException {
+        fakeSmtpConfigurationProperties.getIngest().setLazyParsing(true);
+        var email = mock(Email.class);
+        when(emailRepository.findIdsOfNotMaterializedEmails(any(Pageable.class))).thenReturn(List.of(1L));
+        when(emailRepository.existsByIdAndMaterializedFalse(1L)).thenReturn(true);
+        when(emailRepository.markAsMaterialized(1L)).thenReturn(1);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+        doThrow(new IOException("broken")).when(emailFactory).materialize(email);
+
+        sut.materializePendingEmails();
+
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(logger).error(eq("Failed to materialize email {}"), eq(1L), any(UncheckedIOException.class));
+    }
+
+    @Test
+    void shouldSkipEmailWhichIsAlreadyMaterialized() throws IOException {
+        var id = 12L;
+        when(emailRepository.existsByIdAndMaterializedFalse(id)).thenReturn(false);
+
+        sut.materialize(id);
+
+        verify(emailRepository, never()).markAsMaterialized(anyLong());
+        verifyNoInteractions(emailFactory, eventPublisher);
+    }
+
+    @Test
+    void shouldSkipEmailWhichIsMaterializedConcurrently() throws IOException {
+        var id = 12L;
+        when(emailRepository.existsByIdAndMaterializedFalse(id)).thenReturn(true);
+        when(emailRepository.markAsMaterialized(id)).thenReturn(0);
+
+        sut.materialize(id);
+
+        verify(emailRepository, never()).findById(anyLong());
+        verifyNoInteractions(emailFactory);
+    }
+
+    @Test
+    void shouldMaterializePendingEmailsInBackgroundWhenLazyParsingIsEnabled() throws IOException {
+        fakeSmtpConfigurationProperties.getIngest().setLazyParsing(true);
+        var email = mock(Email.class);
+        when(emailRepository.findIdsOfNotMaterializedEmails(any(Pageable.class))).thenReturn(List.of(1L));
+        when(emailRepository.existsByIdAndMaterializedFalse(1L)).thenReturn(true);
+        when(emailRepository.markAsMaterialized(1L)).thenReturn(1);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+
+        sut.materializePendingEmails();
+
+        verify(emailRepository).findIdsOfNotMaterializedEmails(argThat(p -> p.getPageSize() == EmailMaterializer.BATCH_SIZE));
+        verify(emailFactory).materialize(email);
+        verify(transactionManager).getTransaction(argThat(d -> d.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void shouldContinueMaterializingPendingEmailsWhenOneOfThemFails() throws IOException {
+        fakeSmtpConfigurationProperties.getIngest().setLazyParsing(true);
+        var failingEmail = mock(Email.class);
+        var email = mock(Email.class);
+        var exception = new IllegalStateException("broken");
+        when(emailRepository.findIdsOfNotMaterializedEmails(any(Pageable.class))).thenReturn(List.of(1L, 2L));
+        when(emailRepository.existsByIdAndMaterializedFalse(anyLong())).thenReturn(true);
+        when(emailRepository.markAsMaterialized(anyLong())).thenReturn(1);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(failingEmail));
+        when(emailRepository.findById(2L)).thenReturn(Optional.of(email));
+        doThrow(exception).when(emailFactory).materialize(failingEmail);
+
+        sut.materializePendingEmails();
+
+        verify(emailFactory).materialize(email);
+        verify(emailRepository).save(email);
+        verify(transactionManager).rollback(any());
+        verify(transactionManager).commit(any());
+        verify(logger).error("Failed to materialize email {}", 1L, exception);
+    }
+
+    @Test
+    void shouldNotMaterializeInBackgroundWhenLazyParsingIsDisabled() {
+        sut.materializePendingEmails();
+
+        verifyNoInteractions(emailRepository, emailFactory);
+    }
+}
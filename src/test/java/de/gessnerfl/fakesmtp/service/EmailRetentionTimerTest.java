@@ -1,14 +1,34 @@
 package de.gessnerfl.fakesmtp.service;
 
 import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailContent;
 import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -19,52 +39,260 @@ class EmailRetentionTimerTest {
     @Mock
     private EmailRepository emailRepository;
     @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
     private Logger logger;
 
-    @InjectMocks
+    private final Clock clock = Clock.fixed(Instant.parse("2022-11-05T10:00:00Z"), ZoneOffset.UTC);
+    private SimpleMeterRegistry meterRegistry;
     private EmailRetentionTimer sut;
 
+    @BeforeEach
+    void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new EmailRetentionTimer(fakeSmtpConfigurationProperties, emailRepository, eventPublisher, transactionManager, meterRegistry, clock, logger);
+    }
+
     @Test
-    void shouldTriggerDeletionWhenDataRetentionIsConfigured(){
-        var maxNumber = 5;
-        var persistence = mock(FakeSmtpConfigurationProperties.Persistence.class);
-        when(persistence.getMaxNumberEmails()).thenReturn(maxNumber);
-        when(fakeSmtpConfigurationProperties.getPersistence()).thenReturn(persistence);
+    void shouldDeleteOldestEmailsOnStartupWhenRetentionLimitIsExceeded(){
+        configureMaxNumberEmails(5);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 7));
+
+        sut.initialize();
+
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, 2));
+        verify(eventPublisher).publishEvent(argThat((EmailDeletedEvent e) -> e.getIds().equals(ids(1, 2))));
+        assertEquals(5, sut.getNumberOfStoredEmails());
+    }
+
+    @Test
+    void shouldNotDeleteEmailsOnStartupWhenRetentionLimitIsNotExceeded(){
+        configureMaxNumberEmails(5);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 5));
+
+        sut.initialize();
+
+        verify(emailRepository, never()).deleteAllByIdInBatch(any());
+        verifyNoInteractions(eventPublisher);
+        assertEquals(5, sut.getNumberOfStoredEmails());
+    }
+
+    @Test
+    void shouldEvictOldestEmailsInBatchesWhenReceivedEmailExceedsRetentionLimit(){
+        configureMaxNumberEmails(1000);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 1000));
+        sut.initialize();
+
+        sut.onEmailReceived(receivedEvent(1001L));
+
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, EmailRetentionTimer.BATCH_SIZE));
+        verify(eventPublisher).publishEvent(any(EmailDeletedEvent.class));
+        assertEquals(1001 - EmailRetentionTimer.BATCH_SIZE, sut.getNumberOfStoredEmails());
+
+        sut.onEmailReceived(receivedEvent(1002L));
+
+        verifyNoMoreInteractions(eventPublisher);
+    }
+
+    @Test
+    void shouldChunkDeletionsWhenWindowExceedsRetentionLimitByMoreThanOneBatch(){
+        configureMaxNumberEmails(10);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 260));
+
+        sut.initialize();
+
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, 100));
+        verify(emailRepository).deleteAllByIdInBatch(ids(101, 200));
+        verify(emailRepository).deleteAllByIdInBatch(ids(201, 251));
+        verify(eventPublisher, times(3)).publishEvent(any(EmailDeletedEvent.class));
+        assertEquals(9, sut.getNumberOfStoredEmails());
+    }
+
+    @Test
+    void shouldKeepIdsInWindowWhenDeletionFails(){
+        configureMaxNumberEmails(5);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 6));
+        doThrow(new IllegalStateException("failed")).when(emailRepository).deleteAllByIdInBatch(any());
+
+        sut.initialize();
+
+        verifyNoInteractions(eventPublisher);
+        assertEquals(6, sut.getNumberOfStoredEmails());
+    }
+
+    @Test
+    void shouldEvictOldestEmailsUntilStoredSizeIsWithinLimit(){
+        configureLimits(null, DataSize.ofBytes(2500), null);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 3));
+        sut.initialize();
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, 1));
+        assertEquals(2000, sut.getStoredSize());
+
+        sut.onEmailReceived(receivedEvent(4L, "x".repeat(1200)));
+
+        verify(emailRepository).deleteAllByIdInBatch(ids(2, 2));
+        assertEquals(2, sut.getNumberOfStoredEmails());
+        assertEquals(2200, sut.getStoredSize());
+        assertEquals(2200.0, meterRegistry.get(EmailRetentionTimer.STORED_BYTES_METRIC).gauge().value());
+        assertEquals(2.0, meterRegistry.get(EmailRetentionTimer.STORED_EMAILS_METRIC).gauge().value());
+    }
+
+    @Test
+    void shouldUpdateStoredSizeWhenEmailIsMaterializedOrRendered(){
+        configureLimits(null, DataSize.ofBytes(2500), null);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 2));
+        sut.initialize();
+        when(emailRepository.findStoredSizeById(2L)).thenReturn(Optional.of(BigInteger.valueOf(1400)), Optional.of(BigInteger.valueOf(1600)));
 
-        sut.deleteOutdatedMails();
+        sut.onEmailMaterialized(new EmailMaterializedEvent(2L));
+        assertEquals(2400, sut.getStoredSize());
+        verify(emailRepository, never()).deleteAllByIdInBatch(any());
 
-        verify(emailRepository).deleteEmailsExceedingDateRetentionLimit(maxNumber);
+        sut.onEmailRendered(new EmailRenderedEvent(2L));
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, 1));
+        assertEquals(1600, sut.getStoredSize());
+
+        sut.onEmailMaterialized(new EmailMaterializedEvent(1L));
+        verify(emailRepository, never()).findStoredSizeById(1L);
+    }
+
+    @Test
+    void shouldCountStoredSizeOfReceivedEmailInUtf8Bytes(){
+        configureLimits(null, DataSize.ofBytes(2500), null);
+        var email = new Email();
+        email.setId(1L);
+        email.setRawData("Gr\u00fc\u00dfe \u20ac \ud83d\ude00");
+        email.setOriginalContent(new byte[5]);
+        email.setReceivedOn(Date.from(clock.instant()));
+        var content = new EmailContent();
+        content.setData("\u00fc");
+        content.setRendered("<p>\u00fc</p>");
+        email.addContent(content);
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        var expected = email.getRawData().getBytes(StandardCharsets.UTF_8).length + 5 + 2 + 9;
+        assertEquals(expected, sut.getStoredSize());
+    }
+
+    @Test
+    void shouldEvictEmailsExceedingMaximumAge(){
+        configureLimits(null, null, Duration.ofMinutes(30));
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(List.of(
+                row(1, clock.instant().minus(Duration.ofMinutes(45))),
+                row(2, clock.instant().minus(Duration.ofMinutes(31))),
+                row(3, clock.instant().minus(Duration.ofMinutes(29)))));
+
+        sut.initialize();
+
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, 2));
+        assertEquals(1, sut.getNumberOfStoredEmails());
+        assertEquals(1000, sut.getStoredSize());
+    }
+
+    @Test
+    void shouldNotEvictEmailsBelowNumberLimitWhenOnlyAgeIsExceeded(){
+        configureLimits(10, null, Duration.ofMinutes(30));
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(List.of(
+                row(1, clock.instant().minus(Duration.ofMinutes(45))),
+                row(2, clock.instant()),
+                row(3, clock.instant())));
+
+        sut.initialize();
+
+        verify(emailRepository).deleteAllByIdInBatch(ids(1, 1));
+        assertEquals(2, sut.getNumberOfStoredEmails());
+    }
+
+    @Test
+    void shouldRemoveDeletedEmailsFromWindow(){
+        configureMaxNumberEmails(5);
+        when(emailRepository.findStoredSizeOfAllEmails()).thenReturn(rows(1, 5));
+        sut.initialize();
+
+        sut.onEmailDeleted(EmailDeletedEvent.of(List.of(2L, 3L)));
+        assertEquals(3, sut.getNumberOfStoredEmails());
+        assertEquals(3000, sut.getStoredSize());
+
+        sut.onEmailReceived(receivedEvent(6L));
+        sut.onEmailReceived(receivedEvent(7L));
+        verify(emailRepository, never()).deleteAllByIdInBatch(any());
+
+        sut.onEmailDeleted(EmailDeletedEvent.all());
+        assertEquals(0, sut.getNumberOfStoredEmails());
+        assertEquals(0, sut.getStoredSize());
     }
 
     @Test
-    void shouldNotTriggerDeletionWhenConfiguredMaxNumberIsNull(){
+    void shouldNotTrackEmailsWhenConfiguredMaxNumberIsNull(){
         var persistence = mock(FakeSmtpConfigurationProperties.Persistence.class);
         when(persistence.getMaxNumberEmails()).thenReturn(null);
         when(fakeSmtpConfigurationProperties.getPersistence()).thenReturn(persistence);
 
-        sut.deleteOutdatedMails();
+        sut.initialize();
+        sut.onEmailReceived(receivedEvent(1L));
 
-        verify(emailRepository, never()).deleteEmailsExceedingDateRetentionLimit(anyInt());
+        verifyNoInteractions(emailRepository, eventPublisher);
+        assertEquals(0, sut.getNumberOfStoredEmails());
     }
 
     @Test
-    void shouldNotTriggerDeletionWhenConfiguredMaxNumberIsLessOrEqualToZero(){
-        var persistence = mock(FakeSmtpConfigurationProperties.Persistence.class);
-        when(persistence.getMaxNumberEmails()).thenReturn(0);
-        when(fakeSmtpConfigurationProperties.getPersistence()).thenReturn(persistence);
+    void shouldNotTrackEmailsWhenConfiguredMaxNumberIsLessOrEqualToZero(){
+        configureMaxNumberEmails(0);
 
-        sut.deleteOutdatedMails();
+        sut.initialize();
+        sut.onEmailReceived(receivedEvent(1L));
 
-        verify(emailRepository, never()).deleteEmailsExceedingDateRetentionLimit(anyInt());
+        verifyNoInteractions(emailRepository, eventPublisher);
+        assertEquals(0, sut.getNumberOfStoredEmails());
     }
 
     @Test
-    void shouldNotTriggerDeletionWhenNoPersistenceIsConfigured(){
+    void shouldNotTrackEmailsWhenNoPersistenceIsConfigured(){
         when(fakeSmtpConfigurationProperties.getPersistence()).thenReturn(null);
 
-        sut.deleteOutdatedMails();
+        sut.initialize();
+        sut.onEmailReceived(receivedEvent(1L));
+
+        verifyNoInteractions(emailRepository, eventPublisher);
+        assertEquals(0, sut.getNumberOfStoredEmails());
+    }
+
+    private void configureMaxNumberEmails(int maxNumber) {
+        configureLimits(maxNumber, null, null);
+    }
+
+    private void configureLimits(Integer maxNumber, DataSize maxStoredSize, Duration maxAge) {
+        var persistence = mock(FakeSmtpConfigurationProperties.Persistence.class);
+        when(persistence.getMaxNumberEmails()).thenReturn(maxNumber);
+        when(persistence.getMaxStoredSize()).thenReturn(maxStoredSize);
+        when(persistence.getMaxAge()).thenReturn(maxAge);
+        when(fakeSmtpConfigurationProperties.getPersistence()).thenReturn(persistence);
+    }
+
+    private List<Object[]> rows(long from, long to) {
+        return LongStream.rangeClosed(from, to).mapToObj(id -> row(id, clock.instant())).collect(Collectors.toList());
+    }
+
+    private static Object[] row(long id, Instant receivedOn) {
+        return new Object[]{BigInteger.valueOf(id), Timestamp.from(receivedOn), 1000L};
+    }
 
-        verify(emailRepository, never()).deleteEmailsExceedingDateRetentionLimit(anyInt());
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
     }
 
-}
\ No newline at end of file
+    private EmailReceivedEvent receivedEvent(Long id) {
+        return receivedEvent(id, "raw");
+    }
+
+    private EmailReceivedEvent receivedEvent(Long id, String rawData) {
+        var email = new Email();
+        email.setId(id);
+        email.setRawData(rawData);
+        email.setReceivedOn(Date.from(clock.instant()));
+        return new EmailReceivedEvent(email);
+    }
+}
@@ -0,0 +1,154 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.model.ContentType;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.model.EmailAttachment;
+import de.gessnerfl.fakesmtp.model.EmailContent;
+import de.gessnerfl.fakesmtp.model.EmailSearchText;
+import de.gessnerfl.fakesmtp.model.EmailSummary;
+import de.gessnerfl.fakesmtp.repository.EmailRepository;
+import de.gessnerfl.fakesmtp.repository.EmailSearchTextRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailSearchServiceTest {
+
+    @Mock
+    private EmailRepository emailRepository;
+    @Mock
+    private EmailSearchTextRepository emailSearchTextRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private Logger logger;
+
+    private EmailSearchService sut;
+
+    @BeforeEach
+    void init() {
+        sut = new EmailSearchService(emailRepository, emailSearchTextRepository, transactionManager, new DirectExecutorService(), logger);
+    }
+
+    @Test
+    void shouldReturnSummariesOfMatchingEmailsInOrderOfIndex() {
+        var pageable = PageRequest.of(1, 2);
+        when(emailSearchTextRepository.findIdsOfEmailsMatching("invoice", pageable)).thenReturn(new PageImpl<>(List.of(3L, 1L), pageable, 5));
+        when(emailRepository.findAllSummariesById(List.of(3L, 1L))).thenReturn(List.of(summary(1L), summary(3L)));
+
+        var result = sut.search("invoice", pageable);
+
+        assertEquals(5, result.getTotalElements());
+        assertEquals(List.of(3L, 1L), result.map(EmailSummary::getId).getContent());
+    }
+
+    @Test
+    void shouldReturnEmptyPageForBlankQuery() {
+        var result = sut.search(" ", PageRequest.of(0, 10));
+
+        assertEquals(0, result.getTotalElements());
+        verifyNoInteractions(emailSearchTextRepository, emailRepository);
+    }
+
+    @Test
+    void shouldIndexHeadersAndBodyOfReceivedEmail() {
+        var email = createEmail(1L, "Invoice 4711", "<p>Please pay the <b>invoice</b></p>", ContentType.HTML);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        var searchText = captureSavedSearchText();
+        assertEquals(1L, searchText.getEmailId());
+        assertEquals("sender@example.com\nreceiver@example.com\nInvoice 4711\n", searchText.getHeaders());
+        assertEquals("Please pay the invoice\n", searchText.getBody());
+    }
+
+    @Test
+    void shouldIndexOnlyHeadersOfNotMaterializedEmailAndBodyOnceItIsMaterialized() {
+        var email = createEmail(1L, "Invoice", "text", ContentType.PLAIN);
+        email.setMaterialized(false);
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(email));
+
+        sut.onEmailReceived(new EmailReceivedEvent(email));
+
+        assertNull(captureSavedSearchText().getBody());
+
+        email.setMaterialized(true);
+        sut.onEmailMaterialized(new EmailMaterializedEvent(1L));
+
+        var captor = ArgumentCaptor.forClass(EmailSearchText.class);
+        verify(emailSearchTextRepository, times(2)).save(captor.capture());
+        assertEquals("text\n", captor.getValue().getBody());
+    }
+
+    @Test
+    void shouldIndexPendingEmailsOnStartup() {
+        when(emailSearchTextRepository.findIdsOfEmailsToIndex()).thenReturn(List.of(1L, 2L));
+        when(emailRepository.findById(1L)).thenReturn(Optional.of(createEmail(1L, "Invoice", "text", ContentType.PLAIN)));
+        when(emailRepository.findById(2L)).thenReturn(Optional.empty());
+
+        sut.indexPendingEmails();
+
+        assertEquals(1L, captureSavedSearchText().getEmailId());
+    }
+
+    @Test
+    void shouldNotIndexEmailWhichIsNoLongerAvailable() {
+        when(emailRepository.findById(1L)).thenReturn(Optional.empty());
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "Invoice", "text", ContentType.PLAIN)));
+
+        verify(emailSearchTextRepository, never()).save(any());
+    }
+
+    @Test
+    void shouldBuildBodyTextFromTextContentAndAttachmentNames() {
+        var email = createEmail(1L, "Subject", "<p>Html <i>body</i></p>", ContentType.HTML);
+        var attachment = new EmailAttachment();
+        attachment.setFilename("invoice.pdf");
+        email.addAttachment(attachment);
+
+        assertEquals("Html body\ninvoice.pdf\n", EmailSearchService.toBodyText(email));
+    }
+
+    private EmailSearchText captureSavedSearchText() {
+        var captor = ArgumentCaptor.forClass(EmailSearchText.class);
+        verify(emailSearchTextRepository).save(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Email createEmail(Long id, String subject, String data, ContentType contentType) {
+        var content = new EmailContent();
+        content.setContentType(contentType);
+        content.setData(data);
+
+        var email = new Email();
+        email.setId(id);
+        email.setSubject(subject);
+        email.setFromAddress("sender@example.com");
+        email.setToAddress("receiver@example.com");
+        email.setRecipients(List.of("receiver@example.com"));
+        email.setReceivedOn(new Date());
+        email.addContent(content);
+        return email;
+    }
+
+    private static EmailSummary summary(Long id) {
+        return new EmailSummary(id, "sender@example.com", "receiver@example.com", "Subject", new Date(), 1, 0);
+    }
+}
@@ -0,0 +1,198 @@
+package de.gessnerfl.fakesmtp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.gessnerfl.fakesmtp.model.Email;
+import de.gessnerfl.fakesmtp.repository.EmailCriteria;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailStreamBroadcasterTest {
+
+    @Mock
+    private Logger logger;
+
+    private SimpleMeterRegistry meterRegistry;
+    private EmailStreamBroadcaster sut;
+
+    @BeforeEach
+    void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new EmailStreamBroadcaster(new ObjectMapper(), new DirectExecutorService(), new DirectExecutorService(), meterRegistry, logger);
+    }
+
+    @Test
+    void shouldSendEventsMatchingFilterToSubscribers() throws IOException {
+        var all = mock(SseEmitter.class);
+        var filtered = mock(SseEmitter.class);
+        sut.subscribe(all, new EmailCriteria(), null);
+        sut.subscribe(filtered, new EmailCriteria().to("john@example.com"), null);
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "jane@example.com")));
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(2L, "john@example.com")));
+
+        assertEquals(List.of("1", "2"), captureSentEventIds(all, 2));
+        assertEquals(List.of("2"), captureSentEventIds(filtered, 1));
+        assertEquals(2, sut.getNumberOfSubscribers());
+        assertEquals(2.0, meterRegistry.get(EmailStreamBroadcaster.SUBSCRIBERS_METRIC).gauge().value());
+    }
+
+    @Test
+    void shouldReplayBufferedEventsAfterLastEventId() throws IOException {
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "john@example.com")));
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(2L, "jane@example.com")));
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(3L, "john@example.com")));
+
+        var emitter = mock(SseEmitter.class);
+        sut.subscribe(emitter, new EmailCriteria().to("john@example.com"), 1L);
+
+        assertEquals(List.of("3"), captureSentEventIds(emitter, 1));
+    }
+
+    @Test
+    void shouldUseBroadcastSequenceInsteadOfEmailIdAsEventId() throws IOException {
+        var emitter = mock(SseEmitter.class);
+        sut.subscribe(emitter, new EmailCriteria(), null);
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(7L, "john@example.com")));
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(5L, "john@example.com")));
+
+        assertEquals(List.of("1", "2"), captureSentEventIds(emitter, 2));
+
+        var reconnected = mock(SseEmitter.class);
+        sut.subscribe(reconnected, new EmailCriteria(), 1L);
+
+        assertEquals(List.of("2"), captureSentEventIds(reconnected, 1));
+    }
+
+    @Test
+    void shouldReplayAllBufferedEventsWhenLastEventIdWasIssuedBeforeRestart() throws IOException {
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "john@example.com")));
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(2L, "john@example.com")));
+
+        var emitter = mock(SseEmitter.class);
+        sut.subscribe(emitter, new EmailCriteria(), 100L);
+
+        assertEquals(List.of("1", "2"), captureSentEventIds(emitter, 2));
+    }
+
+    @Test
+    void shouldDropSubscriberWhichFallsBehindWithoutStallingOtherSubscribers() throws Exception {
+        var sender = Executors.newCachedThreadPool();
+        sut = new EmailStreamBroadcaster(new ObjectMapper(), new DirectExecutorService(), sender, meterRegistry, logger);
+        var release = new CountDownLatch(1);
+        var slow = mock(SseEmitter.class);
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(slow).send(any(SseEmitter.SseEventBuilder.class));
+        var fast = mock(SseEmitter.class);
+        sut.subscribe(slow, new EmailCriteria(), null);
+        sut.subscribe(fast, new EmailCriteria(), null);
+        try {
+            var numberOfEvents = EmailStreamBroadcaster.SUBSCRIBER_QUEUE_CAPACITY + 2;
+            for (long i = 1; i <= numberOfEvents; i++) {
+                sut.onEmailReceived(new EmailReceivedEvent(createEmail(i, "john@example.com")));
+            }
+
+            verify(fast, timeout(5000).times(numberOfEvents)).send(any(SseEmitter.SseEventBuilder.class));
+            assertEquals(1, sut.getNumberOfSubscribers());
+
+            release.countDown();
+
+            verify(slow, timeout(5000)).complete();
+            verify(slow, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        } finally {
+            release.countDown();
+            sender.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotReplayEventsWhenNoLastEventIdIsGiven() throws IOException {
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "john@example.com")));
+
+        var emitter = mock(SseEmitter.class);
+        sut.subscribe(emitter, new EmailCriteria(), null);
+
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void shouldSerializeSummaryAsEventData() throws IOException {
+        var emitter = mock(SseEmitter.class);
+        sut.subscribe(emitter, new EmailCriteria(), null);
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "john@example.com")));
+
+        var captor = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter).send(captor.capture());
+        var payload = captor.getValue().build().stream().map(d -> d.getData().toString()).collect(Collectors.joining());
+        assertThat(payload, containsString("event:" + EmailStreamBroadcaster.EVENT_NAME));
+        assertThat(payload, containsString("\"subject\":\"Subject 1\""));
+    }
+
+    @Test
+    void shouldRemoveSubscriberWhenSendFails() throws IOException {
+        var emitter = mock(SseEmitter.class);
+        doThrow(new IOException("broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        sut.subscribe(emitter, new EmailCriteria(), null);
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "john@example.com")));
+
+        assertEquals(0, sut.getNumberOfSubscribers());
+        verify(emitter).completeWithError(any(IOException.class));
+    }
+
+    @Test
+    void shouldDropSubscriberWhenAllSendersAreBusy() {
+        var sender = mock(ExecutorService.class);
+        doThrow(new RejectedExecutionException("queue full")).when(sender).execute(any(Runnable.class));
+        sut = new EmailStreamBroadcaster(new ObjectMapper(), new DirectExecutorService(), sender, meterRegistry, logger);
+        var emitter = mock(SseEmitter.class);
+        sut.subscribe(emitter, new EmailCriteria(), null);
+
+        sut.onEmailReceived(new EmailReceivedEvent(createEmail(1L, "john@example.com")));
+
+        assertEquals(0, sut.getNumberOfSubscribers());
+        verify(emitter).complete();
+    }
+
+    private static List<String> captureSentEventIds(SseEmitter emitter, int times) throws IOException {
+        var captor = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, times(times)).send(captor.capture());
+        return captor.getAllValues().stream()
+                .map(builder -> builder.build().iterator().next().getData().toString())
+                .map(data -> data.substring("id:".length(), data.indexOf('\n')))
+                .collect(Collectors.toList());
+    }
+
+    private static Email createEmail(Long id, String recipient) {
+        var email = new Email();
+        email.setId(id);
+        email.setSubject("Subject " + id);
+        email.setFromAddress("sender@example.com");
+        email.setToAddress(recipient);
+        email.setRecipients(List.of(recipient));
+        return email;
+    }
+}
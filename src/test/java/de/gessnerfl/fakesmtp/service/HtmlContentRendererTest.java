@@ -1,9 +1,11 @@
 package de.gessnerfl.fakesmtp.service;
 
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
 import de.gessnerfl.fakesmtp.model.ContentType;
 import de.gessnerfl.fakesmtp.model.Email;
 import de.gessnerfl.fakesmtp.model.EmailContent;
 import de.gessnerfl.fakesmtp.model.InlineImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.info.BuildProperties;
@@ -25,7 +27,33 @@ class HtmlContentRendererTest {
         buildProperties = mock(BuildProperties.class);
         when(applicationContext.getBean(BuildProperties.class)).thenReturn(buildProperties);
 
-        sut = new HtmlContentRenderer(applicationContext);
+        sut = new HtmlContentRenderer(applicationContext, new RenderedContentCache(new FakeSmtpConfigurationProperties(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void shouldRenderStoredContentOnlyOnce(){
+        var content = mock(EmailContent.class);
+        var email = mock(Email.class);
+        when(content.getId()).thenReturn(1L);
+        when(content.getEmail()).thenReturn(email);
+        when(email.getId()).thenReturn(2L);
+        when(content.getData()).thenReturn("Test");
+        when(content.getContentType()).thenReturn(ContentType.PLAIN);
+
+        assertEquals("<p>Test</p>", sut.render(content));
+        assertEquals("<p>Test</p>", sut.render(content));
+
+        verify(content, times(1)).getData();
+    }
+
+    @Test
+    void shouldReturnPreRenderedContentWithoutRendering(){
+        var content = mock(EmailContent.class);
+        when(content.getRendered()).thenReturn("<p>Pre-rendered</p>");
+
+        assertEquals("<p>Pre-rendered</p>", sut.render(content));
+
+        verify(content, never()).getData();
     }
 
     @Test
@@ -66,7 +94,7 @@ class HtmlContentRendererTest {
     }
 
     @Test
-    void shouldReplaceInlineImageWhenImageIsAvailable(){
+    void shouldReplaceInlineImageWithUrlWhenImageIsAvailable(){
         var html = "<img alt=\"test image\" src=\"cid:test\">";
         var content = mock(EmailContent.class);
         var email = mock(Email.class);
@@ -74,13 +102,29 @@ class HtmlContentRendererTest {
         when(content.getData()).thenReturn(html);
         when(content.getContentType()).thenReturn(ContentType.HTML);
         when(content.getEmail()).thenReturn(email);
+        when(email.getId()).thenReturn(42L);
         when(email.getInlineImageByContentId("test")).thenReturn(Optional.of(inlineImage));
-        when(inlineImage.getContentType()).thenReturn("image/png");
-        when(inlineImage.getData()).thenReturn("image_data");
 
         var result = sut.render(content);
 
-        assertEquals("<html>\n <head></head>\n <body>\n  <img alt=\"test image\" src=\"data:image/png;base64, image_data\">\n </body>\n</html>", result);
+        assertEquals("<html>\n <head></head>\n <body>\n  <img alt=\"test image\" src=\"/api/email/42/inline/test\">\n </body>\n</html>", result);
+    }
+
+    @Test
+    void shouldReplaceSingleQuotedInlineImageWithEncodedUrl(){
+        var html = "<img src='cid:logo 1@example.com'>";
+        var content = mock(EmailContent.class);
+        var email = mock(Email.class);
+        var inlineImage = mock(InlineImage.class);
+        when(content.getData()).thenReturn(html);
+        when(content.getContentType()).thenReturn(ContentType.HTML);
+        when(content.getEmail()).thenReturn(email);
+        when(email.getId()).thenReturn(42L);
+        when(email.getInlineImageByContentId("logo 1@example.com")).thenReturn(Optional.of(inlineImage));
+
+        var result = sut.render(content);
+
+        assertEquals("<html>\n <head></head>\n <body>\n  <img src=\"/api/email/42/inline/logo%201@example.com\">\n </body>\n</html>", result);
     }
 
     @Test
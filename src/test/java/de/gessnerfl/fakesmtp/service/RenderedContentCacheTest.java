@@ -0,0 +1,100 @@
+package de.gessnerfl.fakesmtp.service;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderedContentCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RenderedContentCache sut;
+
+    @BeforeEach
+    void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = createCache(DataSize.ofBytes(40));
+    }
+
+    @Test
+    void shouldReturnCachedValueOnSubsequentGets() {
+        var renderings = new AtomicInteger();
+
+        Supplier<String> renderer = () -> {
+            renderings.incrementAndGet();
+            return "rendered";
+        };
+
+        assertEquals("rendered", sut.get(1L, 10L, renderer));
+        assertEquals("rendered", sut.get(1L, 10L, renderer));
+
+        assertEquals(1, renderings.get());
+        assertEquals(1.0, meterRegistry.get(RenderedContentCache.GETS_METRIC).tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get(RenderedContentCache.GETS_METRIC).tag("result", "miss").counter().count());
+        assertEquals(1.0, meterRegistry.get(RenderedContentCache.SIZE_METRIC).gauge().value());
+        assertEquals(16.0, meterRegistry.get(RenderedContentCache.WEIGHT_METRIC).gauge().value());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntriesWhenWeightIsExceeded() {
+        sut.get(1L, 10L, () -> "0123456789");
+        sut.get(2L, 20L, () -> "0123456789");
+        sut.get(1L, 10L, () -> "renderedAgain");
+        sut.get(3L, 30L, () -> "0123456789");
+
+        assertEquals(2, sut.size());
+        assertEquals(40, sut.weight());
+        assertEquals(1.0, meterRegistry.get(RenderedContentCache.EVICTIONS_METRIC).counter().count());
+        assertEquals("0123456789", sut.get(1L, 10L, () -> "renderedAgain"));
+        assertEquals("0123456789", sut.get(3L, 30L, () -> "renderedAgain"));
+        assertEquals("renderedAgain", sut.get(2L, 20L, () -> "renderedAgain"));
+    }
+
+    @Test
+    void shouldNotCacheValuesExceedingTheMaximumWeight() {
+        sut.get(1L, 10L, () -> "012345678901234567890");
+
+        assertEquals(0, sut.size());
+    }
+
+    @Test
+    void shouldNotCacheWhenDisabledOrContentIsNotStored() {
+        var disabled = createCache(DataSize.ofBytes(0));
+        disabled.get(1L, 10L, () -> "rendered");
+        sut.get(null, null, () -> "rendered");
+
+        assertEquals(0, disabled.size());
+        assertEquals(0, sut.size());
+    }
+
+    @Test
+    void shouldInvalidateEntriesOfDeletedEmails() {
+        sut.get(1L, 10L, () -> "a");
+        sut.get(2L, 10L, () -> "b");
+        sut.get(3L, 20L, () -> "c");
+
+        sut.onEmailDeleted(EmailDeletedEvent.of(List.of(10L)));
+
+        assertEquals(1, sut.size());
+        assertEquals(2, sut.weight());
+        assertEquals("c", sut.get(3L, 20L, () -> "other"));
+
+        sut.onEmailDeleted(EmailDeletedEvent.all());
+
+        assertEquals(0, sut.size());
+        assertEquals(0, sut.weight());
+    }
+
+    private RenderedContentCache createCache(DataSize cacheSize) {
+        var properties = new FakeSmtpConfigurationProperties();
+        properties.getRendering().setCacheSize(cacheSize);
+        return new RenderedContentCache(properties, meterRegistry);
+    }
+}
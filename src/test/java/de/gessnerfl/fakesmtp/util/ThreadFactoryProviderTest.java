@@ -0,0 +1,72 @@
+package de.gessnerfl.fakesmtp.util;
+
+import de.gessnerfl.fakesmtp.config.FakeSmtpConfigurationProperties;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ThreadFactoryProviderTest {
+
+    @Test
+    void shouldUsePlatformThreadsByDefault() throws Exception {
+        var logger = mock(Logger.class);
+        var sut = new ThreadFactoryProvider(new FakeSmtpConfigurationProperties(), logger);
+
+        assertFalse(sut.isVirtual());
+        var thread = sut.create("test-").newThread(() -> {});
+        assertTrue(thread.getName().startsWith("test-"));
+        verifyNoInteractions(logger);
+
+        var executor = sut.createThreadPerTaskExecutor("executor-");
+        try {
+            var threadName = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor).get(5, TimeUnit.SECONDS);
+            assertTrue(threadName.startsWith("executor-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldUseVirtualThreadsWhenConfiguredAndSupportedByRuntime() throws Exception {
+        var configurationProperties = new FakeSmtpConfigurationProperties();
+        configurationProperties.setThreading(FakeSmtpConfigurationProperties.Threading.VIRTUAL);
+        var logger = mock(Logger.class);
+
+        var sut = new ThreadFactoryProvider(configurationProperties, logger);
+
+        var executor = sut.createThreadPerTaskExecutor("session-");
+        try {
+            var threadName = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor).get(5, TimeUnit.SECONDS);
+            assertTrue(threadName.startsWith("session-"));
+        } finally {
+            executor.shutdownNow();
+        }
+        if (Runtime.version().feature() >= 21) {
+            assertTrue(sut.isVirtual());
+            verify(logger, never()).error(anyString(), any(Object.class));
+        } else {
+            assertFalse(sut.isVirtual());
+            verify(logger).error(anyString(), any(Object.class));
+        }
+    }
+
+    @Test
+    void shouldNotSupportVirtualThreadsWhenTheyCannotBeCreated() {
+        assertFalse(ThreadFactoryProvider.isVirtualThreadSupportAvailable(PreviewThread.class));
+        assertFalse(ThreadFactoryProvider.isVirtualThreadSupportAvailable(Object.class));
+    }
+
+    //mimics Java 19 and 20 where Thread.ofVirtual() fails unless preview features are enabled
+    static class PreviewThread {
+        public static Object ofVirtual() {
+            throw new UnsupportedOperationException("Preview Features not enabled");
+        }
+    }
+}